@@ -0,0 +1,135 @@
+package ucles.weblab.common.i18n.countries.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.module.jsonSchema.factories.JsonSchemaFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.support.StaticMessageSource;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.security.access.expression.method.DefaultMethodSecurityExpressionHandler;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import ucles.weblab.common.i18n.countries.domain.CountriesUpdatedEvent;
+import ucles.weblab.common.i18n.countries.domain.mem.CountriesDualRepositoryMem;
+import ucles.weblab.common.i18n.countries.webapi.CountriesController;
+import ucles.weblab.common.i18n.countries.webapi.resource.CountryResource;
+import ucles.weblab.common.i18n.service.impl.LocalisationServiceImpl;
+import ucles.weblab.common.schema.webapi.EnumSchemaCreator;
+import ucles.weblab.common.schema.webapi.ResourceSchemaCreator;
+import ucles.weblab.common.security.SecurityChecker;
+import ucles.weblab.common.xc.service.CrossContextConversionServiceImpl;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the countries web API, called directly rather than over HTTP. The schema endpoints are measured
+ * answering from their cache, answering a conditional request with {@code 304 Not Modified}, and rendering afresh
+ * after the data has changed.
+ *
+ * @since 18/10/26
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CountriesControllerBenchmark {
+    /** How many copies of the bundled data to load. */
+    @Param({ "1", "10" })
+    public int scale;
+
+    private CountriesDualRepositoryMem repository;
+    private CountriesController controller;
+    private String isoCodesTag;
+    private String iddPrefixesTag;
+    private long version;
+
+    /**
+     * The controller builds links from the current request, which is held per thread.
+     */
+    @State(Scope.Thread)
+    public static class Request {
+        @Setup
+        public void setUp() {
+            RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+        }
+
+        @TearDown
+        public void tearDown() {
+            RequestContextHolder.resetRequestAttributes();
+        }
+    }
+
+    @Setup
+    public void setUp(Request request) {
+        repository = new CountriesDualRepositoryMem();
+        repository.updateAll(CountriesData.scaled(scale).getRawData());
+        final ResourceSchemaCreator schemaCreator = new ResourceSchemaCreator(
+                new SecurityChecker(new DefaultMethodSecurityExpressionHandler()),
+                new ObjectMapper(),
+                new CrossContextConversionServiceImpl(),
+                new EnumSchemaCreator(),
+                new JsonSchemaFactory(),
+                new LocalisationServiceImpl(new StaticMessageSource()));
+        controller = new CountriesController(repository, schemaCreator, new ObjectMapper());
+        isoCodesTag = controller.enumerateJson(null, null).getHeaders().getETag();
+        iddPrefixesTag = controller.countryCallingCodesJson(null, null).getHeaders().getETag();
+    }
+
+    /**
+     * Discard the controller's cached views, as happens when the data is refreshed.
+     */
+    private void invalidate() {
+        controller.onCountriesUpdated(new CountriesUpdatedEvent(repository, ++version));
+    }
+
+    @Benchmark
+    public List<CountryResource> getCountries(Request request) {
+        return controller.getCountries();
+    }
+
+    @Benchmark
+    public ResponseEntity<byte[]> enumerate(Request request) {
+        return controller.enumerateJson(null, null);
+    }
+
+    @Benchmark
+    public ResponseEntity<byte[]> enumerateNotModified(Request request) {
+        return controller.enumerateJson(isoCodesTag, null);
+    }
+
+    @Benchmark
+    public ResponseEntity<byte[]> enumerateUncached(Request request) {
+        invalidate();
+        return controller.enumerateJson(null, null);
+    }
+
+    @Benchmark
+    public ResponseEntity<byte[]> countryCallingCodes(Request request) {
+        return controller.countryCallingCodesJson(null, null);
+    }
+
+    @Benchmark
+    public ResponseEntity<byte[]> countryCallingCodesNotModified(Request request) {
+        return controller.countryCallingCodesJson(iddPrefixesTag, null);
+    }
+
+    @Benchmark
+    public ResponseEntity<byte[]> countryCallingCodesUncached(Request request) {
+        invalidate();
+        return controller.countryCallingCodesJson(null, null);
+    }
+}
@@ -0,0 +1,95 @@
+package ucles.weblab.common.i18n.countries.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import ucles.weblab.common.i18n.countries.config.CountriesDataLoader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Countries data for benchmarks: the data bundled with the application, optionally scaled up by adding numbered
+ * copies of every country so that searches and whole-list views have more to do.
+ * <p>
+ * The copies keep the codes of the originals, so code lookups still find the originals, but their English and
+ * translated names are suffixed with the copy number, e.g. "New Zealand 2".
+ * </p>
+ *
+ * @since 18/10/26
+ */
+final class CountriesData {
+    private static final String BUNDLED_JSON = "restcountries.json";
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final List<JsonNode> countries;
+    private final String rawData;
+
+    private CountriesData(List<JsonNode> countries, String rawData) {
+        this.countries = countries;
+        this.rawData = rawData;
+    }
+
+    /**
+     * @param scale how many copies of the bundled data to include, at least 1
+     */
+    static CountriesData scaled(int scale) {
+        final ArrayNode bundled = readBundled();
+        final ArrayNode result = objectMapper.createArrayNode();
+        for (int copy = 1; copy <= scale; copy++) {
+            for (JsonNode country : bundled) {
+                result.add(copy == 1 ? country : renamed((ObjectNode) country.deepCopy(), " " + copy));
+            }
+        }
+        final List<JsonNode> countries = new ArrayList<>(result.size());
+        result.forEach(countries::add);
+        try {
+            return new CountriesData(countries, objectMapper.writeValueAsString(result));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static ArrayNode readBundled() {
+        try (final InputStream json = CountriesDataLoader.class.getResourceAsStream(BUNDLED_JSON)) {
+            return (ArrayNode) objectMapper.readTree(json);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static JsonNode renamed(ObjectNode country, String suffix) {
+        country.put("name", country.path("name").asText() + suffix);
+        final JsonNode translations = country.path("translations");
+        if (translations.isObject()) {
+            final Iterator<Map.Entry<String, JsonNode>> fields = translations.fields();
+            while (fields.hasNext()) {
+                final Map.Entry<String, JsonNode> translation = fields.next();
+                if (translation.getValue().isTextual()) {
+                    translation.setValue(objectMapper.getNodeFactory().textNode(translation.getValue().asText() + suffix));
+                }
+            }
+        }
+        return country;
+    }
+
+    String getRawData() {
+        return rawData;
+    }
+
+    /**
+     * Get a value of every country, for a benchmark to cycle through.
+     */
+    String[] values(String field) {
+        return countries.stream()
+                .map(country -> country.path(field).asText())
+                .filter(value -> !value.isEmpty())
+                .toArray(String[]::new);
+    }
+}
@@ -0,0 +1,85 @@
+package ucles.weblab.common.i18n.countries.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ucles.weblab.common.i18n.countries.domain.CountryEntity;
+import ucles.weblab.common.i18n.countries.domain.mem.CountriesDualRepositoryMem;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the in-memory countries repository, with the bundled data and with it scaled up.
+ *
+ * @since 18/10/26
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CountriesRepositoryBenchmark {
+    private static final String[] FRAGMENTS = { "land", "ia", "united", "guinea", "saint", "zzz" };
+
+    /** How many copies of the bundled data to load. */
+    @Param({ "1", "10" })
+    public int scale;
+
+    private CountriesDualRepositoryMem repository;
+    private String[] codes;
+    private String[] names;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        final CountriesData data = CountriesData.scaled(scale);
+        repository = new CountriesDualRepositoryMem();
+        repository.updateAll(data.getRawData());
+        codes = data.values("alpha2Code");
+        names = data.values("name");
+    }
+
+    /**
+     * Cycle through the keys, so that every benchmark call looks up something different. The count is not
+     * thread-safe, but need not be since it only needs to vary.
+     */
+    private int next(int length) {
+        return (next++ & Integer.MAX_VALUE) % length;
+    }
+
+    @Benchmark
+    public Optional<? extends CountryEntity> findOneByAlpha2Code() {
+        return repository.findOneByAlpha2Code(codes[next(codes.length)]);
+    }
+
+    @Benchmark
+    public Optional<? extends CountryEntity> findOneByAlpha2CodeTranslated() {
+        return repository.findOneByAlpha2Code(codes[next(codes.length)], "de");
+    }
+
+    @Benchmark
+    public List<? extends CountryEntity> findByNameContaining() {
+        return repository.findByNameContaining(FRAGMENTS[next(FRAGMENTS.length)], "en");
+    }
+
+    @Benchmark
+    public Optional<String> getCodeByNameAndLocale() {
+        return repository.getCodeByNameAndLocale(names[next(names.length)], "en");
+    }
+
+    @Benchmark
+    public List<? extends CountryEntity> findAll() {
+        return repository.findAll();
+    }
+}
@@ -1,5 +1,6 @@
 package ucles.weblab.common.config;
 
+import org.springframework.boot.autoconfigure.AutoConfigureAfter;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Import;
 import ucles.weblab.common.i18n.countries.config.CountriesConfig;
@@ -10,6 +11,7 @@ import ucles.weblab.common.i18n.countries.config.CountriesConfig;
  * @since 15/10/15
  */
 @Configuration
+@AutoConfigureAfter(name = "org.springframework.boot.actuate.autoconfigure.MetricRepositoryAutoConfiguration")
 @Import(CountriesConfig.class)
 public class I18nAutoConfiguration {
 }
@@ -1,40 +1,67 @@
 package ucles.weblab.common.i18n.countries.config;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.CommandLineRunner;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.actuate.metrics.CounterService;
+import org.springframework.boot.actuate.metrics.GaugeService;
 import org.springframework.boot.autoconfigure.AutoConfigureAfter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingClass;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.condition.NoneNestedConditions;
 import org.springframework.boot.autoconfigure.web.DispatcherServletAutoConfiguration;
 import org.springframework.boot.autoconfigure.web.WebMvcAutoConfiguration;
-import org.springframework.boot.json.JsonParserFactory;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.Conditional;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Import;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.scheduling.annotation.EnableAsync;
 import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.client.RestTemplate;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurerAdapter;
 import ucles.weblab.common.i18n.countries.domain.AutoRefreshCountriesServiceImpl;
 import ucles.weblab.common.i18n.countries.domain.CountriesBuilders;
 import ucles.weblab.common.i18n.countries.domain.CountriesRawRepository;
+import ucles.weblab.common.i18n.countries.domain.CountriesRefreshLease;
 import ucles.weblab.common.i18n.countries.domain.CountriesService;
-import ucles.weblab.common.i18n.countries.domain.CountryEntity;
+import ucles.weblab.common.i18n.countries.domain.CountryRepository;
+import ucles.weblab.common.i18n.countries.domain.GatedCountriesRawRepository;
+import ucles.weblab.common.i18n.countries.domain.file.CountriesFileStore;
+import ucles.weblab.common.i18n.countries.domain.file.FileCountriesRefreshLease;
+import ucles.weblab.common.i18n.countries.domain.jdbc.CountriesDualRepositoryJdbc;
+import ucles.weblab.common.i18n.countries.domain.jdbc.JdbcCountriesRefreshLease;
 import ucles.weblab.common.i18n.countries.domain.mem.CountriesDualRepositoryMem;
+import ucles.weblab.common.i18n.countries.reactive.CountriesReactiveConfig;
 import ucles.weblab.common.i18n.countries.webapi.CountriesController;
 
-import java.io.InputStream;
-import java.io.InputStreamReader;
+import javax.sql.DataSource;
+import java.lang.management.ManagementFactory;
 import java.net.URI;
-import java.nio.charset.StandardCharsets;
-import java.util.List;
-import java.util.Scanner;
-import java.util.function.Supplier;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Configuration for the countries domain.
@@ -42,57 +69,274 @@ import java.util.function.Supplier;
  * @since 18/05/15
  */
 @Configuration
-@EnableScheduling
 @EnableAsync
+@EnableScheduling
 @ConditionalOnClass({ObjectMapper.class})
 @ConditionalOnProperty(name = "i18n.countries.enabled", havingValue = "true", matchIfMissing = true)
-@Import(CountriesBuilders.class)
+@Import({CountriesBuilders.class, CountriesReactiveConfig.class})
 public class CountriesConfig {
+    /** When the initial countries data is loaded - eager, background or lazy. */
+    private static final String INITIALISATION = "${i18n.countries.initialisation:eager}";
+    /** How refreshes are coordinated between nodes sharing a file store, if at all - file or jdbc. */
+    private static final String COORDINATION_LEASE = "i18n.countries.coordination.lease";
+    private static final String NODE_ID = "${i18n.countries.coordination.node-id:}";
+    private static final String CONNECT_TIMEOUT = "${i18n.countries.refresh.connect-timeout-ms:5000}";
+    private static final String READ_TIMEOUT = "${i18n.countries.refresh.read-timeout-ms:30000}";
+    private static final String HTTP_CLIENT = "org.apache.http.impl.client.CloseableHttpClient";
 
-    private static final String INITIAL_RESTCOUNTRIES_JSON = "restcountries.json";
+    /**
+     * The repository, which unless the initial data is loaded eagerly waits for it to be loaded on every read. It is
+     * held in memory unless {@code i18n.countries.repository} is {@code jdbc}, in which case it is held in the tables
+     * created by {@code schema-countries.sql} in the application's database, with recent reads cached in memory.
+     */
+    @Bean
+    public CountriesRawRepository countriesRawRepository(@Value(INITIALISATION) String initialisation,
+                                                         @Value("${i18n.countries.repository:memory}") String repositoryType,
+                                                         ObjectProvider<DataSource> dataSource,
+                                                         @Value("${i18n.countries.jdbc.cache-size:1000}") int cacheSize,
+                                                         @Value("${i18n.countries.jdbc.version-check-ms:1000}") long versionCheckInterval,
+                                                         CountriesDataLoader countriesDataLoader) {
+        final boolean gated = CountriesDataLoader.Mode.of(initialisation) != CountriesDataLoader.Mode.EAGER;
+        return "jdbc".equalsIgnoreCase(repositoryType.trim())
+                ? gated(new CountriesDualRepositoryJdbc(dataSource.getObject(), cacheSize, Duration.ofMillis(versionCheckInterval)), gated, countriesDataLoader)
+                : gated(new CountriesDualRepositoryMem(), gated, countriesDataLoader);
+    }
+
+    private static <R extends CountriesRawRepository & CountryRepository> CountriesRawRepository gated(R repository, boolean gated,
+                                                                                                     CountriesDataLoader countriesDataLoader) {
+        return gated ? new GatedCountriesRawRepository(repository, countriesDataLoader::awaitLoaded) : repository;
+    }
 
     @Bean
-    public CountriesRawRepository countriesRawRepository(Supplier<CountryEntity.Builder> countryEntityBuilder) {
-        return new CountriesDualRepositoryMem(countryEntityBuilder);
+    public CountriesDataLoader countriesDataLoader(ObjectProvider<CountriesRawRepository> countriesRawRepository,
+                                                   ObjectProvider<CountriesService> countriesService,
+                                                   Optional<CountriesFileStore> countriesFileStore) {
+        return new CountriesDataLoader(countriesRawRepository::getObject, countriesService::getObject, countriesFileStore);
     }
 
+    /**
+     * The refresh service, which if a refresh lease is configured coordinates its refreshes with other nodes sharing
+     * the lease and the file store. The non-blocking service from {@link CountriesReactiveConfig} is used instead if
+     * it is configured.
+     */
     @Bean
+    @ConditionalOnMissingBean(CountriesService.class)
     public CountriesService countriesService(@Value("${restcountries.uri:http://restcountries.eu/rest/v1/all}") URI countriesUri,
-                                             CountriesRawRepository countriesRawRepository) {
-        return new AutoRefreshCountriesServiceImpl(countriesUri, countriesRawRepository, new RestTemplate());
+                                             CountriesRawRepository countriesRawRepository,
+                                             Optional<CountriesFileStore> countriesFileStore,
+                                             Optional<CountriesRefreshLease> countriesRefreshLease,
+                                             @Qualifier("countriesRequestFactory") ClientHttpRequestFactory countriesRequestFactory,
+                                             @Value("${i18n.countries.refresh.max-attempts:3}") int maxAttempts,
+                                             @Value("${i18n.countries.refresh.initial-backoff-ms:1000}") long initialBackoff,
+                                             @Value("${i18n.countries.refresh.max-backoff-ms:30000}") long maxBackoff,
+                                             @Value("${i18n.countries.coordination.lease-duration-seconds:300}") long leaseDuration,
+                                             @Value("${i18n.countries.coordination.poll-interval-ms:1000}") long pollInterval) {
+        return new AutoRefreshCountriesServiceImpl(countriesUri, countriesRawRepository, new RestTemplate(countriesRequestFactory),
+                countriesFileStore, countriesRefreshExecutor(),
+                new AutoRefreshCountriesServiceImpl.Backoff(maxAttempts, Duration.ofMillis(initialBackoff), Duration.ofMillis(maxBackoff)),
+                countriesRefreshLease.map(lease -> new AutoRefreshCountriesServiceImpl.Coordination(lease,
+                        Duration.ofSeconds(leaseDuration), Duration.ofMillis(pollInterval))));
+    }
+
+    /**
+     * A single thread to refresh countries data on, since concurrent refreshes are coalesced anyway, which the
+     * non-blocking service also stores refreshed data on. This is deliberately not a {@code TaskExecutor}, so that it is
+     * never picked as the application's default executor for {@code @Async}.
+     */
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService countriesRefreshExecutor() {
+        return new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(1),
+                new CustomizableThreadFactory("countries-refresh-"));
+    }
+
+    /**
+     * A single thread to load the initial countries data on in the background, which is only needed once and so is
+     * not kept alive. Like the refresh executor, it is deliberately not a {@code TaskExecutor}.
+     */
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService countriesLoaderExecutor() {
+        return new ThreadPoolExecutor(0, 1, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                new CustomizableThreadFactory("countries-loader-"));
+    }
+
+    /**
+     * Keep a local copy of refreshed data, if a directory is configured for it. Data stored less than
+     * {@code i18n.countries.store.max-age-hours} ago is used at start up without refreshing it.
+     */
+    @Bean
+    @ConditionalOnProperty(name = "i18n.countries.store.dir")
+    public CountriesFileStore countriesFileStore(@Value("${i18n.countries.store.dir}") Path directory,
+                                                 @Value("${i18n.countries.store.max-age-hours:24}") long maxAgeHours) {
+        return new CountriesFileStore(directory, Duration.ofHours(maxAgeHours));
+    }
+
+    /**
+     * Coordinate refreshes between nodes sharing the store directory through a lease file there. This is intended
+     * for testing - use {@code jdbc} in production.
+     */
+    @Bean
+    @ConditionalOnProperty(name = COORDINATION_LEASE, havingValue = "file")
+    public CountriesRefreshLease fileCountriesRefreshLease(@Value("${i18n.countries.store.dir}") Path directory,
+                                                           @Value(NODE_ID) String nodeId) {
+        return new FileCountriesRefreshLease(directory, nodeId(nodeId));
+    }
+
+    /**
+     * Requests to REST Countries using a small pool of connections from the Apache HTTP client, with timeouts so that
+     * a hung REST Countries cannot hold a refresh forever. The client is closed with the context.
+     */
+    @Configuration
+    @ConditionalOnClass(name = HTTP_CLIENT)
+    static class CountriesHttpComponents {
+        @Bean(destroyMethod = "close")
+        CloseableHttpClient countriesHttpClient() {
+            return HttpClientBuilder.create()
+                    .setMaxConnTotal(2)
+                    .setMaxConnPerRoute(2)
+                    .useSystemProperties()
+                    .build();
+        }
+
+        @Bean
+        ClientHttpRequestFactory countriesRequestFactory(@Qualifier("countriesHttpClient") CloseableHttpClient countriesHttpClient,
+                                                         @Value(CONNECT_TIMEOUT) int connectTimeout,
+                                                         @Value(READ_TIMEOUT) int readTimeout) {
+            final HttpComponentsClientHttpRequestFactory requestFactory = new HttpComponentsClientHttpRequestFactory(countriesHttpClient);
+            requestFactory.setConnectTimeout(connectTimeout);
+            requestFactory.setConnectionRequestTimeout(connectTimeout);
+            requestFactory.setReadTimeout(readTimeout);
+            return requestFactory;
+        }
+    }
+
+    /**
+     * Requests to REST Countries through the JDK's own HTTP client, with the same timeouts, if the Apache HTTP client
+     * is not present.
+     */
+    @Configuration
+    @ConditionalOnMissingClass(HTTP_CLIENT)
+    static class CountriesJdkHttp {
+        @Bean
+        ClientHttpRequestFactory countriesRequestFactory(@Value(CONNECT_TIMEOUT) int connectTimeout,
+                                                         @Value(READ_TIMEOUT) int readTimeout) {
+            final SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+            requestFactory.setConnectTimeout(connectTimeout);
+            requestFactory.setReadTimeout(readTimeout);
+            return requestFactory;
+        }
+    }
+
+    /**
+     * Identify this node to the others, by default as its process ID and host name.
+     */
+    private static String nodeId(String configured) {
+        return configured.isEmpty() ? ManagementFactory.getRuntimeMXBean().getName() : configured;
+    }
+
+    /**
+     * Coordinate refreshes between nodes sharing a database through a lease table, created by
+     * {@code schema-countries-lease.sql}.
+     */
+    @Configuration
+    @ConditionalOnClass({JdbcTemplate.class})
+    @ConditionalOnProperty(name = COORDINATION_LEASE, havingValue = "jdbc")
+    static class CountriesJdbcCoordination {
+        @Bean
+        CountriesRefreshLease jdbcCountriesRefreshLease(DataSource dataSource, @Value(NODE_ID) String nodeId) {
+            return new JdbcCountriesRefreshLease(dataSource, nodeId(nodeId));
+        }
     }
 
     @Configuration
     @AutoConfigureAfter({DispatcherServletAutoConfiguration.class, WebMvcAutoConfiguration.class})
     @ConditionalOnWebApplication
     @ConditionalOnClass({RestController.class})
+    @Conditional(BlockingWebCondition.class)
     @ComponentScan(basePackageClasses = CountriesController.class)
     static class CountriesConfigWeb { }
 
+    /**
+     * Matches unless the reactive controller from {@link CountriesReactiveConfig} serves the countries instead.
+     */
+    static class BlockingWebCondition extends NoneNestedConditions {
+        BlockingWebCondition() {
+            super(ConfigurationPhase.PARSE_CONFIGURATION);
+        }
+
+        @ConditionalOnClass(name = "reactor.core.publisher.Mono")
+        @ConditionalOnProperty(name = CountriesReactiveConfig.ENABLED, havingValue = "true")
+        static class Reactive { }
+    }
+
     @Configuration
     static class CountriesInitialisation {
-        private final Logger logger = LoggerFactory.getLogger(getClass());
-
         @Bean
-        CommandLineRunner initCountriesData(CountriesRawRepository repository, CountriesService service) {
+        CommandLineRunner initCountriesData(@Value(INITIALISATION) String initialisation,
+                                            CountriesDataLoader countriesDataLoader,
+                                            @Qualifier("countriesLoaderExecutor") ExecutorService countriesLoaderExecutor) {
             return args -> {
-                final InputStream resource = CountriesConfig.class.getResourceAsStream(INITIAL_RESTCOUNTRIES_JSON);
-                try (final InputStreamReader readable = new InputStreamReader(resource, StandardCharsets.UTF_8)) {
-                    final String initialCountries = readAll(readable);
-                    // Ensure it parses OK, but we don't need to keep the result.
-                    final List<Object> list = JsonParserFactory.getJsonParser().parseList(initialCountries);
-                    logger.info("Loaded initial countries data - " + (list == null ? 0 : list.size()) + " countries available.");
-                    repository.updateAll(initialCountries);
+                switch (CountriesDataLoader.Mode.of(initialisation)) {
+                    case EAGER:
+                        countriesDataLoader.awaitLoaded();
+                        break;
+                    case BACKGROUND:
+                        countriesDataLoader.start(countriesLoaderExecutor);
+                        break;
+                    default:
+                        // Loaded on first read
+                        break;
                 }
-                service.refreshRepository();
             };
         }
+    }
 
+    @Configuration
+    @ConditionalOnClass({HealthIndicator.class})
+    static class CountriesHealth {
+        @Bean
+        CountriesHealthIndicator countriesHealthIndicator(@Value(INITIALISATION) String initialisation,
+                                                          CountriesDataLoader countriesDataLoader) {
+            return new CountriesHealthIndicator(countriesDataLoader, CountriesDataLoader.Mode.of(initialisation));
+        }
+    }
+
+    /**
+     * Metrics for the repository, refreshes and web API, recorded through the actuator's counter and gauge services.
+     */
+    @Configuration
+    @ConditionalOnClass({CounterService.class})
+    @ConditionalOnBean({CounterService.class, GaugeService.class})
+    static class CountriesMetricsConfig {
         /**
-         * From https://weblogs.java.net/blog/pat/archive/2004/10/stupid_scanner.html
+         * Static, since as a post-processor this is created before any other beans.
          */
-        String readAll(Readable readable) {
-            return new Scanner(readable).useDelimiter("\\A").next();
+        @Bean
+        static MeteredCountriesRepositories meteredCountriesRepositories(ObjectProvider<CounterService> counterService,
+                                                                         ObjectProvider<GaugeService> gaugeService) {
+            return new MeteredCountriesRepositories(counterService::getObject, gaugeService::getObject);
+        }
+
+        @Bean
+        CountriesMetrics countriesMetrics(CounterService counterService, GaugeService gaugeService) {
+            return new CountriesMetrics(counterService, gaugeService);
+        }
+
+        @Configuration
+        @ConditionalOnWebApplication
+        @ConditionalOnClass({RestController.class})
+        static class CountriesMetricsWeb extends WebMvcConfigurerAdapter {
+            private final CounterService counterService;
+            private final GaugeService gaugeService;
+
+            CountriesMetricsWeb(CounterService counterService, GaugeService gaugeService) {
+                this.counterService = counterService;
+                this.gaugeService = gaugeService;
+            }
+
+            @Override
+            public void addInterceptors(InterceptorRegistry registry) {
+                registry.addInterceptor(new CountriesControllerMetrics(counterService, gaugeService));
+            }
         }
     }
 
@@ -0,0 +1,63 @@
+package ucles.weblab.common.i18n.countries.config;
+
+import org.springframework.boot.actuate.metrics.CounterService;
+import org.springframework.boot.actuate.metrics.GaugeService;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.handler.HandlerInterceptorAdapter;
+import ucles.weblab.common.i18n.countries.webapi.CountriesController;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Records metrics for each request handled by the {@link CountriesController}, or by the non-blocking
+ * {@code ReactiveCountriesController} which serves the same API, named after the handler method:
+ * <ul>
+ *     <li>{@code timer.countries.controller.<method>} - how long the request took</li>
+ *     <li>{@code counter.countries.controller.<method>.status.<status>} - the response status, so that e.g. the
+ *     proportion of {@code 304 Not Modified} responses can be seen</li>
+ * </ul>
+ *
+ * @since 18/10/26
+ */
+public class CountriesControllerMetrics extends HandlerInterceptorAdapter {
+    private static final String PREFIX = "countries.controller.";
+    private static final String START_ATTRIBUTE = CountriesControllerMetrics.class.getName() + ".start";
+    /** Named rather than referenced, since Reactor may not be on the classpath. */
+    private static final String REACTIVE_CONTROLLER = "ucles.weblab.common.i18n.countries.reactive.ReactiveCountriesController";
+
+    private final CounterService counterService;
+    private final GaugeService gaugeService;
+
+    public CountriesControllerMetrics(CounterService counterService, GaugeService gaugeService) {
+        this.counterService = counterService;
+        this.gaugeService = gaugeService;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        // An asynchronous request is handled again to complete it, which must not restart its timer.
+        if (isCountriesHandler(handler) && request.getAttribute(START_ATTRIBUTE) == null) {
+            request.setAttribute(START_ATTRIBUTE, System.nanoTime());
+        }
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        final Object start = request.getAttribute(START_ATTRIBUTE);
+        if (start instanceof Long && isCountriesHandler(handler)) {
+            final String name = PREFIX + ((HandlerMethod) handler).getMethod().getName();
+            gaugeService.submit("timer." + name, (System.nanoTime() - (Long) start) / 1e6);
+            counterService.increment(name + ".status." + response.getStatus());
+        }
+    }
+
+    private static boolean isCountriesHandler(Object handler) {
+        if (!(handler instanceof HandlerMethod)) {
+            return false;
+        }
+        final Class<?> beanType = ((HandlerMethod) handler).getBeanType();
+        return CountriesController.class.isAssignableFrom(beanType) || REACTIVE_CONTROLLER.equals(beanType.getName());
+    }
+}
@@ -0,0 +1,185 @@
+package ucles.weblab.common.i18n.countries.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ucles.weblab.common.i18n.countries.domain.CountriesRawRepository;
+import ucles.weblab.common.i18n.countries.domain.CountriesService;
+import ucles.weblab.common.i18n.countries.domain.file.CountriesFileStore;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Loads the initial countries data into the repository, from any local file store or else from the data bundled with
+ * the application, and then starts a refresh unless the stored data is fresh. The bundled data is not loaded into a
+ * repository which already has data, such as one shared with other nodes in a database.
+ * <p>
+ * The data is loaded at most once. Whichever caller asks first does the loading, and any others asking meanwhile wait
+ * for that load to finish rather than starting their own.
+ * </p>
+ *
+ * @since 18/10/26
+ */
+public class CountriesDataLoader {
+    private static final String INITIAL_RESTCOUNTRIES_JSON = "restcountries.json";
+    /** The same data in Smile form, compiled from the JSON by the build. The repository still indexes it on loading. */
+    private static final String INITIAL_RESTCOUNTRIES_SMILE = "restcountries.sml";
+
+    /**
+     * When the initial data is loaded.
+     */
+    public enum Mode {
+        /** While the application starts up, before it is ready. */
+        EAGER,
+        /** In the background once the application has started, with reads waiting until it has loaded. */
+        BACKGROUND,
+        /** When the data is first read. */
+        LAZY;
+
+        /**
+         * Get the mode by name, ignoring case.
+         */
+        public static Mode of(String name) {
+            return valueOf(name.trim().toUpperCase(Locale.ROOT));
+        }
+    }
+
+    public enum State { NOT_LOADED, LOADING, LOADED, FAILED }
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+    private final Supplier<CountriesRawRepository> repository;
+    private final Supplier<CountriesService> service;
+    private final Optional<CountriesFileStore> countriesFileStore;
+    private final AtomicReference<CompletableFuture<Void>> load = new AtomicReference<>();
+    /** The thread loading the data, whose own reads of the repository must not wait for the load. */
+    private volatile Thread loadingThread;
+
+    /**
+     * @param repository supplies the repository to load, which is looked up only when loading so that it can in turn
+     *                   wait on this loader
+     */
+    public CountriesDataLoader(Supplier<CountriesRawRepository> repository, Supplier<CountriesService> service,
+                               Optional<CountriesFileStore> countriesFileStore) {
+        this.repository = repository;
+        this.service = service;
+        this.countriesFileStore = countriesFileStore;
+    }
+
+    /**
+     * Load the data on this thread, unless it has already been loaded or is being loaded, in which case wait for that.
+     *
+     * @throws IllegalStateException if the data could not be loaded
+     */
+    public void awaitLoaded() {
+        if (Thread.currentThread() == loadingThread) {
+            return;
+        }
+        final CompletableFuture<Void> started = new CompletableFuture<>();
+        if (load.compareAndSet(null, started)) {
+            run(started);
+        }
+        try {
+            load.get().join();
+        } catch (CompletionException e) {
+            throw new IllegalStateException("Countries data could not be loaded", e.getCause());
+        }
+    }
+
+    /**
+     * Start loading the data in the background, unless it has already been started.
+     */
+    public void start(Executor executor) {
+        final CompletableFuture<Void> started = new CompletableFuture<>();
+        if (load.compareAndSet(null, started)) {
+            executor.execute(() -> run(started));
+        }
+    }
+
+    /**
+     * Start loading the data in the background, unless it has already been started, without waiting for it to load.
+     *
+     * @return a future which completes when the data has loaded, or exceptionally if it could not be loaded
+     */
+    public CompletableFuture<Void> whenLoaded(Executor executor) {
+        start(executor);
+        return load.get().thenApply(loaded -> loaded);
+    }
+
+    public State getState() {
+        final CompletableFuture<Void> current = load.get();
+        if (current == null) {
+            return State.NOT_LOADED;
+        } else if (!current.isDone()) {
+            return State.LOADING;
+        }
+        return current.isCompletedExceptionally() ? State.FAILED : State.LOADED;
+    }
+
+    private void run(CompletableFuture<Void> started) {
+        final boolean refresh;
+        loadingThread = Thread.currentThread();
+        try {
+            refresh = loadInitialData();
+        } catch (IOException e) {
+            logger.error("Could not load initial countries data", e);
+            started.completeExceptionally(new UncheckedIOException(e));
+            return;
+        } catch (RuntimeException | Error e) {
+            logger.error("Could not load initial countries data", e);
+            started.completeExceptionally(e);
+            return;
+        } finally {
+            loadingThread = null;
+        }
+        started.complete(null);
+        if (refresh) {
+            service.get().refreshRepository();
+        }
+    }
+
+    /**
+     * @return whether the data loaded needs refreshing
+     */
+    private boolean loadInitialData() throws IOException {
+        final CountriesRawRepository countriesRawRepository = repository.get();
+        final Optional<Instant> storedAt = countriesFileStore.flatMap(store -> loadStored(store, countriesRawRepository));
+        if (!storedAt.isPresent()) {
+            if (countriesRawRepository.findAllRaw().isPresent()) {
+                logger.info("Countries data is already in the repository, not loading the initial data.");
+            } else {
+                try (final InputStream resource = openInitialCountries()) {
+                    final int count = countriesRawRepository.updateAll(resource);
+                    logger.info("Loaded initial countries data - " + count + " countries available.");
+                }
+            }
+        }
+        if (storedAt.isPresent() && countriesFileStore.get().isFresh(storedAt.get())) {
+            logger.info("Stored countries data is from " + storedAt.get() + ", not refreshing it.");
+            return false;
+        }
+        return true;
+    }
+
+    private InputStream openInitialCountries() {
+        final InputStream smile = CountriesDataLoader.class.getResourceAsStream(INITIAL_RESTCOUNTRIES_SMILE);
+        return smile != null ? smile : CountriesDataLoader.class.getResourceAsStream(INITIAL_RESTCOUNTRIES_JSON);
+    }
+
+    private Optional<Instant> loadStored(CountriesFileStore store, CountriesRawRepository countriesRawRepository) {
+        try {
+            return store.load(countriesRawRepository);
+        } catch (IOException e) {
+            logger.warn("Could not load stored countries data - " + e.getMessage());
+            return Optional.empty();
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package ucles.weblab.common.i18n.countries.config;
+
+import org.springframework.boot.actuate.health.AbstractHealthIndicator;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.Status;
+
+/**
+ * Reports whether the countries data has been loaded. Data which is still loading in the background means the
+ * application is out of service, since reads will wait for it, whereas data which will be loaded on first read does not.
+ *
+ * @since 18/10/26
+ */
+public class CountriesHealthIndicator extends AbstractHealthIndicator {
+    private final CountriesDataLoader loader;
+    private final CountriesDataLoader.Mode mode;
+
+    public CountriesHealthIndicator(CountriesDataLoader loader, CountriesDataLoader.Mode mode) {
+        this.loader = loader;
+        this.mode = mode;
+    }
+
+    @Override
+    protected void doHealthCheck(Health.Builder builder) throws Exception {
+        final CountriesDataLoader.State state = loader.getState();
+        switch (state) {
+            case LOADED:
+                builder.up();
+                break;
+            case FAILED:
+                builder.down();
+                break;
+            default:
+                builder.status(mode == CountriesDataLoader.Mode.LAZY ? Status.UP : Status.OUT_OF_SERVICE);
+                break;
+        }
+        builder.withDetail("state", state).withDetail("mode", mode);
+    }
+}
@@ -0,0 +1,81 @@
+package ucles.weblab.common.i18n.countries.config;
+
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.CounterService;
+import org.springframework.boot.actuate.metrics.GaugeService;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.context.event.EventListener;
+import ucles.weblab.common.i18n.countries.domain.CountriesRefreshedEvent;
+import ucles.weblab.common.i18n.countries.domain.CountriesUpdatedEvent;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Records metrics for each refresh of the countries data, and exposes the version and age of the data held as
+ * public metrics:
+ * <ul>
+ *     <li>{@code timer.countries.refresh} - how long each refresh took, including any retries</li>
+ *     <li>{@code counter.countries.refresh.modified}, {@code .not-modified} and {@code .failure} - how each refresh
+ *     ended</li>
+ *     <li>{@code histogram.countries.refresh.bytes} and {@code .countries} - the size of the data downloaded</li>
+ *     <li>{@code countries.data.version} - the version of the data held, which increases with every update</li>
+ *     <li>{@code countries.data.age} - the time in milliseconds since the data was last updated</li>
+ * </ul>
+ *
+ * @since 18/10/26
+ */
+public class CountriesMetrics implements PublicMetrics {
+    private final CounterService counterService;
+    private final GaugeService gaugeService;
+    private final Clock clock;
+    private volatile long version;
+    private volatile Instant updatedAt;
+
+    public CountriesMetrics(CounterService counterService, GaugeService gaugeService) {
+        this(counterService, gaugeService, Clock.systemUTC());
+    }
+
+    CountriesMetrics(CounterService counterService, GaugeService gaugeService, Clock clock) {
+        this.counterService = counterService;
+        this.gaugeService = gaugeService;
+        this.clock = clock;
+    }
+
+    @EventListener
+    public void onCountriesUpdated(CountriesUpdatedEvent event) {
+        updatedAt = clock.instant();
+        version = event.getVersion();
+    }
+
+    @EventListener
+    public void onCountriesRefreshed(CountriesRefreshedEvent event) {
+        gaugeService.submit("timer.countries.refresh", event.getDuration().toMillis());
+        if (event.getFailure().isPresent()) {
+            counterService.increment("countries.refresh.failure");
+        } else if (event.isModified()) {
+            counterService.increment("countries.refresh.modified");
+            gaugeService.submit("histogram.countries.refresh.bytes", event.getBytes());
+            gaugeService.submit("histogram.countries.refresh.countries", event.getCountries());
+        } else {
+            counterService.increment("countries.refresh.not-modified");
+        }
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        final List<Metric<?>> metrics = new ArrayList<>(2);
+        final Instant now = clock.instant();
+        final Instant lastUpdated = updatedAt;
+        metrics.add(new Metric<>("countries.data.version", version, Date.from(now)));
+        if (lastUpdated != null) {
+            metrics.add(new Metric<>("countries.data.age", Duration.between(lastUpdated, now).toMillis(), Date.from(now)));
+        }
+        return metrics;
+    }
+}
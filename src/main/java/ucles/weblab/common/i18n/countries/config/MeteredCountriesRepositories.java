@@ -0,0 +1,123 @@
+package ucles.weblab.common.i18n.countries.config;
+
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.actuate.metrics.CounterService;
+import org.springframework.boot.actuate.metrics.GaugeService;
+import org.springframework.util.ClassUtils;
+import ucles.weblab.common.i18n.countries.domain.CountriesRawRepository;
+import ucles.weblab.common.i18n.countries.domain.CountryRepository;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+/**
+ * Wraps every countries repository bean so that each call to a repository method records metrics, named after the
+ * method:
+ * <ul>
+ *     <li>{@code timer.countries.repository.<method>} - how long the call took</li>
+ *     <li>{@code counter.countries.repository.<method>.hit} and {@code .miss} - whether a single result was found</li>
+ *     <li>{@code histogram.countries.repository.<method>.size} - how many results were returned, or for an update
+ *     how many countries were loaded</li>
+ *     <li>{@code counter.countries.repository.<method>.failure} - calls which threw an exception</li>
+ * </ul>
+ * Overloaded methods share their metrics.
+ *
+ * @since 18/10/26
+ */
+public class MeteredCountriesRepositories implements BeanPostProcessor {
+    private static final String PREFIX = "countries.repository.";
+
+    private final Supplier<CounterService> counterService;
+    private final Supplier<GaugeService> gaugeService;
+
+    /**
+     * @param counterService supplies the counter service, looked up only when the first repository is wrapped
+     * @param gaugeService supplies the gauge service, looked up only when the first repository is wrapped
+     */
+    public MeteredCountriesRepositories(Supplier<CounterService> counterService, Supplier<GaugeService> gaugeService) {
+        this.counterService = counterService;
+        this.gaugeService = gaugeService;
+    }
+
+    @Override
+    public Object postProcessBeforeInitialization(Object bean, String beanName) throws BeansException {
+        return bean;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException {
+        if (bean instanceof CountriesRawRepository || bean instanceof CountryRepository) {
+            return metered(bean, counterService.get(), gaugeService.get());
+        }
+        return bean;
+    }
+
+    /**
+     * Wrap a repository in a proxy which implements all the same interfaces, recording metrics for the repository
+     * methods and passing any other calls straight through.
+     */
+    @SuppressWarnings("unchecked")
+    static <T> T metered(T repository, CounterService counterService, GaugeService gaugeService) {
+        return (T) Proxy.newProxyInstance(repository.getClass().getClassLoader(),
+                ClassUtils.getAllInterfaces(repository), new MeteredHandler(repository, counterService, gaugeService));
+    }
+
+    private static class MeteredHandler implements InvocationHandler {
+        private final Object target;
+        private final CounterService counterService;
+        private final GaugeService gaugeService;
+
+        MeteredHandler(Object target, CounterService counterService, GaugeService gaugeService) {
+            this.target = target;
+            this.counterService = counterService;
+            this.gaugeService = gaugeService;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            final Class<?> declaringClass = method.getDeclaringClass();
+            if (declaringClass != CountriesRawRepository.class && declaringClass != CountryRepository.class) {
+                return invokeTarget(method, args);
+            }
+            final String name = PREFIX + method.getName();
+            final long start = System.nanoTime();
+            try {
+                final Object result = invokeTarget(method, args);
+                record(name, result);
+                return result;
+            } catch (Throwable e) {
+                counterService.increment(name + ".failure");
+                throw e;
+            } finally {
+                gaugeService.submit("timer." + name, (System.nanoTime() - start) / 1e6);
+            }
+        }
+
+        private Object invokeTarget(Method method, Object[] args) throws Throwable {
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+
+        private void record(String name, Object result) {
+            if (result instanceof Optional) {
+                counterService.increment(name + (((Optional<?>) result).isPresent() ? ".hit" : ".miss"));
+            } else if (result instanceof Collection) {
+                gaugeService.submit("histogram." + name + ".size", ((Collection<?>) result).size());
+            } else if (result instanceof Map) {
+                gaugeService.submit("histogram." + name + ".size", ((Map<?, ?>) result).size());
+            } else if (result instanceof Integer) {
+                gaugeService.submit("histogram." + name + ".size", (Integer) result);
+            }
+        }
+    }
+}
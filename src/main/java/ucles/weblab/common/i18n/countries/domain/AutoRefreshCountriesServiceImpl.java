@@ -1,36 +1,173 @@
 package ucles.weblab.common.i18n.countries.domain;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.boot.json.JsonParserFactory;
-import org.springframework.http.HttpStatus;
-import org.springframework.http.ResponseEntity;
-import org.springframework.scheduling.annotation.Async;
-import org.springframework.scheduling.annotation.AsyncResult;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.ApplicationEventPublisherAware;
+import org.springframework.http.HttpMethod;
 import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
 import org.springframework.web.client.RestTemplate;
+import ucles.weblab.common.i18n.countries.domain.CountriesRefreshSupport.Fetched;
+import ucles.weblab.common.i18n.countries.domain.file.CountriesFileStore;
 
+import java.io.IOException;
 import java.net.URI;
-import java.util.List;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * Implementation of the service which as well as providing an on-demand refresh also schedules an automatic refresh
  * of country data every month.
+ * <p>
+ * Each refresh after the first is a conditional request, using the ETag and Last-Modified date of the last response,
+ * so data which has not been modified is not downloaded again. Data which is downloaded but is the same as before is
+ * recognised by the repository, and left alone. The refreshed data is also saved in any local file store provided,
+ * for the next start up, straight from the countries the repository has parsed, so the data is never held as a
+ * string during a refresh. The validators are saved with it, and taken from the data loaded from the store, so the
+ * first refresh after a restart is conditional too.
+ * </p>
+ * <p>
+ * At most one refresh is in progress at a time, and a fetch which fails with an I/O or server error is retried with
+ * a randomised exponential backoff. A {@link CountriesRefreshedEvent} is published when each refresh finishes. What
+ * does not depend on how the request is sent is shared with the non-blocking service, in {@link CountriesRefreshSupport}.
+ * </p>
+ * <p>
+ * Refreshes can also be coordinated across a cluster sharing a file store. Only the node holding the
+ * {@link CountriesRefreshLease} fetches the data, and the other nodes wait for it to store the result and then load
+ * that, so the cluster fetches the data once and every node ends up with the same version.
+ * </p>
  *
  * @since 18/05/15
  */
-public class AutoRefreshCountriesServiceImpl implements CountriesService, ScheduledRefresh {
+public class AutoRefreshCountriesServiceImpl implements CountriesService, ScheduledRefresh, ApplicationEventPublisherAware {
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
     private final URI countriesUri;
     private final CountriesRawRepository countriesRawRepository;
     private RestTemplate restTemplate;
+    private final Optional<CountriesFileStore> countriesFileStore;
+    private final Executor refreshExecutor;
+    private final Backoff backoff;
+    private final Optional<Coordination> coordination;
+    private final CountriesRefreshSupport refreshes;
+    /** The time of the stored data last loaded or saved by this node, if any. */
+    private volatile Instant storedVersion;
 
+    /**
+     * How many times to try fetching the data, and how long to wait between attempts. Each wait is a random time up to
+     * a limit which starts at the initial backoff and doubles after each attempt, up to the maximum backoff.
+     */
+    public static final class Backoff {
+        public static final Backoff NONE = new Backoff(1, Duration.ZERO, Duration.ZERO);
+
+        private final int maxAttempts;
+        private final Duration initialBackoff;
+        private final Duration maxBackoff;
+
+        public Backoff(int maxAttempts, Duration initialBackoff, Duration maxBackoff) {
+            this.maxAttempts = maxAttempts;
+            this.initialBackoff = initialBackoff;
+            this.maxBackoff = maxBackoff;
+        }
+
+        public int getMaxAttempts() {
+            return maxAttempts;
+        }
+
+        /**
+         * Choose how long to wait after a failed attempt before the next one.
+         *
+         * @param attempt the number of the attempt which failed, starting at 1
+         */
+        public long delayMillis(int attempt) {
+            final long limit = Math.min(maxBackoff.toMillis(), initialBackoff.toMillis() << Math.min(attempt - 1, 30));
+            return limit <= 0L ? 0L : ThreadLocalRandom.current().nextLong(limit + 1);
+        }
+    }
+
+    /**
+     * How refreshes are coordinated across a cluster. A node which cannot take the lease polls the shared file store
+     * until the data stored there is newer than its own, or until it can take the lease itself because the holder
+     * has released it without storing new data. It gives up if neither happens within the lease duration.
+     */
+    public static final class Coordination {
+        private final CountriesRefreshLease lease;
+        private final Duration leaseDuration;
+        private final Duration pollInterval;
+
+        /**
+         * @param leaseDuration how long a refresh may take before its lease expires, which should allow for retries
+         * @param pollInterval how often to check for data stored by another node
+         */
+        public Coordination(CountriesRefreshLease lease, Duration leaseDuration, Duration pollInterval) {
+            this.lease = lease;
+            this.leaseDuration = leaseDuration;
+            this.pollInterval = pollInterval;
+        }
+    }
+
+    /**
+     * Create a service which refreshes on the calling thread, without retrying.
+     */
     public AutoRefreshCountriesServiceImpl(URI countriesUri, CountriesRawRepository countriesRawRepository, RestTemplate restTemplate) {
+        this(countriesUri, countriesRawRepository, restTemplate, Optional.empty());
+    }
+
+    /**
+     * Create a service which refreshes on the calling thread, without retrying.
+     *
+     * @param countriesFileStore local store to keep a copy of the refreshed data in, if any
+     */
+    public AutoRefreshCountriesServiceImpl(URI countriesUri, CountriesRawRepository countriesRawRepository, RestTemplate restTemplate,
+                                           Optional<CountriesFileStore> countriesFileStore) {
+        this(countriesUri, countriesRawRepository, restTemplate, countriesFileStore, Runnable::run, Backoff.NONE);
+    }
+
+    /**
+     * @param countriesFileStore local store to keep a copy of the refreshed data in, if any
+     * @param refreshExecutor executor to run refreshes on, which should be bounded since a refresh may wait for a
+     *                        slow response
+     * @param backoff how to retry a failed fetch
+     */
+    public AutoRefreshCountriesServiceImpl(URI countriesUri, CountriesRawRepository countriesRawRepository, RestTemplate restTemplate,
+                                           Optional<CountriesFileStore> countriesFileStore, Executor refreshExecutor, Backoff backoff) {
+        this(countriesUri, countriesRawRepository, restTemplate, countriesFileStore, refreshExecutor, backoff, Optional.empty());
+    }
+
+    /**
+     * @param countriesFileStore local store to keep a copy of the refreshed data in, which must be shared between the
+     *                           nodes if refreshes are coordinated
+     * @param refreshExecutor executor to run refreshes on, which should be bounded since a refresh may wait for a
+     *                        slow response
+     * @param backoff how to retry a failed fetch
+     * @param coordination how to coordinate refreshes with other nodes, if at all
+     */
+    public AutoRefreshCountriesServiceImpl(URI countriesUri, CountriesRawRepository countriesRawRepository, RestTemplate restTemplate,
+                                           Optional<CountriesFileStore> countriesFileStore, Executor refreshExecutor, Backoff backoff,
+                                           Optional<Coordination> coordination) {
+        if (coordination.isPresent() && !countriesFileStore.isPresent()) {
+            throw new IllegalArgumentException("Coordinated refreshes need a shared file store");
+        }
         this.countriesUri = countriesUri;
         this.countriesRawRepository = countriesRawRepository;
         this.restTemplate = restTemplate;
+        this.countriesFileStore = countriesFileStore;
+        this.refreshExecutor = refreshExecutor;
+        this.backoff = backoff;
+        this.coordination = coordination;
+        this.refreshes = new CountriesRefreshSupport(this, countriesUri, countriesRawRepository, countriesFileStore);
+    }
+
+    @Override
+    public void setApplicationEventPublisher(ApplicationEventPublisher applicationEventPublisher) {
+        refreshes.setApplicationEventPublisher(applicationEventPublisher);
     }
 
     /**
@@ -43,25 +180,111 @@ public class AutoRefreshCountriesServiceImpl implements CountriesService, Schedu
 
     /**
      * {@inheritDoc}
-     * If any error occurs during the refresh the exception will be returned in the {@code Future}.
+     * The refresh runs on the refresh executor, and if a refresh is already in progress then this joins it rather than
+     * starting another. If any error occurs during the refresh the exception will be returned in the {@code Future}.
      *
-     * @return the refreshed data
+     * @return the refreshed data, which is only rendered as a string if the future is asked for it
      */
-    @Async
     @Override
     public Future<String> refreshRepository() {
-        logger.info("Refreshing countries data from REST Countries…");
-        final ResponseEntity<String> response = restTemplate.getForEntity(countriesUri, String.class);
-        final String body = response.getBody();
-        if (response.getStatusCode() != HttpStatus.OK) {
-            throw new IllegalStateException("Failed to invoke REST Countries at " + countriesUri + " - " + response.getStatusCode().toString() + "\n" + body);
+        return refreshes.startOrJoin(refresh -> refreshExecutor.execute(() -> {
+            Fetched fetched = null;
+            Throwable failure = null;
+            try {
+                fetched = coordination.isPresent() ? refreshCoordinated(coordination.get()) : refreshWithRetry();
+            } catch (RuntimeException | Error e) {
+                failure = e;
+            }
+            refresh.finish(fetched, failure);
+        }));
+    }
+
+    private Fetched refreshCoordinated(Coordination coordination) {
+        final CountriesFileStore store = countriesFileStore.get();
+        final long deadline = System.nanoTime() + coordination.leaseDuration.toNanos();
+        while (true) {
+            // Recent data which is newer than ours was stored by another node refreshing at about the same time.
+            if (adoptStored(store, coordination.leaseDuration)) {
+                return Fetched.NOT_MODIFIED;
+            }
+            if (coordination.lease.tryAcquire(coordination.leaseDuration)) {
+                try {
+                    // The last holder may have stored new data and released the lease since it was last checked.
+                    if (adoptStored(store, coordination.leaseDuration)) {
+                        return Fetched.NOT_MODIFIED;
+                    }
+                    return refreshWithRetry();
+                } finally {
+                    coordination.lease.release();
+                }
+            }
+            if (System.nanoTime() - deadline > 0L) {
+                throw new IllegalStateException("Timed out waiting for another node to refresh countries data");
+            }
+            logger.debug("Waiting for another node to refresh countries data");
+            try {
+                Thread.sleep(coordination.pollInterval.toMillis());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted waiting for another node to refresh countries data", e);
+            }
         }
-        // Ensure it parses OK, but we don't need to keep the result.
-        final List<Object> list = JsonParserFactory.getJsonParser().parseList(body);
-        logger.debug("Loaded countries - " + (list == null ? 0 : list.size()) + " countries returned");
+    }
+
+    /**
+     * Load the stored data if it is newer than the data this node last loaded or saved, and recent.
+     *
+     * @return whether the stored data was loaded
+     */
+    private boolean adoptStored(CountriesFileStore store, Duration maxAge) {
+        try {
+            final Optional<Instant> storedAt = store.storedAt();
+            if (!storedAt.isPresent() || !store.isFresh(storedAt.get(), maxAge)
+                    || (storedVersion != null && !storedAt.get().isAfter(storedVersion))) {
+                return false;
+            }
+            storedVersion = store.load(countriesRawRepository).orElse(storedAt.get());
+            refreshes.useValidators(store.getLoadedValidators());
+            logger.info("Loaded countries data refreshed by another node at " + storedVersion);
+            return true;
+        } catch (IOException e) {
+            logger.warn("Could not load stored countries data - " + e.getMessage());
+            return false;
+        }
+    }
+
+    private Fetched refreshWithRetry() {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return fetch();
+            } catch (ResourceAccessException | HttpServerErrorException e) {
+                if (attempt >= backoff.maxAttempts || e.getCause() instanceof JsonProcessingException) {
+                    throw e;
+                }
+                final long delay = backoff.delayMillis(attempt);
+                logger.warn("Failed to refresh countries data, attempt " + attempt + " of " + backoff.maxAttempts
+                        + ", retrying in " + delay + "ms - " + e.getMessage());
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
 
-        countriesRawRepository.updateAll(body);
-        logger.info("Finished refreshing countries data.");
-        return new AsyncResult<>(body);
+    private Fetched fetch() {
+        logger.info("Refreshing countries data from REST Countries…");
+        final Fetched fetched = restTemplate.execute(countriesUri, HttpMethod.GET, refreshes::prepare, refreshes::read);
+        refreshes.store(fetched);
+        if (coordination.isPresent()) {
+            try {
+                storedVersion = countriesFileStore.get().storedAt().orElse(null);
+            } catch (IOException e) {
+                logger.warn("Could not check stored countries data - " + e.getMessage());
+            }
+        }
+        return fetched;
     }
 }
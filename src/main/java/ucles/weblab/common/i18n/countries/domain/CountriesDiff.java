@@ -0,0 +1,187 @@
+package ucles.weblab.common.i18n.countries.domain;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static java.util.Collections.emptyList;
+import static java.util.Collections.unmodifiableList;
+import static java.util.Collections.unmodifiableSet;
+
+/**
+ * Structural difference between two versions of the REST Countries data, as the countries added, removed and changed,
+ * and which of their fields changed.
+ * <p>
+ * Countries are matched between the versions by their ISO 3166 2 letter code, or by name if they have no code. Fields
+ * are compared by value, so a nested value such as the translations changes if any part of it changes.
+ * </p>
+ *
+ * @since 18/10/26
+ */
+public final class CountriesDiff {
+    private static final String NAME = "name";
+    private static final String ALPHA_2_CODE = "alpha2Code";
+
+    public static final CountriesDiff NONE = new CountriesDiff(true, emptyList(), new BitSet());
+
+    /**
+     * A change to one country.
+     */
+    public static final class Change {
+        private final CountryChangedEvent.Type type;
+        private final String countryCode;
+        private final Set<String> fields;
+
+        Change(CountryChangedEvent.Type type, String countryCode, Set<String> fields) {
+            this.type = type;
+            this.countryCode = countryCode;
+            this.fields = unmodifiableSet(fields);
+        }
+
+        public CountryChangedEvent.Type getType() {
+            return type;
+        }
+
+        public String getCountryCode() {
+            return countryCode;
+        }
+
+        public Set<String> getFields() {
+            return fields;
+        }
+    }
+
+    private final boolean sameCountries;
+    private final List<Change> changes;
+    private final BitSet changedOrdinals;
+    private final Set<String> changedFields = new HashSet<>();
+
+    private CountriesDiff(boolean sameCountries, List<Change> changes, BitSet changedOrdinals) {
+        this.sameCountries = sameCountries;
+        this.changes = unmodifiableList(changes);
+        this.changedOrdinals = changedOrdinals;
+        changes.forEach(change -> changedFields.addAll(change.getFields()));
+    }
+
+    /**
+     * Compare two versions of the countries data.
+     */
+    public static CountriesDiff between(List<Map<String, Object>> previous, List<Map<String, Object>> current) {
+        final Map<String, Integer> previousByKey = byKey(previous);
+        final Map<String, Integer> currentByKey = byKey(current);
+        final List<Change> changes = new ArrayList<>();
+        final BitSet changedOrdinals = new BitSet(current.size());
+        currentByKey.forEach((key, ordinal) -> {
+            final Map<String, Object> country = current.get(ordinal);
+            final Integer previousOrdinal = previousByKey.get(key);
+            if (previousOrdinal == null) {
+                changes.add(new Change(CountryChangedEvent.Type.ADDED, countryCode(country), new TreeSet<>(country.keySet())));
+            } else {
+                final Set<String> fields = changedFields(previous.get(previousOrdinal), country);
+                if (!fields.isEmpty()) {
+                    changes.add(new Change(CountryChangedEvent.Type.CHANGED, countryCode(country), fields));
+                    changedOrdinals.set(ordinal);
+                }
+            }
+        });
+        previousByKey.forEach((key, ordinal) -> {
+            if (!currentByKey.containsKey(key)) {
+                final Map<String, Object> country = previous.get(ordinal);
+                changes.add(new Change(CountryChangedEvent.Type.REMOVED, countryCode(country), new TreeSet<>(country.keySet())));
+            }
+        });
+        return new CountriesDiff(new ArrayList<>(previousByKey.keySet()).equals(new ArrayList<>(currentByKey.keySet())),
+                changes, changedOrdinals);
+    }
+
+    /**
+     * Key each country by its code or name, numbering any repeats so that every key is unique.
+     *
+     * @return the ordinal of each country by its key, in order
+     */
+    private static Map<String, Integer> byKey(List<Map<String, Object>> countries) {
+        final Map<String, Integer> result = new LinkedHashMap<>();
+        for (int i = 0; i < countries.size(); i++) {
+            final Map<String, Object> country = countries.get(i);
+            final Object code = country.get(ALPHA_2_CODE);
+            final Object name = country.get(NAME);
+            final String key = code instanceof String ? (String) code : "name:" + name;
+            String uniqueKey = key;
+            for (int repeat = 1; result.containsKey(uniqueKey); repeat++) {
+                uniqueKey = key + '#' + repeat;
+            }
+            result.put(uniqueKey, i);
+        }
+        return result;
+    }
+
+    private static String countryCode(Map<String, Object> country) {
+        final Object code = country.get(ALPHA_2_CODE);
+        return code instanceof String ? (String) code : null;
+    }
+
+    private static Set<String> changedFields(Map<String, Object> previous, Map<String, Object> current) {
+        final Set<String> fields = new TreeSet<>();
+        previous.forEach((field, value) -> {
+            if (!Objects.equals(value, current.get(field))) {
+                fields.add(field);
+            }
+        });
+        current.keySet().stream().filter(field -> !previous.containsKey(field)).forEach(fields::add);
+        return fields;
+    }
+
+    /**
+     * Check if both versions have the same countries in the same order, so that each country has the same ordinal
+     * position in both, although some may have changed.
+     */
+    public boolean isSameCountries() {
+        return sameCountries;
+    }
+
+    /**
+     * Check if the countries at an ordinal position changed, when {@link #isSameCountries() the countries are the same}.
+     */
+    public boolean isChanged(int ordinal) {
+        return changedOrdinals.get(ordinal);
+    }
+
+    /**
+     * Get the ordinal positions of the countries which changed, when {@link #isSameCountries() the countries are the
+     * same}.
+     */
+    public List<Integer> getChangedOrdinals() {
+        final List<Integer> result = new ArrayList<>(changedOrdinals.cardinality());
+        changedOrdinals.stream().forEach(result::add);
+        return result;
+    }
+
+    /**
+     * Check if a derived view depending only on the given fields of each country could be carried over from the
+     * previous version unchanged - because the same countries are in the same order, and none of those fields changed.
+     * This is all or nothing for the view: a change to one of the fields for any one country means it is rebuilt.
+     */
+    public boolean isUnchanged(Collection<String> fields) {
+        return sameCountries && fields.stream().noneMatch(changedFields::contains);
+    }
+
+    public List<Change> getChanges() {
+        return changes;
+    }
+
+    /**
+     * Create the events announcing each change.
+     */
+    public List<CountryChangedEvent> toEvents(CountriesRawRepository source, long version) {
+        final List<CountryChangedEvent> events = new ArrayList<>(changes.size());
+        changes.forEach(change -> events.add(new CountryChangedEvent(source, version, change.getType(), change.getCountryCode(), change.getFields())));
+        return events;
+    }
+}
@@ -1,7 +1,19 @@
 package ucles.weblab.common.i18n.countries.domain;
 
+import org.springframework.util.StreamUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.regex.Pattern;
 
 /**
  * DDD repository interface - persistence-technology-neutral interface providing repository (i.e. CRUD) methods for
@@ -21,7 +33,34 @@ public interface CountriesRawRepository {
      */
     Optional<String> findAllRaw();
 
+    /**
+     * Find all the data as one JSON object per country, without rendering it as a string. By default this parses the
+     * raw data - repositories which hold the data parsed should override it to return that instead.
+     *
+     * @return an unmodifiable list of the countries, which must not be modified, or empty if there is no data
+     */
+    default Optional<List<Map<String, Object>>> findAllParsed() {
+        final Optional<String> rawData = findAllRaw();
+        return rawData.isPresent() ? Optional.of(Collections.unmodifiableList(RawCountries.parse(rawData))) : Optional.empty();
+    }
+
     void updateAll(String rawData);
+
+    /**
+     * Replace all the raw data with a JSON array of countries read from a stream, which is validated as it is read.
+     * The data may also be in the binary <a href='https://github.com/FasterXML/smile-format-specification'>Smile</a>
+     * form of JSON.
+     * If the data is not valid the existing data is kept, and if it is the same as the existing data nothing changes.
+     * By default this reads the whole stream as UTF-8 text and passes it to {@link #updateAll(String)}, so only
+     * supports JSON text - repositories should override it to parse the data as it is read.
+     *
+     * @return the number of countries read
+     * @throws IOException if the stream cannot be read or does not contain a JSON array of countries
+     */
+    default int updateAll(InputStream rawData) throws IOException {
+        updateAll(StreamUtils.copyToString(rawData, StandardCharsets.UTF_8));
+        return findAllParsed().map(List::size).orElse(0);
+    }
     
     /**
      * Get the country by iso 2 letter country code. 
@@ -35,6 +74,45 @@ public interface CountriesRawRepository {
      */
     Optional<? extends CountryEntity> findOneByAlpha2Code(String countryCode, String languageCode);
 
+    /**
+     * Get the country by iso 3 letter country code.
+     */
+    default Optional<? extends CountryEntity> findOneByAlpha3Code(String countryCode) {
+        return findOneByAlpha3Code(countryCode, null);
+    }
+
+    /**
+     * Get the country by iso 3 letter country code, country name is returned in the desired language.
+     * By default this scans the raw data for the code - repositories should override it with an indexed lookup.
+     */
+    default Optional<? extends CountryEntity> findOneByAlpha3Code(String countryCode, String languageCode) {
+        final Optional<String> alpha2Code = RawCountries.parse(findAllRaw()).stream()
+                .filter(country -> Objects.equals(countryCode, country.get(RawCountries.ALPHA_3_CODE)))
+                .map(country -> (String) country.get(RawCountries.ALPHA_2_CODE))
+                .findFirst();
+        return alpha2Code.isPresent() ? findOneByAlpha2Code(alpha2Code.get(), languageCode) : Optional.empty();
+    }
+
+    /**
+     * Get many countries by iso 2 letter country code in one call, all from the same version of the data, with country
+     * names in the desired language.
+     * By default this looks each code up in turn, so may see the data change part way - repositories should override
+     * it to find them all at once.
+     *
+     * @param languageCode  defaults to English
+     * @return the countries found keyed by country code, in the order the codes were given - codes which are not
+     *         found are omitted
+     */
+    default Map<String, ? extends CountryEntity> findAllByAlpha2Codes(Collection<String> countryCodes, String languageCode) {
+        final Map<String, CountryEntity> result = new LinkedHashMap<>();
+        for (String countryCode : countryCodes) {
+            if (!result.containsKey(countryCode)) {
+                findOneByAlpha2Code(countryCode, languageCode).ifPresent(country -> result.put(countryCode, country));
+            }
+        }
+        return result;
+    }
+
     /**
      * Fetches a list of countries by searching for the country name - search is case insensitive and unicode enabled,
      * and supports up to one language in addition to English.
@@ -44,6 +122,97 @@ public interface CountriesRawRepository {
      */
     List<? extends CountryEntity> findByNameContaining(String countrySearchString, String languageCode);
 
+    /**
+     * Fetches a list of countries by searching for the country name - search is case insensitive and unicode enabled,
+     * and looks in the English name, the translations into every language and the alternative spellings.
+     * By default this scans every country's names - repositories should override it with an indexed lookup.
+     *
+     * @param languageCode  defaults to English, the returned object's name will be in the given language
+     */
+    default List<? extends CountryEntity> findByAnyNameContaining(String countrySearchString, String languageCode) {
+        final Pattern searchString = Pattern.compile(Pattern.quote(countrySearchString.trim()), Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+        final List<String> alpha2Codes = RawCountries.alpha2Codes(findAllParsed().orElse(Collections.emptyList()).stream()
+                .filter(country -> RawCountries.names(country).anyMatch(name -> searchString.matcher(name).find())));
+        return alpha2Codes.isEmpty() ? Collections.emptyList() : new ArrayList<>(findAllByAlpha2Codes(alpha2Codes, languageCode).values());
+    }
+
+    /**
+     * Fetches the countries whose name starts with the given prefix, for suggesting countries as a user types. The
+     * search ignores case and accents. A country whose name matches the prefix exactly comes first, followed by the
+     * others in descending order of population.
+     * By default this scans every country's name - repositories should override it with an indexed lookup.
+     *
+     * @param languageCode  defaults to English, the language of the names to search and return - English names are
+     *                      used for a language which the data has no translations into
+     * @param limit         the maximum number of countries to return
+     */
+    default List<? extends CountryEntity> findByNameStartingWith(String prefix, String languageCode, int limit) {
+        final List<Map<String, Object>> countries = findAllParsed().orElse(Collections.emptyList());
+        final String searchLanguageCode = countries.stream().anyMatch(country -> RawCountries.name(country, languageCode) != null)
+                ? languageCode : RawCountries.ENGLISH;
+        final List<String> alpha2Codes = RawCountries.alpha2Codes(RawCountries.findByNameStartingWith(countries, prefix, searchLanguageCode, limit));
+        return alpha2Codes.isEmpty() ? Collections.emptyList() : new ArrayList<>(findAllByAlpha2Codes(alpha2Codes, searchLanguageCode).values());
+    }
+
+    /**
+     * Fetches the countries with a value of an attribute, such as all the countries in a region, in the order they
+     * appear in the data. Values are compared ignoring case.
+     * By default this scans every country for the value - repositories should override it with an indexed lookup.
+     *
+     * @param languageCode  defaults to English, the returned object's name will be in the given language
+     */
+    default List<? extends CountryEntity> findByAttribute(CountryAttribute attribute, String value, String languageCode) {
+        final String key = CountryAttribute.key(value);
+        final List<String> alpha2Codes = RawCountries.alpha2Codes(findAllParsed().orElse(Collections.emptyList()).stream()
+                .filter(country -> attribute.keys(country).contains(key)));
+        return alpha2Codes.isEmpty() ? Collections.emptyList() : new ArrayList<>(findAllByAlpha2Codes(alpha2Codes, languageCode).values());
+    }
+
+    /**
+     * Fetches the countries in a region, e.g. Europe.
+     *
+     * @see #findByAttribute(CountryAttribute, String, String)
+     */
+    default List<? extends CountryEntity> findByRegion(String region, String languageCode) {
+        return findByAttribute(CountryAttribute.REGION, region, languageCode);
+    }
+
+    /**
+     * Fetches the countries in a subregion, e.g. Western Europe.
+     *
+     * @see #findByAttribute(CountryAttribute, String, String)
+     */
+    default List<? extends CountryEntity> findBySubregion(String subregion, String languageCode) {
+        return findByAttribute(CountryAttribute.SUBREGION, subregion, languageCode);
+    }
+
+    /**
+     * Fetches the countries using a currency, by ISO 4217 code e.g. EUR.
+     *
+     * @see #findByAttribute(CountryAttribute, String, String)
+     */
+    default List<? extends CountryEntity> findByCurrency(String currencyCode, String languageCode) {
+        return findByAttribute(CountryAttribute.CURRENCY, currencyCode, languageCode);
+    }
+
+    /**
+     * Fetches the countries where a language is spoken, by ISO 639-1 code e.g. de.
+     *
+     * @see #findByAttribute(CountryAttribute, String, String)
+     */
+    default List<? extends CountryEntity> findBySpokenLanguage(String spokenLanguageCode, String languageCode) {
+        return findByAttribute(CountryAttribute.LANGUAGE, spokenLanguageCode, languageCode);
+    }
+
+    /**
+     * Fetches the countries in a timezone, e.g. UTC+01:00.
+     *
+     * @see #findByAttribute(CountryAttribute, String, String)
+     */
+    default List<? extends CountryEntity> findByTimezone(String timezone, String languageCode) {
+        return findByAttribute(CountryAttribute.TIMEZONE, timezone, languageCode);
+    }
+
     /**
      * Fetches the alpha2Code for a country by the country name and the language the country name is in.
      * @param languageCode  defaults to English, defines which language the country name is in (e.g. Australien is Australia in german (language code DE))
@@ -0,0 +1,28 @@
+package ucles.weblab.common.i18n.countries.domain;
+
+import java.time.Duration;
+
+/**
+ * A lease shared between the nodes of a cluster, held by whichever node is refreshing the countries data so that the
+ * others can wait for its result rather than all fetching the same data.
+ * <p>
+ * A lease expires if it is not released in time, so that a node which dies while refreshing does not stop the others
+ * refreshing for ever.
+ * </p>
+ *
+ * @since 18/10/26
+ */
+public interface CountriesRefreshLease {
+    /**
+     * Take the lease for this node if no other node holds it, or extend it if this node already does.
+     *
+     * @param duration how long to hold the lease for unless it is released first
+     * @return whether this node now holds the lease
+     */
+    boolean tryAcquire(Duration duration);
+
+    /**
+     * Release the lease, if this node holds it.
+     */
+    void release();
+}
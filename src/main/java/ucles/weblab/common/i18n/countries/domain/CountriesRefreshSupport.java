@@ -0,0 +1,312 @@
+package ucles.weblab.common.i18n.countries.domain;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.ClientHttpResponse;
+import ucles.weblab.common.i18n.countries.domain.file.CountriesFileStore;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import static java.util.Collections.singletonList;
+
+/**
+ * The parts of a refresh from REST Countries which do not depend on how the request is sent, shared by the blocking
+ * and non-blocking refresh services.
+ * <p>
+ * Concurrent refreshes are coalesced, so at most one is in progress at a time. Each request is conditional on the
+ * ETag and Last-Modified date of the last response, or of the data loaded from the file store at start up, and the
+ * response body is streamed straight into the repository, which validates it as it is read. Refreshed data is saved
+ * in any local file store provided straight from the countries the repository has parsed, and a
+ * {@link CountriesRefreshedEvent} is published when each refresh finishes.
+ * </p>
+ *
+ * @since 18/10/26
+ */
+public class CountriesRefreshSupport {
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final CountriesService source;
+    private final URI countriesUri;
+    private final CountriesRawRepository countriesRawRepository;
+    private final Optional<CountriesFileStore> countriesFileStore;
+    /** The refresh in progress, if any, which any further refresh requested meanwhile joins. */
+    private final AtomicReference<Refresh> inFlight = new AtomicReference<>();
+    /** Validators from the last response, sent so that REST Countries can tell us if nothing has changed since. */
+    private volatile String entityTag;
+    private volatile long lastModified = -1L;
+    /** Whether the validators have been taken from the stored data, or replaced by those of a response. */
+    private volatile boolean validatorsRestored;
+    private volatile ApplicationEventPublisher applicationEventPublisher;
+
+    /**
+     * @param source the service refreshing, which the refresh events are published from
+     * @param countriesFileStore local store to keep a copy of the refreshed data in, if any
+     */
+    public CountriesRefreshSupport(CountriesService source, URI countriesUri, CountriesRawRepository countriesRawRepository,
+                                   Optional<CountriesFileStore> countriesFileStore) {
+        this.source = source;
+        this.countriesUri = countriesUri;
+        this.countriesRawRepository = countriesRawRepository;
+        this.countriesFileStore = countriesFileStore;
+    }
+
+    public void setApplicationEventPublisher(ApplicationEventPublisher applicationEventPublisher) {
+        this.applicationEventPublisher = applicationEventPublisher;
+    }
+
+    /**
+     * Start a refresh, unless one is already in progress, in which case join that instead.
+     *
+     * @param runner starts the refresh, which must {@link Refresh#finish(Fetched, Throwable) finish} it however it
+     *               ends, unless the runner itself throws an exception
+     * @return the refresh
+     */
+    public Refresh startOrJoin(Consumer<Refresh> runner) {
+        final Refresh refresh = new Refresh();
+        if (!inFlight.compareAndSet(null, refresh)) {
+            final Refresh current = inFlight.get();
+            if (current != null) {
+                logger.debug("Joining countries data refresh already in progress");
+                return current;
+            }
+            return startOrJoin(runner);
+        }
+        try {
+            runner.accept(refresh);
+        } catch (RuntimeException e) {
+            refresh.finish(null, e);
+        }
+        return refresh;
+    }
+
+    /**
+     * Set the headers of a request for the countries data, making it conditional on the data already held.
+     */
+    public void prepare(HttpRequest request) {
+        restoreValidators();
+        request.getHeaders().setAccept(singletonList(MediaType.APPLICATION_JSON));
+        if (entityTag != null) {
+            request.getHeaders().setIfNoneMatch(entityTag);
+        }
+        if (lastModified >= 0L) {
+            request.getHeaders().setIfModifiedSince(lastModified);
+        }
+    }
+
+    /**
+     * Update the repository from a response to a request {@link #prepare(HttpRequest) prepared} here, streaming the
+     * body straight into it.
+     *
+     * @throws IllegalStateException if the response is neither new data nor a report that it has not been modified
+     * @throws IOException if the body cannot be read or is not valid countries data, in which case the repository is
+     *                     unchanged
+     */
+    public Fetched read(ClientHttpResponse response) throws IOException {
+        final Fetched fetched;
+        if (response.getStatusCode() == HttpStatus.NOT_MODIFIED) {
+            fetched = Fetched.NOT_MODIFIED;
+        } else if (response.getStatusCode() != HttpStatus.OK) {
+            throw new IllegalStateException("Failed to invoke REST Countries at " + countriesUri + " - " + response.getStatusCode().toString());
+        } else {
+            final CountingInputStream body = new CountingInputStream(response.getBody());
+            final int count = countriesRawRepository.updateAll(body);
+            logger.debug("Loaded countries - " + count + " countries returned");
+            useValidators(new CountriesFileStore.Validators(response.getHeaders().getETag(), response.getHeaders().getLastModified()));
+            fetched = new Fetched(true, body.count, count);
+        }
+        logger.info(fetched.modified ? "Finished refreshing countries data." : "Countries data has not been modified.");
+        return fetched;
+    }
+
+    /**
+     * Take the validators stored with the data loaded from the store at start up, the first time data is fetched.
+     */
+    private void restoreValidators() {
+        if (!validatorsRestored) {
+            countriesFileStore.ifPresent(store -> useValidators(store.getLoadedValidators()));
+            validatorsRestored = true;
+        }
+    }
+
+    /**
+     * Make the next request conditional on the given validators, e.g. those of data loaded from the file store.
+     */
+    public void useValidators(CountriesFileStore.Validators validators) {
+        entityTag = validators.getEntityTag();
+        lastModified = validators.getLastModified();
+        validatorsRestored = true;
+    }
+
+    /**
+     * Save the data in the file store, if there is one, straight from the repository's parsed countries along with
+     * its validators if it has been modified, or else record that the stored data is still current.
+     */
+    public void store(Fetched fetched) {
+        countriesFileStore.ifPresent(store -> {
+            try {
+                final Optional<List<Map<String, Object>>> countries = fetched.modified ? countriesRawRepository.findAllParsed() : Optional.empty();
+                if (countries.isPresent()) {
+                    store.save(countries.get(), new CountriesFileStore.Validators(entityTag, lastModified));
+                } else {
+                    store.touch();
+                }
+            } catch (IOException e) {
+                logger.warn("Could not store countries data locally - " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * The outcome of one successful fetch.
+     */
+    public static final class Fetched {
+        /** The outcome when the data has not been modified, or was adopted from elsewhere rather than fetched. */
+        public static final Fetched NOT_MODIFIED = new Fetched(false, 0L, 0);
+
+        private final boolean modified;
+        private final long bytes;
+        private final int countries;
+
+        Fetched(boolean modified, long bytes, int countries) {
+            this.modified = modified;
+            this.bytes = bytes;
+            this.countries = countries;
+        }
+    }
+
+    /**
+     * One refresh, which completes with the data in the repository once it has finished. The data is only rendered as
+     * a string when asked for, so that a refresh whose result is not wanted does not pay for it.
+     */
+    public final class Refresh implements Future<String> {
+        private final CompletableFuture<Fetched> outcome = new CompletableFuture<>();
+        private final long start = System.nanoTime();
+
+        private Refresh() { }
+
+        /**
+         * Finish the refresh, publishing its outcome and then completing it, so that a later refresh starts afresh.
+         * The refresh always completes, whatever any listener to the event does.
+         *
+         * @param fetched the outcome, if the refresh succeeded
+         * @param failure the reason the refresh failed, if it did
+         */
+        public void finish(Fetched fetched, Throwable failure) {
+            if (outcome.isDone()) {
+                return;
+            }
+            try {
+                publish(fetched, failure);
+            } catch (RuntimeException e) {
+                logger.warn("Failed to publish countries data refresh outcome", e);
+            } finally {
+                if (failure == null) {
+                    outcome.complete(fetched);
+                } else {
+                    outcome.completeExceptionally(failure);
+                }
+                inFlight.compareAndSet(this, null);
+            }
+        }
+
+        private void publish(Fetched fetched, Throwable failure) {
+            final ApplicationEventPublisher publisher = applicationEventPublisher;
+            if (publisher != null) {
+                final Duration duration = Duration.ofNanos(System.nanoTime() - start);
+                publisher.publishEvent(fetched == null
+                        ? new CountriesRefreshedEvent(source, duration, false, 0L, 0, failure)
+                        : new CountriesRefreshedEvent(source, duration, fetched.modified, fetched.bytes, fetched.countries, null));
+            }
+        }
+
+        /**
+         * Get the data in the repository once the refresh has finished, as a future which can be composed.
+         */
+        public CompletableFuture<String> toCompletableFuture() {
+            return outcome.thenApply(fetched -> countriesRawRepository.findAllRaw().orElse(null));
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            return outcome.cancel(mayInterruptIfRunning);
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return outcome.isCancelled();
+        }
+
+        @Override
+        public boolean isDone() {
+            return outcome.isDone();
+        }
+
+        @Override
+        public String get() throws InterruptedException, ExecutionException {
+            outcome.get();
+            return countriesRawRepository.findAllRaw().orElse(null);
+        }
+
+        @Override
+        public String get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+            outcome.get(timeout, unit);
+            return countriesRawRepository.findAllRaw().orElse(null);
+        }
+    }
+
+    private static final class CountingInputStream extends FilterInputStream {
+        long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            final int read = super.read(b, off, len);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            final long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package ucles.weblab.common.i18n.countries.domain;
+
+import org.springframework.context.ApplicationEvent;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Event published by a {@link CountriesService} when a refresh finishes, whether or not it succeeded and whether or
+ * not the data had changed.
+ *
+ * @since 18/10/26
+ */
+public class CountriesRefreshedEvent extends ApplicationEvent {
+    private final Duration duration;
+    private final boolean modified;
+    private final long bytes;
+    private final int countries;
+    private final Throwable failure;
+
+    public CountriesRefreshedEvent(CountriesService source, Duration duration, boolean modified, long bytes, int countries,
+                                   Throwable failure) {
+        super(source);
+        this.duration = duration;
+        this.modified = modified;
+        this.bytes = bytes;
+        this.countries = countries;
+        this.failure = failure;
+    }
+
+    /**
+     * How long the refresh took, including any retries.
+     */
+    public Duration getDuration() {
+        return duration;
+    }
+
+    /**
+     * Whether new data was downloaded, rather than the source reporting it had not been modified.
+     */
+    public boolean isModified() {
+        return modified;
+    }
+
+    /**
+     * The size of the data downloaded, or zero if none was.
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * The number of countries in the data downloaded, or zero if none was.
+     */
+    public int getCountries() {
+        return countries;
+    }
+
+    /**
+     * The exception the refresh failed with, if it did.
+     */
+    public Optional<Throwable> getFailure() {
+        return Optional.ofNullable(failure);
+    }
+}
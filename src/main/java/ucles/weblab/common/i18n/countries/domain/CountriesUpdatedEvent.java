@@ -0,0 +1,25 @@
+package ucles.weblab.common.i18n.countries.domain;
+
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * Event published by a {@link CountriesRawRepository} once new countries data is available to readers, so that any
+ * views derived from the previous data can be discarded.
+ *
+ * @since 18/10/26
+ */
+public class CountriesUpdatedEvent extends ApplicationEvent {
+    private final long version;
+
+    public CountriesUpdatedEvent(CountriesRawRepository source, long version) {
+        super(source);
+        this.version = version;
+    }
+
+    /**
+     * The version of the data now held by the repository, which increases with every update.
+     */
+    public long getVersion() {
+        return version;
+    }
+}
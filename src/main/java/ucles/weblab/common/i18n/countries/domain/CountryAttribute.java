@@ -0,0 +1,66 @@
+package ucles.weblab.common.i18n.countries.domain;
+
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Attributes of a country in the REST Countries data which countries can be found by, each of which a country has
+ * any number of values for.
+ * <p>
+ * Values are compared by {@link #key(String) key}, ignoring case and surrounding space.
+ * </p>
+ *
+ * @since 18/10/26
+ */
+public enum CountryAttribute {
+    REGION("region"),
+    SUBREGION("subregion"),
+    /** ISO 4217 currency codes. */
+    CURRENCY("currencies"),
+    /** ISO 639-1 language codes. */
+    LANGUAGE("languages"),
+    TIMEZONE("timezones");
+
+    private final String field;
+
+    CountryAttribute(String field) {
+        this.field = field;
+    }
+
+    /**
+     * Get the field of each country holding the attribute, which is either a string or an array of strings.
+     */
+    public String getField() {
+        return field;
+    }
+
+    /**
+     * Get the keys of the country's values of the attribute, without duplicates and ignoring empty values.
+     */
+    public Set<String> keys(Map<String, Object> country) {
+        final Object value = country.get(field);
+        final Set<String> keys = new LinkedHashSet<>();
+        if (value instanceof String) {
+            addKey(keys, value);
+        } else if (value instanceof Collection) {
+            ((Collection<?>) value).forEach(element -> addKey(keys, element));
+        }
+        return keys;
+    }
+
+    private static void addKey(Set<String> keys, Object value) {
+        if (value instanceof String && !((String) value).trim().isEmpty()) {
+            keys.add(key((String) value));
+        }
+    }
+
+    /**
+     * Get the key to compare a value by.
+     */
+    public static String key(String value) {
+        return value.trim().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,65 @@
+package ucles.weblab.common.i18n.countries.domain;
+
+import org.springframework.context.ApplicationEvent;
+
+import java.util.Set;
+
+/**
+ * Event published by a {@link CountriesRawRepository} for each country added, removed or changed by an update, so that
+ * views derived from particular countries can be discarded selectively. The events for an update are published once
+ * its data is available to readers, and before the {@link CountriesUpdatedEvent} for it.
+ *
+ * @since 18/10/26
+ */
+public class CountryChangedEvent extends ApplicationEvent {
+    public enum Type { ADDED, REMOVED, CHANGED }
+
+    private final long version;
+    private final Type type;
+    private final String countryCode;
+    private final Set<String> fields;
+
+    public CountryChangedEvent(CountriesRawRepository source, long version, Type type, String countryCode, Set<String> fields) {
+        super(source);
+        this.version = version;
+        this.type = type;
+        this.countryCode = countryCode;
+        this.fields = fields;
+    }
+
+    /**
+     * The version of the data the change was made in.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * The ISO 3166 2 letter code of the country, or {@code null} if it does not have one.
+     */
+    public String getCountryCode() {
+        return countryCode;
+    }
+
+    /**
+     * The names of the fields of the country in the REST Countries data which changed - all of them if it was added
+     * or removed.
+     */
+    public Set<String> getFields() {
+        return fields;
+    }
+
+    @Override
+    public String toString() {
+        return "CountryChangedEvent{" +
+                "version=" + version +
+                ", type=" + type +
+                ", countryCode='" + countryCode + '\'' +
+                ", fields=" + fields +
+                '}';
+    }
+}
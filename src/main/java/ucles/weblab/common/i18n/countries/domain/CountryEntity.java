@@ -14,10 +14,25 @@ public interface CountryEntity extends Country, Buildable<CountryEntity> {
     String getName();
     String getIso3166Alpha2Code();
 
+    /**
+     * Get the ISO 3166-1 alpha-3 code, or {@code null} if the entity does not know it.
+     */
+    default String getIso3166Alpha3Code() {
+        return null;
+    }
+
     interface Builder extends Buildable.Builder<CountryEntity> {
         Builder name(String name);
         Builder population(Optional<Long> population);
         Builder iso3166Alpha2Code(String alpha2Code);
+
+        /**
+         * Set the ISO 3166-1 alpha-3 code, which is ignored by builders which do not support it.
+         */
+        default Builder iso3166Alpha3Code(String alpha3Code) {
+            return this;
+        }
+
         Builder callingCodes(List<String> callingCodes);
     }
 }
@@ -0,0 +1,31 @@
+package ucles.weblab.common.i18n.countries.domain;
+
+import java.text.Normalizer;
+
+/**
+ * Helpers for comparing country names as a user would type them.
+ *
+ * @since 18/10/26
+ */
+public final class CountryNames {
+    private CountryNames() {
+    }
+
+    /**
+     * Fold each character to lower case without any accents. Folding is done character by character, so that
+     * the folded form of a string is the concatenation of the folded forms of its characters.
+     */
+    public static String fold(String s) {
+        final StringBuilder folded = new StringBuilder(s.length());
+        s.codePoints().forEach(codePoint -> {
+            if (codePoint < 0x80) {
+                folded.append((char) Character.toLowerCase(codePoint));
+            } else {
+                Normalizer.normalize(new String(Character.toChars(codePoint)), Normalizer.Form.NFD).codePoints()
+                        .filter(c -> Character.getType(c) != Character.NON_SPACING_MARK)
+                        .forEach(c -> folded.appendCodePoint(Character.toLowerCase(Character.toUpperCase(c))));
+            }
+        });
+        return folded.toString();
+    }
+}
@@ -0,0 +1,135 @@
+package ucles.weblab.common.i18n.countries.domain;
+
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.ApplicationEventPublisherAware;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Repository which delegates to another, but runs a gate before every read, e.g. to wait until the data has been
+ * loaded. Updates are not gated, so that the gate itself may load the data. It is a {@link CountryRepository} as well
+ * as a {@link CountriesRawRepository}, like the repositories it delegates to, so that either can be injected.
+ *
+ * @since 18/10/26
+ */
+public class GatedCountriesRawRepository implements CountriesRawRepository, CountryRepository, ApplicationEventPublisherAware {
+    private final CountriesRawRepository delegate;
+    private final CountryRepository countryDelegate;
+    private final Runnable gate;
+
+    /**
+     * @param gate run before every read, which returns when the delegate is ready or throws an exception if it never
+     *             will be
+     */
+    public <R extends CountriesRawRepository & CountryRepository> GatedCountriesRawRepository(R delegate, Runnable gate) {
+        this.delegate = delegate;
+        this.countryDelegate = delegate;
+        this.gate = gate;
+    }
+
+    @Override
+    public void setApplicationEventPublisher(ApplicationEventPublisher applicationEventPublisher) {
+        if (delegate instanceof ApplicationEventPublisherAware) {
+            ((ApplicationEventPublisherAware) delegate).setApplicationEventPublisher(applicationEventPublisher);
+        }
+    }
+
+    @Override
+    public Optional<? extends CountryEntity> findOneByName(String name) {
+        gate.run();
+        return countryDelegate.findOneByName(name);
+    }
+
+    @Override
+    public List<? extends CountryEntity> findAll() {
+        gate.run();
+        return countryDelegate.findAll();
+    }
+
+    @Override
+    public Optional<String> findAllRaw() {
+        gate.run();
+        return delegate.findAllRaw();
+    }
+
+    @Override
+    public Optional<List<Map<String, Object>>> findAllParsed() {
+        gate.run();
+        return delegate.findAllParsed();
+    }
+
+    @Override
+    public void updateAll(String rawData) {
+        delegate.updateAll(rawData);
+    }
+
+    @Override
+    public int updateAll(InputStream rawData) throws IOException {
+        return delegate.updateAll(rawData);
+    }
+
+    @Override
+    public Optional<? extends CountryEntity> findOneByAlpha2Code(String countryCode) {
+        gate.run();
+        return delegate.findOneByAlpha2Code(countryCode);
+    }
+
+    @Override
+    public Optional<? extends CountryEntity> findOneByAlpha2Code(String countryCode, String languageCode) {
+        gate.run();
+        return delegate.findOneByAlpha2Code(countryCode, languageCode);
+    }
+
+    @Override
+    public Optional<? extends CountryEntity> findOneByAlpha3Code(String countryCode) {
+        gate.run();
+        return delegate.findOneByAlpha3Code(countryCode);
+    }
+
+    @Override
+    public Optional<? extends CountryEntity> findOneByAlpha3Code(String countryCode, String languageCode) {
+        gate.run();
+        return delegate.findOneByAlpha3Code(countryCode, languageCode);
+    }
+
+    @Override
+    public Map<String, ? extends CountryEntity> findAllByAlpha2Codes(Collection<String> countryCodes, String languageCode) {
+        gate.run();
+        return delegate.findAllByAlpha2Codes(countryCodes, languageCode);
+    }
+
+    @Override
+    public List<? extends CountryEntity> findByNameContaining(String countrySearchString, String languageCode) {
+        gate.run();
+        return delegate.findByNameContaining(countrySearchString, languageCode);
+    }
+
+    @Override
+    public List<? extends CountryEntity> findByAnyNameContaining(String countrySearchString, String languageCode) {
+        gate.run();
+        return delegate.findByAnyNameContaining(countrySearchString, languageCode);
+    }
+
+    @Override
+    public List<? extends CountryEntity> findByNameStartingWith(String prefix, String languageCode, int limit) {
+        gate.run();
+        return delegate.findByNameStartingWith(prefix, languageCode, limit);
+    }
+
+    @Override
+    public List<? extends CountryEntity> findByAttribute(CountryAttribute attribute, String value, String languageCode) {
+        gate.run();
+        return delegate.findByAttribute(attribute, value, languageCode);
+    }
+
+    @Override
+    public Optional<String> getCodeByNameAndLocale(String countryName, String languageCode) {
+        gate.run();
+        return delegate.getCodeByNameAndLocale(countryName, languageCode);
+    }
+}
@@ -0,0 +1,122 @@
+package ucles.weblab.common.i18n.countries.domain;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.AbstractMap;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static java.util.Collections.emptyList;
+
+/**
+ * Parses the raw countries data for the default implementations of {@link CountriesRawRepository} lookups, which
+ * scan every country rather than using an index.
+ *
+ * @since 18/10/26
+ */
+final class RawCountries {
+    static final String ENGLISH = "en";
+    static final String ALPHA_2_CODE = "alpha2Code";
+    static final String ALPHA_3_CODE = "alpha3Code";
+    static final String NAME = "name";
+    static final String TRANSLATIONS = "translations";
+    static final String ALT_SPELLINGS = "altSpellings";
+    static final String POPULATION = "population";
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final TypeReference<List<Map<String, Object>>> COUNTRIES_TYPE = new TypeReference<List<Map<String, Object>>>() { };
+
+    private RawCountries() {
+    }
+
+    /**
+     * @return the countries, or an empty list if there is no data
+     */
+    static List<Map<String, Object>> parse(Optional<String> rawData) {
+        if (!rawData.isPresent()) {
+            return emptyList();
+        }
+        try {
+            return objectMapper.readValue(rawData.get(), COUNTRIES_TYPE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Countries data could not be parsed", e);
+        }
+    }
+
+    /**
+     * Get every name of the country - its English name, its translations and its alternative spellings.
+     */
+    static Stream<String> names(Map<String, Object> country) {
+        final Object translations = country.get(TRANSLATIONS);
+        final Object altSpellings = country.get(ALT_SPELLINGS);
+        return Stream.of(
+                Stream.of(country.get(NAME)),
+                translations instanceof Map ? ((Map<?, ?>) translations).values().stream() : Stream.empty(),
+                altSpellings instanceof Collection ? ((Collection<?>) altSpellings).stream() : Stream.empty())
+                .flatMap(Function.identity())
+                .filter(String.class::isInstance)
+                .map(String.class::cast);
+    }
+
+    /**
+     * Get the name of the country in the given language, or its English name if the language is English.
+     *
+     * @return the name, or null if it has none in the language
+     */
+    static String name(Map<String, Object> country, String languageCode) {
+        final Object name;
+        if (languageCode == null || languageCode.equals(ENGLISH)) {
+            name = country.get(NAME);
+        } else {
+            final Object translations = country.get(TRANSLATIONS);
+            name = translations instanceof Map ? ((Map<?, ?>) translations).get(languageCode) : null;
+        }
+        return name instanceof String ? (String) name : null;
+    }
+
+    /**
+     * Rank the countries whose name in the given language starts with the prefix, ignoring case and accents. A country
+     * whose whole name matches comes first, and the rest are ordered by descending population and then by name.
+     *
+     * @return the countries, at most {@code limit} of them
+     */
+    static Stream<Map<String, Object>> findByNameStartingWith(List<Map<String, Object>> countries, String prefix, String languageCode, int limit) {
+        final String foldedPrefix = CountryNames.fold(prefix.trim());
+        final Comparator<Map.Entry<String, Map<String, Object>>> ranking = Comparator
+                .comparing((Map.Entry<String, Map<String, Object>> entry) -> entry.getKey().length() != foldedPrefix.length())
+                .thenComparing(entry -> population(entry.getValue()), Comparator.reverseOrder())
+                .thenComparing(Map.Entry::getKey);
+        return countries.stream()
+                .filter(country -> name(country, languageCode) != null)
+                .map(country -> new AbstractMap.SimpleImmutableEntry<>(CountryNames.fold(name(country, languageCode)), country))
+                .filter(entry -> entry.getKey().startsWith(foldedPrefix))
+                .sorted(ranking)
+                .limit(Math.max(limit, 0))
+                .map(Map.Entry::getValue);
+    }
+
+    private static long population(Map<String, Object> country) {
+        final Object population = country.get(POPULATION);
+        return population instanceof Number ? ((Number) population).longValue() : 0L;
+    }
+
+    /**
+     * Get the alpha-2 codes of the countries, in order.
+     */
+    static List<String> alpha2Codes(Stream<Map<String, Object>> countries) {
+        return countries
+                .map(country -> country.get(ALPHA_2_CODE))
+                .filter(String.class::isInstance)
+                .map(String.class::cast)
+                .collect(Collectors.toList());
+    }
+}
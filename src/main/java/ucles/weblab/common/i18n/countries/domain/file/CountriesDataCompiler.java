@@ -0,0 +1,47 @@
+package ucles.weblab.common.i18n.countries.domain.file;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Build step which compiles the bundled REST Countries JSON data into its binary Smile form, so that it can be loaded
+ * at start up without parsing any JSON text. It is run by the build at the {@code process-classes} phase.
+ * <p>
+ * Only the data is compiled, not the repository's indexes. Loading it still decodes the Smile tokens and builds the
+ * indexes at start up, which is cheaper than parsing the JSON but not free; the indexes are kept out of the compiled
+ * form so that it stays the same data the local file store and REST Countries provide.
+ * </p>
+ * <p>
+ * Usage: {@code CountriesDataCompiler <source JSON file> <target Smile file>}
+ * </p>
+ *
+ * @since 18/10/26
+ */
+public final class CountriesDataCompiler {
+    private CountriesDataCompiler() { }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            throw new IllegalArgumentException("Usage: CountriesDataCompiler <source JSON file> <target Smile file>");
+        }
+        compile(Paths.get(args[0]), Paths.get(args[1]));
+    }
+
+    static void compile(Path source, Path target) throws IOException {
+        if (target.getParent() != null) {
+            Files.createDirectories(target.getParent());
+        }
+        try (final InputStream in = Files.newInputStream(source);
+             final JsonParser parser = new JsonFactory().createParser(in);
+             final OutputStream out = Files.newOutputStream(target)) {
+            CountriesFileStore.writeSmile(parser, out);
+        }
+    }
+}
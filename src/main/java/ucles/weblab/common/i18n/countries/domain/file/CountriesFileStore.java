@@ -0,0 +1,264 @@
+package ucles.weblab.common.i18n.countries.domain.file;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ucles.weblab.common.i18n.countries.domain.CountriesRawRepository;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+
+/**
+ * Local copy of the last countries data successfully refreshed from REST Countries, so that an application can start
+ * with recent data, and without a refresh if it is recent enough.
+ * <p>
+ * The data is kept in the binary <a href='https://github.com/FasterXML/smile-format-specification'>Smile</a> form of
+ * JSON, which is more compact and faster to parse. It is always replaced atomically, so a reader never sees a partly
+ * written file, and is read memory-mapped. The time the data was last known to be current is the file's last modified
+ * time.
+ * </p>
+ * <p>
+ * The ETag and Last-Modified validators of the response the data came from are kept beside it, so that the first
+ * refresh after a restart can still be a conditional request. They are removed before the data is replaced and
+ * written after it, and read before it, so they are never taken to belong to data they did not come from.
+ * </p>
+ *
+ * @since 18/10/26
+ */
+public class CountriesFileStore {
+    static final String FILE_NAME = "countries.sml";
+    static final String VALIDATORS_FILE_NAME = "countries.validators";
+    private static final String ENTITY_TAG = "etag";
+    private static final String LAST_MODIFIED = "last-modified";
+
+    private static final JsonFactory jsonFactory = new JsonFactory();
+    private static final SmileFactory smileFactory = new SmileFactory().enable(SmileGenerator.Feature.CHECK_SHARED_STRING_VALUES);
+    private static final ObjectMapper smileMapper = new ObjectMapper(smileFactory);
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final Path file;
+    private final Path validatorsFile;
+    private final Duration maxAge;
+    private final Clock clock;
+    /** Validators of the data last loaded by this store. */
+    private volatile Validators loadedValidators = Validators.NONE;
+
+    /**
+     * The HTTP validators of the response some countries data came from.
+     */
+    public static final class Validators {
+        public static final Validators NONE = new Validators(null, -1L);
+
+        private final String entityTag;
+        private final long lastModified;
+
+        /**
+         * @param entityTag the ETag, or {@code null} if there was none
+         * @param lastModified the Last-Modified date in milliseconds, or -1 if there was none
+         */
+        public Validators(String entityTag, long lastModified) {
+            this.entityTag = entityTag;
+            this.lastModified = lastModified;
+        }
+
+        public String getEntityTag() {
+            return entityTag;
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        boolean isEmpty() {
+            return entityTag == null && lastModified < 0L;
+        }
+    }
+
+    public CountriesFileStore(Path directory, Duration maxAge) {
+        this(directory, maxAge, Clock.systemUTC());
+    }
+
+    CountriesFileStore(Path directory, Duration maxAge, Clock clock) {
+        this.file = directory.resolve(FILE_NAME);
+        this.validatorsFile = directory.resolve(VALIDATORS_FILE_NAME);
+        this.maxAge = maxAge;
+        this.clock = clock;
+    }
+
+    /**
+     * Load the stored data into the repository, if there is any.
+     *
+     * @return the time the stored data was last known to be current, or empty if there is no stored data
+     * @throws IOException if the stored data cannot be read, in which case the repository is unchanged
+     */
+    public Optional<Instant> load(CountriesRawRepository repository) throws IOException {
+        if (!Files.isRegularFile(file)) {
+            return Optional.empty();
+        }
+        final Validators validators = readValidators();
+        final Instant savedAt = Files.getLastModifiedTime(file).toInstant();
+        try (final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final int count = repository.updateAll(new ByteBufferBackedInputStream(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())));
+            logger.info("Loaded stored countries data from " + file + " - " + count + " countries available.");
+        }
+        loadedValidators = validators;
+        return Optional.of(savedAt);
+    }
+
+    /**
+     * Get the validators of the response the data last loaded by this store came from.
+     *
+     * @return the validators, or {@link Validators#NONE} if no data has been loaded or it was stored without them
+     */
+    public Validators getLoadedValidators() {
+        return loadedValidators;
+    }
+
+    private Validators readValidators() throws IOException {
+        final Properties properties = new Properties();
+        try (final InputStream in = Files.newInputStream(validatorsFile)) {
+            properties.load(in);
+        } catch (NoSuchFileException e) {
+            return Validators.NONE;
+        }
+        try {
+            return new Validators(properties.getProperty(ENTITY_TAG), Long.parseLong(properties.getProperty(LAST_MODIFIED, "-1")));
+        } catch (NumberFormatException e) {
+            logger.warn("Ignoring invalid stored countries data validators - " + e.getMessage());
+            return Validators.NONE;
+        }
+    }
+
+    /**
+     * Get the time the stored data was last known to be current, without loading it.
+     *
+     * @return the time, or empty if there is no stored data
+     */
+    public Optional<Instant> storedAt() throws IOException {
+        try {
+            return Optional.of(Files.getLastModifiedTime(file).toInstant());
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Check if data last known to be current at the given time is recent enough not to need refreshing.
+     */
+    public boolean isFresh(Instant savedAt) {
+        return isFresh(savedAt, maxAge);
+    }
+
+    /**
+     * Check if data last known to be current at the given time is no older than the given age.
+     */
+    public boolean isFresh(Instant savedAt, Duration maxAge) {
+        return !savedAt.plus(maxAge).isBefore(clock.instant());
+    }
+
+    /**
+     * Replace the stored data with new raw countries data.
+     */
+    public void save(String rawData) throws IOException {
+        replace(Validators.NONE, out -> {
+            try (final JsonParser parser = jsonFactory.createParser(rawData)) {
+                writeSmile(parser, out);
+            }
+        });
+    }
+
+    /**
+     * Replace the stored data with countries already parsed, writing them straight out without rendering them as a
+     * string first.
+     */
+    public void save(List<? extends Map<String, ?>> countries) throws IOException {
+        save(countries, Validators.NONE);
+    }
+
+    /**
+     * Replace the stored data with countries already parsed, along with the validators of the response they came
+     * from.
+     */
+    public void save(List<? extends Map<String, ?>> countries, Validators validators) throws IOException {
+        replace(validators, out -> smileMapper.writeValue(out, countries));
+    }
+
+    private interface Writer {
+        void write(OutputStream out) throws IOException;
+    }
+
+    private void replace(Validators validators, Writer writer) throws IOException {
+        Files.createDirectories(file.getParent());
+        Files.deleteIfExists(validatorsFile);
+        replace(file, writer);
+        logger.debug("Stored countries data in " + file);
+        if (!validators.isEmpty()) {
+            final Properties properties = new Properties();
+            if (validators.entityTag != null) {
+                properties.setProperty(ENTITY_TAG, validators.entityTag);
+            }
+            properties.setProperty(LAST_MODIFIED, Long.toString(validators.lastModified));
+            replace(validatorsFile, out -> properties.store(out, null));
+        }
+    }
+
+    private void replace(Path target, Writer writer) throws IOException {
+        final Path temporaryFile = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+        try {
+            try (final OutputStream out = Files.newOutputStream(temporaryFile)) {
+                writer.write(out);
+            }
+            Files.setLastModifiedTime(temporaryFile, FileTime.from(clock.instant()));
+            try {
+                Files.move(temporaryFile, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporaryFile, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temporaryFile);
+        }
+    }
+
+    /**
+     * Write JSON data to a stream in Smile form.
+     */
+    static void writeSmile(JsonParser parser, OutputStream out) throws IOException {
+        try (final JsonGenerator generator = smileFactory.createGenerator(out)) {
+            while (parser.nextToken() != null) {
+                generator.copyCurrentEvent(parser);
+            }
+        }
+    }
+
+    /**
+     * Record that the stored data is still current, if there is any.
+     */
+    public void touch() throws IOException {
+        if (Files.isRegularFile(file)) {
+            Files.setLastModifiedTime(file, FileTime.from(clock.instant()));
+        }
+    }
+}
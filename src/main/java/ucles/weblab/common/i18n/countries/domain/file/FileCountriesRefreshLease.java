@@ -0,0 +1,118 @@
+package ucles.weblab.common.i18n.countries.domain.file;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ucles.weblab.common.i18n.countries.domain.CountriesRefreshLease;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Refresh lease held as a file in a directory shared between nodes, such as the directory of a shared
+ * {@link CountriesFileStore}. The file names the node holding the lease and when the lease expires.
+ * <p>
+ * The file is created by linking a complete temporary file into place, which fails if the lease file already exists,
+ * so two nodes can never both create it. Taking over an expired lease is not atomic though, so this is intended for
+ * testing and small deployments rather than as a reliable lock - use a database lease for that.
+ * </p>
+ *
+ * @since 18/10/26
+ */
+public class FileCountriesRefreshLease implements CountriesRefreshLease {
+    static final String FILE_NAME = "countries.lease";
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final Path file;
+    private final String owner;
+    private final Clock clock;
+
+    /**
+     * @param owner identifies this node, and must be different for every node sharing the directory
+     */
+    public FileCountriesRefreshLease(Path directory, String owner) {
+        this(directory, owner, Clock.systemUTC());
+    }
+
+    FileCountriesRefreshLease(Path directory, String owner, Clock clock) {
+        this.file = directory.resolve(FILE_NAME);
+        this.owner = owner;
+        this.clock = clock;
+    }
+
+    @Override
+    public boolean tryAcquire(Duration duration) {
+        try {
+            final Optional<Holder> holder = read();
+            if (holder.isPresent() && !holder.get().owner.equals(owner) && holder.get().expiresAt.isAfter(clock.instant())) {
+                return false;
+            }
+            if (holder.isPresent()) {
+                // Our own lease to extend, or an expired one to take over.
+                Files.deleteIfExists(file);
+            }
+            return create(clock.instant().plus(duration));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void release() {
+        try {
+            final Optional<Holder> holder = read();
+            if (holder.isPresent() && holder.get().owner.equals(owner)) {
+                Files.deleteIfExists(file);
+            }
+        } catch (IOException e) {
+            logger.warn("Could not release countries refresh lease " + file + " - " + e.getMessage());
+        }
+    }
+
+    private boolean create(Instant expiresAt) throws IOException {
+        Files.createDirectories(file.getParent());
+        final Path temporaryFile = Files.createTempFile(file.getParent(), FILE_NAME, ".tmp");
+        try {
+            Files.write(temporaryFile, (owner + '\n' + expiresAt + '\n').getBytes(StandardCharsets.UTF_8));
+            Files.createLink(file, temporaryFile);
+            return true;
+        } catch (FileAlreadyExistsException e) {
+            return false;
+        } finally {
+            Files.deleteIfExists(temporaryFile);
+        }
+    }
+
+    private Optional<Holder> read() throws IOException {
+        try {
+            final List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+            return Optional.of(new Holder(lines.get(0), Instant.parse(lines.get(1))));
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        } catch (IndexOutOfBoundsException | DateTimeParseException e) {
+            logger.warn("Ignoring unreadable countries refresh lease " + file);
+            return Optional.of(new Holder("", Instant.EPOCH));
+        }
+    }
+
+    private static class Holder {
+        final String owner;
+        final Instant expiresAt;
+
+        Holder(String owner, Instant expiresAt) {
+            this.owner = owner;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
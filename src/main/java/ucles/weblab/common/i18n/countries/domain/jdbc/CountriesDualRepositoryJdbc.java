@@ -0,0 +1,640 @@
+package ucles.weblab.common.i18n.countries.domain.jdbc;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.format.DataFormatDetector;
+import com.fasterxml.jackson.core.format.DataFormatMatcher;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.ApplicationEventPublisherAware;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.DigestUtils;
+import ucles.weblab.common.i18n.countries.domain.CountriesDiff;
+import ucles.weblab.common.i18n.countries.domain.CountriesRawRepository;
+import ucles.weblab.common.i18n.countries.domain.CountriesUpdatedEvent;
+import ucles.weblab.common.i18n.countries.domain.CountryAttribute;
+import ucles.weblab.common.i18n.countries.domain.CountryChangedEvent;
+import ucles.weblab.common.i18n.countries.domain.CountryEntity;
+import ucles.weblab.common.i18n.countries.domain.CountryNames;
+import ucles.weblab.common.i18n.countries.domain.CountryRepository;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+import static java.util.Collections.emptyList;
+import static java.util.Collections.emptyMap;
+import static java.util.Collections.unmodifiableList;
+import static java.util.Collections.unmodifiableMap;
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Implementation of the repository interface which stores countries data in a relational database, so that it can
+ * be shared by every node of an application.
+ * <p>
+ * The raw data is kept as it was given, and each country is also stored normalised into indexed tables of countries,
+ * their translations, alternative spellings, calling codes and the values of each {@link CountryAttribute}, created by
+ * {@code schema-countries.sql}. Every update
+ * is applied in a single transaction using batched inserts, and increments the version of the data. If it has the same
+ * countries in the same order as the stored data, only the rows of the countries which changed are replaced, and
+ * otherwise all of them are. An update with the same raw data as is stored, by MD5 digest, is ignored.
+ * </p>
+ * <p>
+ * Reads go through a bounded in-memory cache of results, which is discarded when the version of the data in the
+ * database changes. The version is checked at most once per interval, so updates made by other nodes are seen within
+ * that interval. Whenever a new version is seen, including one stored by this node, a {@link CountriesUpdatedEvent}
+ * is sent to any application event publisher provided. For an update made by this node, it is preceded by a
+ * {@link CountryChangedEvent} for each country added, removed or changed.
+ * </p>
+ * <p>
+ * Names are compared as the in-memory repository compares them. Searches use an index of case-folded and
+ * accent-folded names to find candidates, which are then checked against the exact matching rules.
+ * </p>
+ *
+ * @since 18/10/26
+ */
+public class CountriesDualRepositoryJdbc implements CountriesRawRepository, CountryRepository, ApplicationEventPublisherAware {
+    private static final String ENGLISH = "en";
+    private static final String NAME = "name";
+    private static final String ALPHA_2_CODE = "alpha2Code";
+    private static final String ALPHA_3_CODE = "alpha3Code";
+    private static final String POPULATION = "population";
+    private static final String TRANSLATIONS = "translations";
+    private static final String ALT_SPELLINGS = "altSpellings";
+    private static final String CALLING_CODES = "callingCodes";
+    private static final int DATA_ID = 1;
+    private static final char LIKE_ESCAPE = '!';
+
+    private static final String SELECT_VERSION = "SELECT version FROM countries_data WHERE id = ?";
+    private static final String SELECT_DIGEST = "SELECT digest FROM countries_data WHERE id = ?";
+    private static final String SELECT_RAW_DATA = "SELECT raw_data FROM countries_data WHERE id = ?";
+    private static final String INCREMENT_VERSION = "UPDATE countries_data SET version = version + 1 WHERE id = ?";
+    private static final String UPDATE_DATA = "UPDATE countries_data SET digest = ?, raw_data = ? WHERE id = ?";
+    private static final String INSERT_DATA = "INSERT INTO countries_data (id, version, digest, raw_data) VALUES (?, 1, ?, ?)";
+    private static final List<String> DELETE_COUNTRIES = Arrays.asList(
+            "DELETE FROM country_translation", "DELETE FROM country_alt_spelling", "DELETE FROM country_calling_code",
+            "DELETE FROM country_attribute", "DELETE FROM country");
+    private static final List<String> DELETE_COUNTRIES_BY_ORDINAL = Arrays.asList(
+            "DELETE FROM country_translation WHERE country_ordinal IN (:ordinals)",
+            "DELETE FROM country_alt_spelling WHERE country_ordinal IN (:ordinals)",
+            "DELETE FROM country_calling_code WHERE country_ordinal IN (:ordinals)",
+            "DELETE FROM country_attribute WHERE country_ordinal IN (:ordinals)",
+            "DELETE FROM country WHERE ordinal IN (:ordinals)");
+    private static final String INSERT_COUNTRY = "INSERT INTO country (ordinal, alpha2_code, alpha3_code, name, name_folded, population)"
+            + " VALUES (?, ?, ?, ?, ?, ?)";
+    private static final String INSERT_TRANSLATION = "INSERT INTO country_translation (country_ordinal, language_code, name, name_folded)"
+            + " VALUES (?, ?, ?, ?)";
+    private static final String INSERT_ALT_SPELLING = "INSERT INTO country_alt_spelling (country_ordinal, position, name, name_folded)"
+            + " VALUES (?, ?, ?, ?)";
+    private static final String INSERT_CALLING_CODE = "INSERT INTO country_calling_code (country_ordinal, position, calling_code)"
+            + " VALUES (?, ?, ?)";
+    private static final String INSERT_ATTRIBUTE = "INSERT INTO country_attribute (country_ordinal, attribute, value_key) VALUES (?, ?, ?)";
+
+    private static final String SELECT_COUNTRIES = "SELECT c.ordinal, c.name, t.name AS translated_name, c.alpha2_code, c.alpha3_code,"
+            + " c.population, cc.calling_code FROM country c"
+            + " LEFT JOIN country_translation t ON t.country_ordinal = c.ordinal AND t.language_code = :languageCode"
+            + " LEFT JOIN country_calling_code cc ON cc.country_ordinal = c.ordinal";
+    private static final String ORDER_COUNTRIES = " ORDER BY c.ordinal, cc.position";
+    private static final String BY_ALPHA_2_CODE = "SELECT ordinal FROM country WHERE alpha2_code = ? ORDER BY ordinal";
+    private static final String BY_ALPHA_3_CODE = "SELECT ordinal FROM country WHERE alpha3_code = ? ORDER BY ordinal";
+    private static final String BY_ALPHA_2_CODES = "SELECT alpha2_code, ordinal FROM country WHERE alpha2_code IN (:codes) ORDER BY ordinal";
+    private static final String BY_NAME = "SELECT ordinal FROM country WHERE name = ? ORDER BY ordinal";
+    private static final String CODE_BY_NAME = "SELECT alpha2_code FROM country WHERE name = ? ORDER BY ordinal";
+    private static final String CODE_BY_TRANSLATED_NAME = "SELECT c.alpha2_code FROM country_translation t"
+            + " JOIN country c ON c.ordinal = t.country_ordinal WHERE t.language_code = ? AND t.name = ? ORDER BY c.ordinal";
+    private static final String NAME_CONTAINING = "SELECT ordinal, name FROM country"
+            + " WHERE name_folded LIKE ? ESCAPE '" + LIKE_ESCAPE + "' ORDER BY ordinal";
+    private static final String NAME_OR_TRANSLATION_CONTAINING = "SELECT c.ordinal, c.name, t.name FROM country c"
+            + " LEFT JOIN country_translation t ON t.country_ordinal = c.ordinal AND t.language_code = ?"
+            + " WHERE c.name_folded LIKE ? ESCAPE '" + LIKE_ESCAPE + "' OR t.name_folded LIKE ? ESCAPE '" + LIKE_ESCAPE + "'"
+            + " ORDER BY c.ordinal";
+    private static final String ANY_NAME_CONTAINING = "SELECT n.country_ordinal, n.name FROM ("
+            + "SELECT ordinal AS country_ordinal, name, name_folded FROM country"
+            + " UNION ALL SELECT country_ordinal, name, name_folded FROM country_translation"
+            + " UNION ALL SELECT country_ordinal, name, name_folded FROM country_alt_spelling) n"
+            + " WHERE n.name_folded LIKE ? ESCAPE '" + LIKE_ESCAPE + "' ORDER BY n.country_ordinal";
+    private static final String BY_ATTRIBUTE = "SELECT country_ordinal FROM country_attribute"
+            + " WHERE attribute = ? AND value_key = ? ORDER BY country_ordinal";
+    private static final String HAS_TRANSLATIONS = "SELECT COUNT(*) FROM country_translation WHERE language_code = ?";
+    private static final String NAME_STARTING_WITH = "SELECT ordinal FROM country"
+            + " WHERE name_folded LIKE ? ESCAPE '" + LIKE_ESCAPE + "'"
+            + " ORDER BY CASE WHEN name_folded = ? THEN 0 ELSE 1 END, COALESCE(population, 0) DESC, name_folded, ordinal";
+    private static final String TRANSLATION_STARTING_WITH = "SELECT t.country_ordinal FROM country_translation t"
+            + " JOIN country c ON c.ordinal = t.country_ordinal"
+            + " WHERE t.language_code = ? AND t.name_folded LIKE ? ESCAPE '" + LIKE_ESCAPE + "'"
+            + " ORDER BY CASE WHEN t.name_folded = ? THEN 0 ELSE 1 END, COALESCE(c.population, 0) DESC, t.name_folded, t.country_ordinal";
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final DataFormatDetector formatDetector = new DataFormatDetector(objectMapper.getFactory(), new SmileFactory(objectMapper));
+    private static final TypeReference<Map<String, Object>> COUNTRY_TYPE = new TypeReference<Map<String, Object>>() { };
+
+    private final Logger log = LoggerFactory.getLogger(CountriesDualRepositoryJdbc.class);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final CountriesReadCache cache;
+    private final Duration versionCheckInterval;
+    private final Clock clock;
+    private final Object versionLock = new Object();
+    private volatile long version;
+    private volatile long versionCheckedAt;
+    private volatile boolean versionChecked;
+    private ApplicationEventPublisher eventPublisher;
+
+    /**
+     * @param cacheSize            the maximum number of read results to cache
+     * @param versionCheckInterval how often to check whether the data in the database has changed
+     */
+    public CountriesDualRepositoryJdbc(DataSource dataSource, int cacheSize, Duration versionCheckInterval) {
+        this(dataSource, cacheSize, versionCheckInterval, Clock.systemUTC());
+    }
+
+    CountriesDualRepositoryJdbc(DataSource dataSource, int cacheSize, Duration versionCheckInterval, Clock clock) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.namedParameterJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+        this.transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        this.cache = new CountriesReadCache(cacheSize);
+        this.versionCheckInterval = versionCheckInterval;
+        this.clock = clock;
+    }
+
+    @Override
+    public void setApplicationEventPublisher(ApplicationEventPublisher applicationEventPublisher) {
+        this.eventPublisher = applicationEventPublisher;
+    }
+
+    @Override
+    public Optional<String> findAllRaw() {
+        return cached(Arrays.asList("raw"), () -> first(jdbcTemplate.queryForList(SELECT_RAW_DATA, String.class, DATA_ID)));
+    }
+
+    /**
+     * Parse the raw data once per version, since it is stored as a string.
+     */
+    @Override
+    public Optional<List<Map<String, Object>>> findAllParsed() {
+        return cached(Arrays.asList("parsed"), () -> findAllRaw().map(rawData -> unmodifiableList(parse(rawData))));
+    }
+
+    /**
+     * Replace all the data. Data which is not a valid JSON array of countries is stored as raw data but yields no
+     * countries.
+     */
+    @Override
+    public synchronized void updateAll(String rawData) {
+        List<Map<String, Object>> countries = emptyList();
+        if (rawData != null) {
+            try (final JsonParser parser = objectMapper.getFactory().createParser(rawData)) {
+                countries = readCountries(parser);
+            } catch (IOException e) {
+                log.warn("Countries data could not be parsed, no countries will be available - " + e.getMessage());
+            }
+        }
+        store(rawData, countries);
+    }
+
+    /**
+     * Replace all the data with countries read from a stream, which are stored as JSON raw data. The data is compared
+     * with what is stored in that form, so the same countries read from JSON and from Smile are the same data.
+     */
+    @Override
+    public synchronized int updateAll(InputStream rawData) throws IOException {
+        final List<Map<String, Object>> countries;
+        final DataFormatMatcher format = formatDetector.findFormat(rawData);
+        try (final JsonParser parser = format.hasMatch() ? format.createParserWithMatch()
+                : objectMapper.getFactory().createParser(format.getDataStream())) {
+            countries = readCountries(parser);
+        }
+        store(objectMapper.writeValueAsString(countries), countries);
+        return countries.size();
+    }
+
+    private static List<Map<String, Object>> readCountries(JsonParser parser) throws IOException {
+        if (parser.nextToken() != JsonToken.START_ARRAY) {
+            throw new JsonParseException(parser, "Countries data is not a JSON array");
+        }
+        final List<Map<String, Object>> countries = new ArrayList<>();
+        JsonToken token;
+        while ((token = parser.nextToken()) == JsonToken.START_OBJECT) {
+            countries.add(objectMapper.readValue(parser, COUNTRY_TYPE));
+        }
+        if (token != JsonToken.END_ARRAY) {
+            throw new JsonParseException(parser, "Countries data is not an array of JSON objects");
+        }
+        if (parser.nextToken() != null) {
+            throw new JsonParseException(parser, "Unexpected content after countries data");
+        }
+        return countries;
+    }
+
+    private void store(String rawData, List<Map<String, Object>> countries) {
+        final String digest = rawData == null ? null : DigestUtils.md5DigestAsHex(rawData.getBytes(StandardCharsets.UTF_8));
+        if (digest != null && digest.equals(first(jdbcTemplate.queryForList(SELECT_DIGEST, String.class, DATA_ID)).orElse(null))) {
+            log.debug("Countries data is unchanged");
+            return;
+        }
+        final Stored stored = transactionTemplate.execute(status -> replace(rawData, digest, countries));
+        log.debug("Stored countries data version " + stored.version + " - " + countries.size() + " countries, "
+                + stored.diff.getChanges().size() + " changed");
+        if (eventPublisher != null) {
+            stored.diff.toEvents(this, stored.version).forEach(eventPublisher::publishEvent);
+        }
+        seen(stored.version);
+    }
+
+    private static final class Stored {
+        final long version;
+        final CountriesDiff diff;
+
+        Stored(long version, CountriesDiff diff) {
+            this.version = version;
+            this.diff = diff;
+        }
+    }
+
+    /**
+     * Replace the stored data, locking the data row first so that concurrent updates from other nodes are applied one
+     * after the other. If the same countries are stored in the same order, only the rows for those which have changed
+     * are replaced.
+     *
+     * @return the new version, and how the data changed
+     */
+    private Stored replace(String rawData, String digest, List<Map<String, Object>> countries) {
+        final List<Map<String, Object>> previous;
+        if (jdbcTemplate.update(INCREMENT_VERSION, DATA_ID) == 1) {
+            previous = parse(first(jdbcTemplate.queryForList(SELECT_RAW_DATA, String.class, DATA_ID)).orElse(null));
+            jdbcTemplate.update(UPDATE_DATA, digest, rawData, DATA_ID);
+        } else {
+            previous = emptyList();
+            jdbcTemplate.update(INSERT_DATA, DATA_ID, digest, rawData);
+        }
+
+        final CountriesDiff diff = CountriesDiff.between(previous, countries);
+        if (diff.isSameCountries()) {
+            final List<Integer> changed = diff.getChangedOrdinals();
+            if (!changed.isEmpty()) {
+                final MapSqlParameterSource ordinals = new MapSqlParameterSource("ordinals", changed);
+                DELETE_COUNTRIES_BY_ORDINAL.forEach(sql -> namedParameterJdbcTemplate.update(sql, ordinals));
+                insertCountries(countries, changed);
+            }
+        } else {
+            DELETE_COUNTRIES.forEach(jdbcTemplate::update);
+            final List<Integer> all = new ArrayList<>(countries.size());
+            for (int ordinal = 0; ordinal < countries.size(); ordinal++) {
+                all.add(ordinal);
+            }
+            insertCountries(countries, all);
+        }
+        return new Stored(jdbcTemplate.queryForObject(SELECT_VERSION, Long.class, DATA_ID), diff);
+    }
+
+    /**
+     * Parse stored raw data, which yields no countries if it is not valid.
+     */
+    private static List<Map<String, Object>> parse(String rawData) {
+        if (rawData == null) {
+            return emptyList();
+        }
+        try (final JsonParser parser = objectMapper.getFactory().createParser(rawData)) {
+            return readCountries(parser);
+        } catch (IOException e) {
+            return emptyList();
+        }
+    }
+
+    /**
+     * Insert the rows for the countries at the given ordinals, using a batch for each table.
+     */
+    private void insertCountries(List<Map<String, Object>> countries, List<Integer> ordinals) {
+        final List<Object[]> countryRows = new ArrayList<>(ordinals.size());
+        final List<Object[]> translationRows = new ArrayList<>();
+        final List<Object[]> altSpellingRows = new ArrayList<>();
+        final List<Object[]> callingCodeRows = new ArrayList<>();
+        final List<Object[]> attributeRows = new ArrayList<>();
+        for (int ordinal : ordinals) {
+            final Map<String, Object> country = countries.get(ordinal);
+            final String name = string(country.get(NAME));
+            final Object population = country.get(POPULATION);
+            countryRows.add(new Object[] { ordinal, string(country.get(ALPHA_2_CODE)), string(country.get(ALPHA_3_CODE)),
+                    name, name == null ? null : CountryNames.fold(name),
+                    population instanceof Number && ((Number) population).longValue() > 0L ? ((Number) population).longValue() : null });
+            final Object translations = country.get(TRANSLATIONS);
+            if (translations instanceof Map) {
+                for (Map.Entry<?, ?> translation : ((Map<?, ?>) translations).entrySet()) {
+                    if (translation.getValue() instanceof String) {
+                        final String translatedName = (String) translation.getValue();
+                        translationRows.add(new Object[] { ordinal, translation.getKey(), translatedName, CountryNames.fold(translatedName) });
+                    }
+                }
+            }
+            final List<String> altSpellings = strings(country.get(ALT_SPELLINGS));
+            for (int position = 0; position < altSpellings.size(); position++) {
+                altSpellingRows.add(new Object[] { ordinal, position, altSpellings.get(position), CountryNames.fold(altSpellings.get(position)) });
+            }
+            final List<String> callingCodes = strings(country.get(CALLING_CODES));
+            for (int position = 0; position < callingCodes.size(); position++) {
+                callingCodeRows.add(new Object[] { ordinal, position, callingCodes.get(position) });
+            }
+            for (CountryAttribute attribute : CountryAttribute.values()) {
+                for (String key : attribute.keys(country)) {
+                    attributeRows.add(new Object[] { ordinal, attribute.name(), key });
+                }
+            }
+        }
+        jdbcTemplate.batchUpdate(INSERT_COUNTRY, countryRows);
+        jdbcTemplate.batchUpdate(INSERT_TRANSLATION, translationRows);
+        jdbcTemplate.batchUpdate(INSERT_ALT_SPELLING, altSpellingRows);
+        jdbcTemplate.batchUpdate(INSERT_CALLING_CODE, callingCodeRows);
+        jdbcTemplate.batchUpdate(INSERT_ATTRIBUTE, attributeRows);
+    }
+
+    private static String string(Object value) {
+        return value instanceof String ? (String) value : null;
+    }
+
+    /**
+     * Get the non-empty strings in a JSON array.
+     */
+    private static List<String> strings(Object values) {
+        final List<String> result = new ArrayList<>();
+        if (values instanceof Collection) {
+            for (Object value : (Collection<?>) values) {
+                if (value instanceof String && !((String) value).isEmpty()) {
+                    result.add((String) value);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get the version of the data in the database, checking it if it has not been checked within the interval.
+     */
+    private long currentVersion() {
+        final long now = clock.millis();
+        if (!versionChecked || now - versionCheckedAt >= versionCheckInterval.toMillis()) {
+            seen(first(jdbcTemplate.queryForList(SELECT_VERSION, Long.class, DATA_ID)).orElse(0L));
+        }
+        return version;
+    }
+
+    /**
+     * Record a version of the data seen in the database, and announce it if it is new.
+     */
+    private void seen(long stored) {
+        final boolean updated;
+        synchronized (versionLock) {
+            versionCheckedAt = clock.millis();
+            versionChecked = true;
+            updated = stored > version;
+            if (updated) {
+                version = stored;
+            }
+        }
+        if (updated && eventPublisher != null) {
+            eventPublisher.publishEvent(new CountriesUpdatedEvent(this, stored));
+        }
+    }
+
+    private <T> T cached(List<?> key, Supplier<T> read) {
+        return cache.get(currentVersion(), key, read);
+    }
+
+    private static <T> Optional<T> first(List<T> results) {
+        return results.isEmpty() ? Optional.empty() : Optional.ofNullable(results.get(0));
+    }
+
+    @Override
+    public Optional<? extends CountryEntity> findOneByName(String name) {
+        return cached(Arrays.asList("name", name), () -> findOne(BY_NAME, name, null));
+    }
+
+    @Override
+    public List<? extends CountryEntity> findAll() {
+        return cached(Arrays.asList("all"), () -> unmodifiableList(new ArrayList<>(readEntities("", new MapSqlParameterSource(), null).values())));
+    }
+
+    @Override
+    public Optional<? extends CountryEntity> findOneByAlpha2Code(String countryCode) {
+        return findOneByAlpha2Code(countryCode, null);
+    }
+
+    @Override
+    public Optional<? extends CountryEntity> findOneByAlpha2Code(String countryCode, String languageCode) {
+        return cached(Arrays.asList("alpha2", countryCode, languageCode), () -> findOne(BY_ALPHA_2_CODE, countryCode, languageCode));
+    }
+
+    @Override
+    public Optional<? extends CountryEntity> findOneByAlpha3Code(String countryCode) {
+        return findOneByAlpha3Code(countryCode, null);
+    }
+
+    @Override
+    public Optional<? extends CountryEntity> findOneByAlpha3Code(String countryCode, String languageCode) {
+        return cached(Arrays.asList("alpha3", countryCode, languageCode), () -> findOne(BY_ALPHA_3_CODE, countryCode, languageCode));
+    }
+
+    @Override
+    public Map<String, ? extends CountryEntity> findAllByAlpha2Codes(Collection<String> countryCodes, String languageCode) {
+        if (countryCodes.isEmpty()) {
+            return emptyMap();
+        }
+        final List<String> codes = new ArrayList<>(countryCodes);
+        return cached(Arrays.asList("alpha2Codes", codes, languageCode), () -> {
+            final Map<String, Integer> ordinals = new HashMap<>();
+            namedParameterJdbcTemplate.query(BY_ALPHA_2_CODES, new MapSqlParameterSource("codes", new LinkedHashSet<>(codes)),
+                    (RowCallbackHandler) rs -> ordinals.putIfAbsent(rs.getString(1), rs.getInt(2)));
+            final Map<Integer, CountryEntity> entities = entities(new ArrayList<>(new LinkedHashSet<>(ordinals.values())), languageCode);
+            final Map<String, CountryEntity> result = new LinkedHashMap<>();
+            for (String code : codes) {
+                if (ordinals.containsKey(code)) {
+                    result.putIfAbsent(code, entities.get(ordinals.get(code)));
+                }
+            }
+            return unmodifiableMap(result);
+        });
+    }
+
+    @Override
+    public List<? extends CountryEntity> findByNameContaining(String countrySearchString, String languageCode) {
+        final String searchString = countrySearchString.trim();
+        return cached(Arrays.asList("nameContaining", searchString, languageCode), () -> {
+            final Pattern contains = containsPattern(searchString);
+            final String like = likeContaining(searchString);
+            final Set<Integer> ordinals = new LinkedHashSet<>();
+            if (isEnglish(languageCode)) {
+                jdbcTemplate.query(NAME_CONTAINING, (RowCallbackHandler) rs -> {
+                    if (matches(contains, rs.getString(2))) {
+                        ordinals.add(rs.getInt(1));
+                    }
+                }, like);
+            } else {
+                jdbcTemplate.query(NAME_OR_TRANSLATION_CONTAINING, (RowCallbackHandler) rs -> {
+                    if (matches(contains, rs.getString(2)) || matches(contains, rs.getString(3))) {
+                        ordinals.add(rs.getInt(1));
+                    }
+                }, languageCode, like, like);
+            }
+            return inOrder(ordinals, languageCode);
+        });
+    }
+
+    @Override
+    public List<? extends CountryEntity> findByAnyNameContaining(String countrySearchString, String languageCode) {
+        final String searchString = countrySearchString.trim();
+        return cached(Arrays.asList("anyNameContaining", searchString, languageCode), () -> {
+            final Pattern contains = containsPattern(searchString);
+            final Set<Integer> ordinals = new LinkedHashSet<>();
+            jdbcTemplate.query(ANY_NAME_CONTAINING, (RowCallbackHandler) rs -> {
+                if (matches(contains, rs.getString(2))) {
+                    ordinals.add(rs.getInt(1));
+                }
+            }, likeContaining(searchString));
+            return inOrder(ordinals, languageCode);
+        });
+    }
+
+    @Override
+    public List<? extends CountryEntity> findByNameStartingWith(String prefix, String languageCode, int limit) {
+        if (limit <= 0) {
+            return emptyList();
+        }
+        final String foldedPrefix = CountryNames.fold(prefix.trim());
+        return cached(Arrays.asList("nameStartingWith", foldedPrefix, languageCode, limit), () -> {
+            final String like = escapeLike(foldedPrefix) + '%';
+            final boolean english = isEnglish(languageCode) || jdbcTemplate.queryForObject(HAS_TRANSLATIONS, Integer.class, languageCode) == 0;
+            final List<Integer> ordinals = english
+                    ? jdbcTemplate.query(NAME_STARTING_WITH, firstOrdinals(limit), like, foldedPrefix)
+                    : jdbcTemplate.query(TRANSLATION_STARTING_WITH, firstOrdinals(limit), languageCode, like, foldedPrefix);
+            return inOrder(ordinals, english ? ENGLISH : languageCode);
+        });
+    }
+
+    private static ResultSetExtractor<List<Integer>> firstOrdinals(int limit) {
+        return rs -> {
+            final List<Integer> ordinals = new ArrayList<>(limit);
+            while (ordinals.size() < limit && rs.next()) {
+                ordinals.add(rs.getInt(1));
+            }
+            return ordinals;
+        };
+    }
+
+    @Override
+    public List<? extends CountryEntity> findByAttribute(CountryAttribute attribute, String value, String languageCode) {
+        final String key = CountryAttribute.key(value);
+        return cached(Arrays.asList("attribute", attribute, key, languageCode),
+                () -> inOrder(jdbcTemplate.queryForList(BY_ATTRIBUTE, Integer.class, attribute.name(), key), languageCode));
+    }
+
+    @Override
+    public Optional<String> getCodeByNameAndLocale(String countryName, String languageCode) {
+        return cached(Arrays.asList("codeByName", countryName, languageCode), () -> isEnglish(languageCode)
+                ? first(jdbcTemplate.queryForList(CODE_BY_NAME, String.class, countryName))
+                : first(jdbcTemplate.queryForList(CODE_BY_TRANSLATED_NAME, String.class, languageCode, countryName)));
+    }
+
+    private Optional<CountryEntity> findOne(String ordinalQuery, String value, String languageCode) {
+        final Optional<Integer> ordinal = first(jdbcTemplate.queryForList(ordinalQuery, Integer.class, value));
+        return ordinal.map(o -> entities(Arrays.asList(o), languageCode).get(o));
+    }
+
+    /**
+     * Get the countries with the given ordinals, in the order given.
+     */
+    private List<CountryEntity> inOrder(Collection<Integer> ordinals, String languageCode) {
+        final Map<Integer, CountryEntity> entities = entities(ordinals, languageCode);
+        return unmodifiableList(ordinals.stream().map(entities::get).filter(Objects::nonNull).collect(toList()));
+    }
+
+    private Map<Integer, CountryEntity> entities(Collection<Integer> ordinals, String languageCode) {
+        return ordinals.isEmpty() ? emptyMap()
+                : readEntities(" WHERE c.ordinal IN (:ordinals)", new MapSqlParameterSource("ordinals", ordinals), languageCode);
+    }
+
+    /**
+     * Read countries with their calling codes, and their names in the given language.
+     *
+     * @return the countries by ordinal, in order of ordinal
+     */
+    private Map<Integer, CountryEntity> readEntities(String where, MapSqlParameterSource parameters, String languageCode) {
+        final boolean english = isEnglish(languageCode);
+        parameters.addValue("languageCode", english ? ENGLISH : languageCode);
+        return namedParameterJdbcTemplate.query(SELECT_COUNTRIES + where + ORDER_COUNTRIES, parameters, rs -> {
+            final Map<Integer, CountryEntity> countries = new LinkedHashMap<>();
+            final Map<Integer, List<String>> callingCodes = new HashMap<>();
+            while (rs.next()) {
+                final int ordinal = rs.getInt("ordinal");
+                List<String> countryCallingCodes = callingCodes.get(ordinal);
+                if (countryCallingCodes == null) {
+                    countryCallingCodes = new ArrayList<>(1);
+                    callingCodes.put(ordinal, countryCallingCodes);
+                    final long population = rs.getLong("population");
+                    final Optional<Long> knownPopulation = rs.wasNull() ? Optional.empty() : Optional.of(population);
+                    countries.put(ordinal, new CountryEntityJdbc(rs.getString(english ? "name" : "translated_name"),
+                            rs.getString("alpha2_code"), rs.getString("alpha3_code"), knownPopulation, countryCallingCodes));
+                }
+                final String callingCode = rs.getString("calling_code");
+                if (callingCode != null) {
+                    countryCallingCodes.add(callingCode);
+                }
+            }
+            return countries;
+        });
+    }
+
+    private static boolean matches(Pattern pattern, String value) {
+        return value != null && pattern.matcher(value).find();
+    }
+
+    private static Pattern containsPattern(String searchString) {
+        return Pattern.compile(Pattern.quote(searchString), Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+    }
+
+    private static String likeContaining(String searchString) {
+        return '%' + escapeLike(CountryNames.fold(searchString)) + '%';
+    }
+
+    private static String escapeLike(String s) {
+        final StringBuilder escaped = new StringBuilder(s.length());
+        for (char c : s.toCharArray()) {
+            if (c == '%' || c == '_' || c == LIKE_ESCAPE) {
+                escaped.append(LIKE_ESCAPE);
+            }
+            escaped.append(c);
+        }
+        return escaped.toString();
+    }
+
+    private static boolean isEnglish(String languageCode) {
+        return languageCode == null || languageCode.equals(ENGLISH);
+    }
+}
@@ -0,0 +1,57 @@
+package ucles.weblab.common.i18n.countries.domain.jdbc;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Bounded cache of the results of reads from the database, for one version of the countries data at a time. The least
+ * recently used result is evicted once the cache is full, and every result is discarded as soon as a read for a later
+ * version is made.
+ *
+ * @since 18/10/26
+ */
+final class CountriesReadCache {
+    private final int maxEntries;
+    private final Map<Object, Object> entries;
+    private long version;
+
+    CountriesReadCache(int maxEntries) {
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap<Object, Object>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Object, Object> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Get the cached result of a read from a version of the data, or else make the read and cache its result. The read
+     * is made without holding any lock, so concurrent callers may make the same read.
+     *
+     * @param key  identifies the read, with {@code equals} and {@code hashCode} over its arguments
+     * @param read makes the read, and must not return {@code null}
+     */
+    @SuppressWarnings("unchecked")
+    <T> T get(long version, Object key, Supplier<T> read) {
+        synchronized (this) {
+            if (version > this.version) {
+                entries.clear();
+                this.version = version;
+            } else if (version == this.version) {
+                final Object cached = entries.get(key);
+                if (cached != null) {
+                    return (T) cached;
+                }
+            }
+        }
+        final T result = read.get();
+        synchronized (this) {
+            if (version == this.version && maxEntries > 0) {
+                entries.put(key, result);
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,91 @@
+package ucles.weblab.common.i18n.countries.domain.jdbc;
+
+import ucles.weblab.common.i18n.countries.domain.CountryEntity;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+
+import static java.util.Collections.unmodifiableList;
+
+/**
+ * Immutable country entity for the JDBC repository, read from a row of the {@code country} table with its calling codes
+ * and its name in the language asked for.
+ *
+ * @since 18/10/26
+ */
+final class CountryEntityJdbc implements CountryEntity {
+    private final String name;
+    private final String iso3166Alpha2Code;
+    private final String iso3166Alpha3Code;
+    private final Optional<Long> population;
+    private final List<String> callingCodes;
+
+    /**
+     * @param callingCodes the calling codes, which the entity only has a read-only view of
+     */
+    CountryEntityJdbc(String name, String iso3166Alpha2Code, String iso3166Alpha3Code, Optional<Long> population, List<String> callingCodes) {
+        this.name = name;
+        this.iso3166Alpha2Code = iso3166Alpha2Code;
+        this.iso3166Alpha3Code = iso3166Alpha3Code;
+        this.population = population;
+        this.callingCodes = unmodifiableList(callingCodes);
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String getIso3166Alpha2Code() {
+        return iso3166Alpha2Code;
+    }
+
+    @Override
+    public String getIso3166Alpha3Code() {
+        return iso3166Alpha3Code;
+    }
+
+    @Override
+    public Optional<Long> getPopulation() {
+        return population;
+    }
+
+    @Override
+    public List<String> getCallingCodes() {
+        return callingCodes;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        final CountryEntityJdbc that = (CountryEntityJdbc) o;
+        return Objects.equals(name, that.name) &&
+                Objects.equals(iso3166Alpha2Code, that.iso3166Alpha2Code) &&
+                Objects.equals(iso3166Alpha3Code, that.iso3166Alpha3Code) &&
+                Objects.equals(population, that.population) &&
+                Objects.equals(callingCodes, that.callingCodes);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(name, iso3166Alpha2Code, iso3166Alpha3Code, population, callingCodes);
+    }
+
+    @Override
+    public String toString() {
+        return "CountryEntityJdbc{" +
+                "name='" + name + '\'' +
+                ", iso3166Alpha2Code='" + iso3166Alpha2Code + '\'' +
+                ", iso3166Alpha3Code='" + iso3166Alpha3Code + '\'' +
+                ", population=" + population +
+                ", callingCodes=" + callingCodes +
+                '}';
+    }
+}
@@ -0,0 +1,65 @@
+package ucles.weblab.common.i18n.countries.domain.jdbc;
+
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ucles.weblab.common.i18n.countries.domain.CountriesRefreshLease;
+
+import javax.sql.DataSource;
+import java.time.Clock;
+import java.time.Duration;
+
+/**
+ * Refresh lease held as a row in a database table shared between nodes. The row names the node holding the lease and
+ * when the lease expires, in milliseconds since the epoch by the clock of the node which took it, so the nodes' clocks
+ * should agree to well within the lease duration.
+ * <p>
+ * The table is created by {@code schema-countries-lease.sql}.
+ * </p>
+ *
+ * @since 18/10/26
+ */
+public class JdbcCountriesRefreshLease implements CountriesRefreshLease {
+    static final String LEASE_NAME = "countries-refresh";
+
+    private static final String TAKE = "UPDATE countries_refresh_lease SET owner = ?, expires_at = ?"
+            + " WHERE name = ? AND (owner = ? OR expires_at < ?)";
+    private static final String CREATE = "INSERT INTO countries_refresh_lease (name, owner, expires_at) VALUES (?, ?, ?)";
+    private static final String RELEASE = "UPDATE countries_refresh_lease SET expires_at = 0 WHERE name = ? AND owner = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final String owner;
+    private final Clock clock;
+
+    /**
+     * @param owner identifies this node, and must be different for every node sharing the database
+     */
+    public JdbcCountriesRefreshLease(DataSource dataSource, String owner) {
+        this(dataSource, owner, Clock.systemUTC());
+    }
+
+    JdbcCountriesRefreshLease(DataSource dataSource, String owner, Clock clock) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.owner = owner;
+        this.clock = clock;
+    }
+
+    @Override
+    public boolean tryAcquire(Duration duration) {
+        final long now = clock.millis();
+        final long expiresAt = now + duration.toMillis();
+        if (jdbcTemplate.update(TAKE, owner, expiresAt, LEASE_NAME, owner, now) == 1) {
+            return true;
+        }
+        try {
+            return jdbcTemplate.update(CREATE, LEASE_NAME, owner, expiresAt) == 1;
+        } catch (DuplicateKeyException e) {
+            // Held by another node.
+            return false;
+        }
+    }
+
+    @Override
+    public void release() {
+        jdbcTemplate.update(RELEASE, LEASE_NAME, owner);
+    }
+}
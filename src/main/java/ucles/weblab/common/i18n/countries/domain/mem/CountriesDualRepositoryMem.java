@@ -1,90 +1,116 @@
 package ucles.weblab.common.i18n.countries.domain.mem;
 
-import com.jayway.jsonpath.Filter;
-import com.jayway.jsonpath.JsonPath;
-import com.jayway.jsonpath.ReadContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.ApplicationEventPublisherAware;
 import ucles.weblab.common.i18n.countries.domain.CountriesRawRepository;
+import ucles.weblab.common.i18n.countries.domain.CountriesUpdatedEvent;
+import ucles.weblab.common.i18n.countries.domain.CountryAttribute;
+import ucles.weblab.common.i18n.countries.domain.CountryChangedEvent;
 import ucles.weblab.common.i18n.countries.domain.CountryEntity;
 import ucles.weblab.common.i18n.countries.domain.CountryRepository;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.function.Function;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Supplier;
 import java.util.regex.Pattern;
+import java.util.stream.IntStream;
 
-import static com.jayway.jsonpath.Configuration.defaultConfiguration;
-import static com.jayway.jsonpath.Criteria.where;
-import static com.jayway.jsonpath.Filter.filter;
-import static java.util.Collections.emptyList;
 import static java.util.stream.Collectors.toList;
+import static ucles.weblab.common.i18n.countries.domain.mem.CountriesSnapshot.ALPHA_2_CODE;
+import static ucles.weblab.common.i18n.countries.domain.mem.CountriesSnapshot.NAME;
+import static ucles.weblab.common.i18n.countries.domain.mem.CountriesSnapshot.NOT_FOUND;
+import static ucles.weblab.common.i18n.countries.domain.mem.CountriesSnapshot.TRANSLATIONS;
 
 /**
  * Implementation of the repository interface which stores countries raw data in application memory.
+ * <p>
+ * Each update parses the data, which may be streamed, into an immutable and fully indexed {@link CountriesSnapshot},
+ * which is then published atomically, so every lookup is answered from one version of the data without locking. The
+ * countries returned are immutable instances shared between callers.
+ * </p>
  *
  * @since 18/05/15
  */
-public class CountriesDualRepositoryMem implements CountriesRawRepository, CountryRepository {
-    private static final String NAME = "name";
-    private static final String ALPHA_2_CODE = "alpha2Code";
-    private static final String POPULATION = "population";
-    private static final String CALLING_CODES = "callingCodes";
-    private static final String ARRAY_MEMBER = "$[?]";
-
+public class CountriesDualRepositoryMem implements CountriesRawRepository, CountryRepository, ApplicationEventPublisherAware {
     private final Logger log = LoggerFactory.getLogger(CountriesDualRepositoryMem.class);
-    private final Supplier<CountryEntity.Builder> countryEntityBuilder;
-    private final Function<Object, CountryEntity> jsonToCountryEnglish; //jsonToTranslation(countryCode) method is available
 
-    private Optional<String> countriesRawData = Optional.empty();
-    private Optional<ReadContext> jsonPathReadContext = Optional.empty();
+    private final AtomicReference<CountriesSnapshot> snapshot = new AtomicReference<>(CountriesSnapshot.EMPTY);
+    private ApplicationEventPublisher eventPublisher;
+
+    public CountriesDualRepositoryMem() {
+    }
 
+    /**
+     * @deprecated countries are now immutable values created by the repository itself, so the builder is not used.
+     * Use {@link #CountriesDualRepositoryMem()} instead.
+     */
+    @Deprecated
     public CountriesDualRepositoryMem(Supplier<CountryEntity.Builder> countryEntityBuilder) {
-        this.countryEntityBuilder = countryEntityBuilder;
-        this.jsonToCountryEnglish =
-                    ((Function<Object, Map>) (o -> (Map) o)).andThen(
-                            map -> countryEntityBuilder.get()
-                                    .name((String) map.get(NAME))
-                                    .iso3166Alpha2Code((String) map.get(ALPHA_2_CODE))
-                                    .population(Optional.ofNullable((Number) map.get(POPULATION)).map(Number::longValue).filter(n -> n > 0L))
-                                    .callingCodes(((Collection<String>) map.get(CALLING_CODES)).stream().filter(s -> !s.isEmpty()).collect(toList()))
-                                    .get());
+        this();
     }
 
     @Override
     public Optional<String> findAllRaw() {
-        return countriesRawData;
+        return snapshot.get().getRawData();
     }
 
     @Override
-    public void updateAll(String rawData) {
-        countriesRawData = Optional.ofNullable(rawData);
+    public Optional<List<Map<String, Object>>> findAllParsed() {
+        return snapshot.get().getParsed();
     }
 
     @Override
-    public Optional<? extends CountryEntity> findOneByName(String name) {
-        return getReadContext().map(readContext -> (List<Object>) readContext.read(ARRAY_MEMBER, filter(where(NAME).eq(name))))
-                .orElse(emptyList()).stream()
-                .findFirst()
-                .map(jsonToCountryEnglish);
+    public synchronized void updateAll(String rawData) {
+        publish(CountriesSnapshot.parse(snapshot.get(), rawData));
     }
 
     @Override
-    public List<? extends CountryEntity> findAll() {
-        return getReadContext().map(readContext -> (List<Object>) readContext.json())
-                .orElse(emptyList()).stream()
-                .map(jsonToCountryEnglish)
-                .collect(toList());
+    public synchronized int updateAll(InputStream rawData) throws IOException {
+        final CountriesSnapshot updated = CountriesSnapshot.read(snapshot.get(), rawData);
+        publish(updated);
+        return updated.getCountries().size();
     }
 
-    private Optional<ReadContext> getReadContext() {
-        if (!jsonPathReadContext.isPresent()) {
-            jsonPathReadContext = countriesRawData.map(rawData -> JsonPath.using(defaultConfiguration()).parse(rawData));
+    /**
+     * Make the snapshot current, unless it is the current one already because its data has the same MD5 digest, and
+     * then send a {@link CountryChangedEvent} for each country added, removed or changed followed by a
+     * {@link CountriesUpdatedEvent} to any application event publisher provided.
+     */
+    private void publish(CountriesSnapshot updated) {
+        if (updated == snapshot.get()) {
+            log.debug("Countries data version " + updated.getVersion() + " is unchanged");
+            return;
         }
-        return jsonPathReadContext;
+        snapshot.set(updated);
+        log.debug("Indexed countries data version " + updated.getVersion() + " - " + updated.getCountries().size() + " countries");
+        if (eventPublisher != null) {
+            updated.getDiff().toEvents(this, updated.getVersion()).forEach(eventPublisher::publishEvent);
+            eventPublisher.publishEvent(new CountriesUpdatedEvent(this, updated.getVersion()));
+        }
+    }
+
+    @Override
+    public void setApplicationEventPublisher(ApplicationEventPublisher applicationEventPublisher) {
+        this.eventPublisher = applicationEventPublisher;
+    }
+
+    @Override
+    public Optional<? extends CountryEntity> findOneByName(String name) {
+        final CountriesSnapshot current = snapshot.get();
+        return find(current, current.findByName(name), null);
+    }
+
+    @Override
+    public List<? extends CountryEntity> findAll() {
+        return snapshot.get().getEnglishCountries();
     }
 
     @Override
@@ -94,68 +120,121 @@ public class CountriesDualRepositoryMem implements CountriesRawRepository, Count
 
     @Override
     public Optional<? extends CountryEntity> findOneByAlpha2Code(String countryCode, String languageCode) {
-        Function<Object, CountryEntity> mapper = isEnglish(languageCode) ? jsonToCountryEnglish : jsonToCountryTranslation(languageCode);
+        final CountriesSnapshot current = snapshot.get();
+        return find(current, current.findByAlpha2Code(countryCode), languageCode);
+    }
+
+    @Override
+    public Optional<? extends CountryEntity> findOneByAlpha3Code(String countryCode) {
+        return findOneByAlpha3Code(countryCode, null);
+    }
 
-        return getReadContext().map(readContext -> (List<Object>) readContext.read(ARRAY_MEMBER, filter(where(ALPHA_2_CODE).eq(countryCode))))
-                .orElse(emptyList()).stream()
-                .findFirst()
-                .map(mapper);
+    @Override
+    public Optional<? extends CountryEntity> findOneByAlpha3Code(String countryCode, String languageCode) {
+        final CountriesSnapshot current = snapshot.get();
+        return find(current, current.findByAlpha3Code(countryCode), languageCode);
+    }
+
+    @Override
+    public Map<String, ? extends CountryEntity> findAllByAlpha2Codes(Collection<String> countryCodes, String languageCode) {
+        final CountriesSnapshot current = snapshot.get();
+        final Map<String, CountryEntity> result = new LinkedHashMap<>();
+        for (String countryCode : countryCodes) {
+            final int ordinal = current.findByAlpha2Code(countryCode);
+            if (ordinal != NOT_FOUND && !result.containsKey(countryCode)) {
+                result.put(countryCode, toEntity(current, ordinal, languageCode));
+            }
+        }
+        return result;
     }
 
     @Override
     public List<? extends CountryEntity> findByNameContaining(String countrySearchString, String languageCode) {
-        Pattern searchStringContains = Pattern.compile(".*" + regexSafeQuote(countrySearchString) + ".*", Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+        final String searchString = regexSafeSearchString(countrySearchString);
+        final Pattern searchStringContains = containsPattern(searchString);
+        final CountriesSnapshot current = snapshot.get();
 
+        final IntStream candidates = current.findCandidatesByNameContaining(searchString);
         if(isEnglish(languageCode)) {
-            return getReadContext().map(readContext -> (List<Object>) readContext.read(ARRAY_MEMBER, filter(where(NAME).regex(searchStringContains))))
-                    .orElse(emptyList()).stream()
-                    .map(jsonToCountryEnglish)
+            return candidates
+                    .filter(ordinal -> matches(searchStringContains, current.getCountry(ordinal).get(NAME)))
+                    .mapToObj(ordinal -> toEntity(current, ordinal, null))
                     .collect(toList());
         } else {
-            return getReadContext().map(readContext -> (List<Object>) readContext.read(ARRAY_MEMBER, filter(
-                        where(NAME).regex(searchStringContains))
-                        .or(where("translations." + languageCode).regex(searchStringContains))))
-                    .orElse(emptyList()).stream()
-                    .map(jsonToCountryTranslation(languageCode))
+            return candidates
+                    .filter(ordinal -> matches(searchStringContains, current.getCountry(ordinal).get(NAME))
+                            || matches(searchStringContains, translation(current.getCountry(ordinal), languageCode)))
+                    .mapToObj(ordinal -> toEntity(current, ordinal, languageCode))
                     .collect(toList());
         }
     }
 
+    @Override
+    public List<? extends CountryEntity> findByAnyNameContaining(String countrySearchString, String languageCode) {
+        final String searchString = regexSafeSearchString(countrySearchString);
+        final Pattern searchStringContains = containsPattern(searchString);
+        final CountriesSnapshot current = snapshot.get();
+
+        return current.findCandidatesByNameContaining(searchString)
+                .filter(ordinal -> CountryNameIndex.names(current.getCountry(ordinal)).anyMatch(name -> matches(searchStringContains, name)))
+                .mapToObj(ordinal -> toEntity(current, ordinal, languageCode))
+                .collect(toList());
+    }
+
+    @Override
+    public List<? extends CountryEntity> findByNameStartingWith(String prefix, String languageCode, int limit) {
+        final CountriesSnapshot current = snapshot.get();
+        final String searchLanguageCode = isEnglish(languageCode) || !current.hasNamesIn(languageCode) ? CountryNamePrefixIndex.ENGLISH : languageCode;
+        return current.findByNameStartingWith(prefix, searchLanguageCode, limit).stream()
+                .map(ordinal -> toEntity(current, ordinal, searchLanguageCode))
+                .collect(toList());
+    }
+
+    @Override
+    public List<? extends CountryEntity> findByAttribute(CountryAttribute attribute, String value, String languageCode) {
+        return snapshot.get().findByAttribute(attribute, value, isEnglish(languageCode) ? null : languageCode);
+    }
+
     @Override
     public Optional<String> getCodeByNameAndLocale(String countryName, String languageCode) {
         /*  There is currently no english translation, so the name attribute needs to be searched if the
             language code is english, otherwise the appropriate translations are searched */
-        Filter filter = isEnglish(languageCode) ? filter(where(NAME).eq(countryName)) : filter(where("translations." + languageCode).eq(countryName));
+        final CountriesSnapshot current = snapshot.get();
+        final int ordinal = isEnglish(languageCode) ? current.findByName(countryName) : current.findByTranslatedName(countryName, languageCode);
+        return ordinal == NOT_FOUND ? Optional.empty() : Optional.of(current.getCountry(ordinal).get(ALPHA_2_CODE).toString());
+    }
 
-        return getReadContext().map(readContext -> (List<Object>) readContext.read(ARRAY_MEMBER, filter))
-                .orElse(emptyList()).stream()
-                .findFirst()
-                .map( o -> ((Map<String, String>) o).get(ALPHA_2_CODE).toString() );
+    private Optional<? extends CountryEntity> find(CountriesSnapshot current, int ordinal, String languageCode) {
+        return ordinal == NOT_FOUND ? Optional.empty() : Optional.of(toEntity(current, ordinal, languageCode));
+    }
+
+    private static CountryEntity toEntity(CountriesSnapshot current, int ordinal, String languageCode) {
+        return isEnglish(languageCode) ? current.getEnglishCountry(ordinal) : current.getTranslatedCountry(ordinal, languageCode);
+    }
+
+    private static boolean matches(Pattern pattern, Object value) {
+        return value instanceof String && pattern.matcher((String) value).matches();
+    }
+
+    private static Object translation(Map<String, Object> map, String languageCode) {
+        final Object translations = map.get(TRANSLATIONS);
+        return translations instanceof Map ? ((Map) translations).get(languageCode) : null;
     }
 
     private static boolean isEnglish(String languageCode) {
         return languageCode == null || languageCode.equals("en");
     }
 
-    private String regexSafeQuote(final String s) {
+    private String regexSafeSearchString(final String s) {
         String safe = s.trim();
         if(safe.contains("\\E")) {
             log.warn("Encountered an end quote special character in a field using regex \"" + safe + "\", continuing and treating it as an 'E'");
             safe = safe.replace("\\E", "E");
         }
-        return "\\Q" + safe + "\\E";
+        return safe;
     }
 
-    private Function<Object, CountryEntity> jsonToCountryTranslation(String languageCode) {
-        if(isEnglish(languageCode)) {
-            return jsonToCountryEnglish;
-        }
-        return ((Function<Object, Map>) (o -> (Map) o)).andThen(
-                        map -> countryEntityBuilder.get()
-                                .name((String) ((Map) map.get("translations")).get(languageCode))
-                                .iso3166Alpha2Code((String) map.get(ALPHA_2_CODE))
-                                .population(Optional.ofNullable((Number) map.get(POPULATION)).map(Number::longValue).filter(n -> n > 0L))
-                                .callingCodes(((Collection<String>) map.get(CALLING_CODES)).stream().filter(s -> !s.isEmpty()).collect(toList()))
-                                .get());
+    private static Pattern containsPattern(final String regexSafeSearchString) {
+        return Pattern.compile(".*\\Q" + regexSafeSearchString + "\\E.*", Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
     }
 }
@@ -0,0 +1,420 @@
+package ucles.weblab.common.i18n.countries.domain.mem;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.format.DataFormatDetector;
+import com.fasterxml.jackson.core.format.DataFormatMatcher;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ucles.weblab.common.i18n.countries.domain.CountriesDiff;
+import ucles.weblab.common.i18n.countries.domain.CountryAttribute;
+import ucles.weblab.common.i18n.countries.domain.CountryEntity;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.IntStream;
+
+import static java.util.Collections.emptyList;
+import static java.util.Collections.emptyMap;
+import static java.util.Collections.singleton;
+import static java.util.Collections.unmodifiableList;
+import static java.util.Collections.unmodifiableMap;
+import static java.util.function.Function.identity;
+import static java.util.stream.Collectors.toMap;
+
+/**
+ * Immutable, fully indexed view of one version of the countries raw data.
+ * <p>
+ * A snapshot is built in full before it is published by {@link CountriesDualRepositoryMem}, so readers holding a
+ * reference to one never observe a partially indexed state. Countries are identified within a snapshot by their
+ * ordinal position in the data, and each index maps to ordinals. The entities for each country in each language are
+ * created up front, so lookups only ever return shared instances.
+ * </p>
+ * <p>
+ * Codes are looked up directly in arrays and names by hashing, while substring searches only check the candidates
+ * found in an n-gram index of names. Countries are found by region, currency and other attributes through a multimap
+ * index of each, resolved into shared lists of entities once per snapshot.
+ * </p>
+ * <p>
+ * A snapshot records how its data differs from the previous snapshot's. When both have the same countries in the same
+ * order, the entities of the countries which have not changed are carried over one by one. The indexes are coarser:
+ * each is carried over whole if none of the fields it is built from changed for any country, and otherwise is rebuilt
+ * whole, since they are compact arrays and sorted tables which cannot be patched in place without copying them anyway.
+ * So a change to one country's name rebuilds all the name indexes, but not the code or attribute indexes, and any
+ * change to the countries present or their order rebuilds everything.
+ * </p>
+ *
+ * @since 18/10/26
+ */
+final class CountriesSnapshot {
+    static final String NAME = "name";
+    static final String ALPHA_2_CODE = "alpha2Code";
+    static final String TRANSLATIONS = "translations";
+    static final int NOT_FOUND = CountryCodeIndex.NOT_FOUND;
+    /** The fields of each country the name lookups are built from. */
+    private static final List<String> NAME_FIELDS = Arrays.asList(NAME, TRANSLATIONS);
+
+    static final CountriesSnapshot EMPTY = new CountriesSnapshot(0L, null, false, null, emptyList(), null);
+
+    private static final Logger log = LoggerFactory.getLogger(CountriesSnapshot.class);
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final DataFormatDetector formatDetector = new DataFormatDetector(objectMapper.getFactory(), new SmileFactory(objectMapper));
+    private static final TypeReference<Map<String, Object>> COUNTRY_TYPE = new TypeReference<Map<String, Object>>() { };
+
+    private final long version;
+    /** MD5 digest of the countries rendered as JSON, used to recognise an update with the same data. */
+    private final byte[] digest;
+    private final boolean loaded;
+    /** The raw data, which is only rendered from the countries when first needed if they were read from a stream. */
+    private volatile String rawData;
+    private final List<Map<String, Object>> countries;
+    private final List<CountryEntity> englishCountries;
+    private final Map<String, List<CountryEntity>> translatedCountries;
+    private final List<CountryEntity> untranslatedCountries;
+    private final CountryCodeIndex codeIndex;
+    private final Map<String, Integer> byName;
+    private final Map<String, Map<String, Integer>> byTranslatedName;
+    private final CountryNameIndex nameIndex;
+    private final CountryNamePrefixIndex prefixIndex;
+    private final Map<CountryAttribute, CountryAttributeIndex> attributeIndexes = new EnumMap<>(CountryAttribute.class);
+    /** The attribute indexes resolved against the entities in English, in each language, and untranslated. */
+    private final Map<CountryAttribute, Map<String, List<CountryEntity>>> englishByAttribute;
+    private final Map<String, Map<CountryAttribute, Map<String, List<CountryEntity>>>> translatedByAttribute;
+    private final Map<CountryAttribute, Map<String, List<CountryEntity>>> untranslatedByAttribute;
+    /** The changes from the previous snapshot. */
+    private final CountriesDiff diff;
+
+    private CountriesSnapshot(long version, byte[] digest, boolean loaded, String rawData, List<Map<String, Object>> countries,
+                              CountriesSnapshot previous) {
+        this.version = version;
+        this.digest = digest;
+        this.loaded = loaded;
+        this.rawData = rawData;
+        this.countries = unmodifiableList(countries);
+        this.diff = previous == null ? CountriesDiff.NONE : CountriesDiff.between(previous.countries, countries);
+        final CountriesSnapshot same = previous != null && diff.isSameCountries() ? previous : null;
+
+        final List<CountryEntityMem> englishEntities = new ArrayList<>(countries.size());
+        for (int i = 0; i < countries.size(); i++) {
+            englishEntities.add(same != null && !diff.isChanged(i) ? (CountryEntityMem) same.englishCountries.get(i)
+                    : CountryEntityMem.fromJson(countries.get(i)));
+        }
+        this.englishCountries = unmodifiableList(englishEntities);
+
+        if (same != null && diff.isUnchanged(NAME_FIELDS)) {
+            this.byName = same.byName;
+            this.byTranslatedName = same.byTranslatedName;
+        } else {
+            final Map<String, Integer> nameIndex = new HashMap<>();
+            final Map<String, Map<String, Integer>> translationIndex = new HashMap<>();
+            for (int i = 0; i < countries.size(); i++) {
+                final Map<String, Object> country = countries.get(i);
+                putFirst(nameIndex, country.get(NAME), i);
+                final Object translations = country.get(TRANSLATIONS);
+                if (translations instanceof Map) {
+                    final int ordinal = i;
+                    ((Map<?, ?>) translations).forEach((languageCode, translatedName) ->
+                            putFirst(translationIndex.computeIfAbsent((String) languageCode, k -> new HashMap<>()), translatedName, ordinal));
+                }
+            }
+            translationIndex.replaceAll((languageCode, index) -> unmodifiableMap(index));
+            this.byName = unmodifiableMap(nameIndex);
+            this.byTranslatedName = unmodifiableMap(translationIndex);
+        }
+        this.translatedCountries = unmodifiableMap(byTranslatedName.keySet().stream()
+                .collect(toMap(identity(), languageCode -> translate(countries, englishEntities, languageCode,
+                        same == null ? null : same.translatedCountries.get(languageCode)))));
+        this.untranslatedCountries = translate(countries, englishEntities, null, same == null ? null : same.untranslatedCountries);
+        this.codeIndex = same != null && diff.isUnchanged(CountryCodeIndex.FIELDS) ? same.codeIndex : new CountryCodeIndex(countries);
+        this.nameIndex = same != null && diff.isUnchanged(CountryNameIndex.FIELDS) ? same.nameIndex : new CountryNameIndex(countries);
+        this.prefixIndex = same != null && diff.isUnchanged(CountryNamePrefixIndex.FIELDS) ? same.prefixIndex : new CountryNamePrefixIndex(countries);
+        for (CountryAttribute attribute : CountryAttribute.values()) {
+            attributeIndexes.put(attribute, same != null && diff.isUnchanged(singleton(attribute.getField()))
+                    ? same.attributeIndexes.get(attribute) : new CountryAttributeIndex(attribute, countries));
+        }
+        this.englishByAttribute = resolveAttributes(englishCountries);
+        this.translatedByAttribute = unmodifiableMap(translatedCountries.entrySet().stream()
+                .collect(toMap(Map.Entry::getKey, entry -> resolveAttributes(entry.getValue()))));
+        this.untranslatedByAttribute = resolveAttributes(untranslatedCountries);
+    }
+
+    private Map<CountryAttribute, Map<String, List<CountryEntity>>> resolveAttributes(List<CountryEntity> entities) {
+        final Map<CountryAttribute, Map<String, List<CountryEntity>>> resolved = new EnumMap<>(CountryAttribute.class);
+        attributeIndexes.forEach((attribute, index) -> resolved.put(attribute, index.resolve(entities)));
+        return resolved;
+    }
+
+    /**
+     * Create the entities for all the countries with their names in a language, which are {@code null} for countries
+     * not translated into it, reusing those for countries which have not changed since the previous snapshot.
+     *
+     * @param previous the entities in the language from the previous snapshot, if it has the same countries
+     */
+    private List<CountryEntity> translate(List<Map<String, Object>> countries, List<CountryEntityMem> englishEntities, String languageCode,
+                                          List<CountryEntity> previous) {
+        final List<CountryEntity> entities = new ArrayList<>(countries.size());
+        for (int i = 0; i < countries.size(); i++) {
+            if (previous != null && !diff.isChanged(i)) {
+                entities.add(previous.get(i));
+            } else {
+                final Object translations = countries.get(i).get(TRANSLATIONS);
+                final Object translatedName = translations instanceof Map ? ((Map<?, ?>) translations).get(languageCode) : null;
+                entities.add(englishEntities.get(i).withName(translatedName instanceof String ? (String) translatedName : null));
+            }
+        }
+        return unmodifiableList(entities);
+    }
+
+    /**
+     * Parse and index raw REST Countries data as the next version after the current snapshot. Data which is not a
+     * valid JSON array of countries is retained as raw data but yields no countries.
+     *
+     * @return the new snapshot, or the current one if the raw data is the same
+     */
+    static CountriesSnapshot parse(CountriesSnapshot current, String rawData) {
+        if (rawData == null) {
+            return new CountriesSnapshot(current.version + 1, null, false, null, emptyList(), current);
+        }
+        List<Map<String, Object>> countries;
+        byte[] digest;
+        try (final JsonParser parser = objectMapper.getFactory().createParser(rawData)) {
+            countries = readCountries(parser);
+            digest = digest(countries);
+        } catch (IOException e) {
+            log.warn("Countries data could not be parsed, no countries will be available - " + e.getMessage());
+            countries = emptyList();
+            digest = md5().digest(rawData.getBytes(StandardCharsets.UTF_8));
+        }
+        return current.hasDigest(digest) ? current : new CountriesSnapshot(current.version + 1, digest, true, rawData, countries, current);
+    }
+
+    /**
+     * Read and index raw REST Countries data from a stream in a single pass, without buffering the raw data, as the
+     * next version after the current snapshot. The data may be JSON or its binary Smile form, and the stream is read
+     * to the end.
+     *
+     * @return the new snapshot, or the current one if the raw data is the same
+     * @throws IOException if the stream cannot be read or is not a valid JSON array of countries
+     */
+    static CountriesSnapshot read(CountriesSnapshot current, InputStream rawData) throws IOException {
+        final List<Map<String, Object>> countries;
+        final DataFormatMatcher format = formatDetector.findFormat(rawData);
+        try (final JsonParser parser = format.hasMatch() ? format.createParserWithMatch()
+                : objectMapper.getFactory().createParser(format.getDataStream())) {
+            countries = readCountries(parser);
+        }
+        final byte[] digest = digest(countries);
+        return current.hasDigest(digest) ? current : new CountriesSnapshot(current.version + 1, digest, true, null, countries, current);
+    }
+
+    /**
+     * Digest the countries as they render as JSON, so that the same countries have the same digest whether they were
+     * read from JSON, however it was formatted, or from Smile. They are rendered straight into the digest, without
+     * holding the rendered data.
+     */
+    private static byte[] digest(List<Map<String, Object>> countries) throws IOException {
+        final MessageDigest md5 = md5();
+        objectMapper.writeValue(new DigestOutputStream(NULL_OUTPUT, md5), countries);
+        return md5.digest();
+    }
+
+    private static final OutputStream NULL_OUTPUT = new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    };
+
+    private static MessageDigest md5() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Could not find MessageDigest with algorithm \"MD5\"", e);
+        }
+    }
+
+    private boolean hasDigest(byte[] digest) {
+        return this.digest != null && MessageDigest.isEqual(this.digest, digest);
+    }
+
+    private static List<Map<String, Object>> readCountries(JsonParser parser) throws IOException {
+        if (parser.nextToken() != JsonToken.START_ARRAY) {
+            throw new JsonParseException(parser, "Countries data is not a JSON array");
+        }
+        final List<Map<String, Object>> countries = new ArrayList<>();
+        JsonToken token;
+        while ((token = parser.nextToken()) == JsonToken.START_OBJECT) {
+            countries.add(objectMapper.readValue(parser, COUNTRY_TYPE));
+        }
+        if (token != JsonToken.END_ARRAY) {
+            throw new JsonParseException(parser, "Countries data is not an array of JSON objects");
+        }
+        if (parser.nextToken() != null) {
+            throw new JsonParseException(parser, "Unexpected content after countries data");
+        }
+        return countries;
+    }
+
+    private static void putFirst(Map<String, Integer> index, Object key, int ordinal) {
+        if (key instanceof String) {
+            index.putIfAbsent((String) key, ordinal);
+        }
+    }
+
+    long getVersion() {
+        return version;
+    }
+
+    /**
+     * Get the changes from the previous snapshot.
+     */
+    CountriesDiff getDiff() {
+        return diff;
+    }
+
+    Optional<String> getRawData() {
+        if (!loaded) {
+            return Optional.empty();
+        }
+        String result = rawData;
+        if (result == null) {
+            synchronized (this) {
+                result = rawData;
+                if (result == null) {
+                    rawData = result = render(countries);
+                }
+            }
+        }
+        return Optional.of(result);
+    }
+
+    private static String render(List<Map<String, Object>> countries) {
+        try {
+            return objectMapper.writeValueAsString(countries);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    List<Map<String, Object>> getCountries() {
+        return countries;
+    }
+
+    /**
+     * Get the countries, or empty if no data has been loaded.
+     */
+    Optional<List<Map<String, Object>>> getParsed() {
+        return loaded ? Optional.of(countries) : Optional.empty();
+    }
+
+    Map<String, Object> getCountry(int ordinal) {
+        return countries.get(ordinal);
+    }
+
+    /**
+     * Get the shared entities for all the countries, with names in English.
+     */
+    List<CountryEntity> getEnglishCountries() {
+        return englishCountries;
+    }
+
+    CountryEntity getEnglishCountry(int ordinal) {
+        return englishCountries.get(ordinal);
+    }
+
+    /**
+     * Get the shared entity for the country, with its name in the given language or {@code null} if it has not been
+     * translated into that language.
+     */
+    CountryEntity getTranslatedCountry(int ordinal, String languageCode) {
+        return translatedCountries.getOrDefault(languageCode, untranslatedCountries).get(ordinal);
+    }
+
+    /**
+     * @return the ordinal of the country, or {@link #NOT_FOUND}
+     */
+    int findByAlpha2Code(String countryCode) {
+        return codeIndex.findByAlpha2Code(countryCode);
+    }
+
+    /**
+     * @return the ordinal of the country, or {@link #NOT_FOUND}
+     */
+    int findByAlpha3Code(String countryCode) {
+        return codeIndex.findByAlpha3Code(countryCode);
+    }
+
+    /**
+     * @return the ordinal of the country, or {@link #NOT_FOUND}
+     */
+    int findByName(String name) {
+        return byName.getOrDefault(name, NOT_FOUND);
+    }
+
+    /**
+     * @return the ordinal of the country, or {@link #NOT_FOUND}
+     */
+    int findByTranslatedName(String name, String languageCode) {
+        return byTranslatedName.getOrDefault(languageCode, emptyMap()).getOrDefault(name, NOT_FOUND);
+    }
+
+    /**
+     * Find the countries which might have a name containing the search string, in the order they appear in the data.
+     * The caller must check each candidate actually matches.
+     *
+     * @return the ordinals of the candidates
+     */
+    IntStream findCandidatesByNameContaining(String searchString) {
+        return nameIndex.candidates(searchString).stream();
+    }
+
+    /**
+     * Find the highest ranked countries whose name in the given language starts with the prefix.
+     *
+     * @return the ordinals of the countries
+     * @see CountryNamePrefixIndex#findByNameStartingWith(String, String, int)
+     */
+    List<Integer> findByNameStartingWith(String prefix, String languageCode, int limit) {
+        return prefixIndex.findByNameStartingWith(prefix, languageCode, limit);
+    }
+
+    /**
+     * Find the countries with a value of an attribute, in the order they appear in the data.
+     *
+     * @param languageCode the language of the names, or {@code null} for English
+     * @return the shared entities of the countries, in a list which is shared too
+     */
+    List<CountryEntity> findByAttribute(CountryAttribute attribute, String value, String languageCode) {
+        final Map<CountryAttribute, Map<String, List<CountryEntity>>> byAttribute = languageCode == null ? englishByAttribute
+                : translatedByAttribute.getOrDefault(languageCode, untranslatedByAttribute);
+        return CountryAttributeIndex.find(byAttribute.get(attribute), value);
+    }
+
+    /**
+     * Check if there are names for the countries in the given language.
+     */
+    boolean hasNamesIn(String languageCode) {
+        return prefixIndex.hasNamesIn(languageCode);
+    }
+}
@@ -0,0 +1,58 @@
+package ucles.weblab.common.i18n.countries.domain.mem;
+
+import ucles.weblab.common.i18n.countries.domain.CountryAttribute;
+import ucles.weblab.common.i18n.countries.domain.CountryEntity;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Collections.emptyList;
+import static java.util.Collections.unmodifiableList;
+
+/**
+ * Multimap from each value of one attribute, such as region or currency, to the ordinals of the countries which have
+ * that value, in the order they appear in the data. It is resolved against the entities of each snapshot, so that
+ * lookups return lists built once rather than on every call.
+ *
+ * @since 18/10/26
+ */
+final class CountryAttributeIndex {
+    private final Map<String, int[]> byKey;
+
+    CountryAttributeIndex(CountryAttribute attribute, List<Map<String, Object>> countries) {
+        final Map<String, List<Integer>> ordinals = new HashMap<>();
+        for (int i = 0; i < countries.size(); i++) {
+            final int ordinal = i;
+            attribute.keys(countries.get(i)).forEach(key -> ordinals.computeIfAbsent(key, k -> new ArrayList<>()).add(ordinal));
+        }
+        final Map<String, int[]> index = new HashMap<>();
+        ordinals.forEach((key, list) -> index.put(key, list.stream().mapToInt(Integer::intValue).toArray()));
+        this.byKey = index;
+    }
+
+    /**
+     * Resolve the index against the entities for all the countries in one language.
+     *
+     * @return an immutable list of the entities for each value, which can be returned to callers as it is
+     */
+    Map<String, List<CountryEntity>> resolve(List<CountryEntity> entities) {
+        final Map<String, List<CountryEntity>> resolved = new HashMap<>();
+        byKey.forEach((key, ordinals) -> {
+            final List<CountryEntity> list = new ArrayList<>(ordinals.length);
+            for (int ordinal : ordinals) {
+                list.add(entities.get(ordinal));
+            }
+            resolved.put(key, unmodifiableList(list));
+        });
+        return resolved;
+    }
+
+    /**
+     * @return the entities of the countries with the value, from an index {@link #resolve(List) resolved} against them
+     */
+    static List<CountryEntity> find(Map<String, List<CountryEntity>> resolved, String value) {
+        return resolved.getOrDefault(CountryAttribute.key(value), emptyList());
+    }
+}
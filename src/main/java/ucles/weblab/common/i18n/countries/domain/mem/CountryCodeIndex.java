@@ -0,0 +1,71 @@
+package ucles.weblab.common.i18n.countries.domain.mem;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Dense arrays of country ordinals indexed directly by ISO 3166-1 alpha-2 and alpha-3 code, treating each code as a
+ * number in base 26. Looking up a code is a couple of array loads, with no hashing, boxing or allocation.
+ * <p>
+ * Codes are upper case letters as in the data, and anything else is simply not found.
+ * </p>
+ *
+ * @since 18/10/26
+ */
+final class CountryCodeIndex {
+    static final String ALPHA_3_CODE = "alpha3Code";
+    static final int NOT_FOUND = -1;
+    /** The fields of each country the index is built from. */
+    static final List<String> FIELDS = Arrays.asList(CountriesSnapshot.ALPHA_2_CODE, ALPHA_3_CODE);
+
+    private static final int LETTERS = 26;
+
+    /** Ordinal plus one of the country with each code, so that the default of zero means none. */
+    private final int[] byAlpha2Code = new int[LETTERS * LETTERS];
+    private final int[] byAlpha3Code = new int[LETTERS * LETTERS * LETTERS];
+
+    CountryCodeIndex(List<Map<String, Object>> countries) {
+        for (int i = 0; i < countries.size(); i++) {
+            putFirst(byAlpha2Code, slot(countries.get(i).get(CountriesSnapshot.ALPHA_2_CODE), 2), i);
+            putFirst(byAlpha3Code, slot(countries.get(i).get(ALPHA_3_CODE), 3), i);
+        }
+    }
+
+    private static void putFirst(int[] index, int slot, int ordinal) {
+        if (slot != NOT_FOUND && index[slot] == 0) {
+            index[slot] = ordinal + 1;
+        }
+    }
+
+    /**
+     * @return the ordinal of the country with the code, or {@link #NOT_FOUND}
+     */
+    int findByAlpha2Code(String code) {
+        final int slot = slot(code, 2);
+        return slot == NOT_FOUND ? NOT_FOUND : byAlpha2Code[slot] - 1;
+    }
+
+    /**
+     * @return the ordinal of the country with the code, or {@link #NOT_FOUND}
+     */
+    int findByAlpha3Code(String code) {
+        final int slot = slot(code, 3);
+        return slot == NOT_FOUND ? NOT_FOUND : byAlpha3Code[slot] - 1;
+    }
+
+    private static int slot(Object code, int length) {
+        if (!(code instanceof String) || ((String) code).length() != length) {
+            return NOT_FOUND;
+        }
+        int slot = 0;
+        for (int i = 0; i < length; i++) {
+            final int letter = ((String) code).charAt(i) - 'A';
+            if (letter < 0 || letter >= LETTERS) {
+                return NOT_FOUND;
+            }
+            slot = slot * LETTERS + letter;
+        }
+        return slot;
+    }
+}
@@ -0,0 +1,123 @@
+package ucles.weblab.common.i18n.countries.domain.mem;
+
+import ucles.weblab.common.i18n.countries.domain.CountryEntity;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+
+import static java.util.Collections.emptyList;
+import static java.util.Collections.unmodifiableList;
+
+/**
+ * Immutable country entity for the in-memory repository. One instance is created for each country in each language
+ * when the data is indexed, and shared by every lookup against that data.
+ *
+ * @since 18/10/26
+ */
+final class CountryEntityMem implements CountryEntity {
+    private static final String POPULATION = "population";
+    private static final String CALLING_CODES = "callingCodes";
+
+    private final String name;
+    private final String iso3166Alpha2Code;
+    private final String iso3166Alpha3Code;
+    private final Optional<Long> population;
+    private final List<String> callingCodes;
+
+    private CountryEntityMem(String name, String iso3166Alpha2Code, String iso3166Alpha3Code, Optional<Long> population, List<String> callingCodes) {
+        this.name = name;
+        this.iso3166Alpha2Code = iso3166Alpha2Code;
+        this.iso3166Alpha3Code = iso3166Alpha3Code;
+        this.population = population;
+        this.callingCodes = callingCodes;
+    }
+
+    /**
+     * Create the entity for a country in the raw data, with its name in English.
+     */
+    static CountryEntityMem fromJson(Map<String, Object> country) {
+        final Object population = country.get(POPULATION);
+        final Object callingCodes = country.get(CALLING_CODES);
+        final List<String> nonEmptyCallingCodes = new ArrayList<>();
+        if (callingCodes instanceof Collection) {
+            for (Object callingCode : (Collection<?>) callingCodes) {
+                if (callingCode instanceof String && !((String) callingCode).isEmpty()) {
+                    nonEmptyCallingCodes.add((String) callingCode);
+                }
+            }
+        }
+        return new CountryEntityMem((String) country.get(CountriesSnapshot.NAME),
+                (String) country.get(CountriesSnapshot.ALPHA_2_CODE),
+                (String) country.get(CountryCodeIndex.ALPHA_3_CODE),
+                Optional.ofNullable(population).filter(Number.class::isInstance).map(n -> ((Number) n).longValue()).filter(n -> n > 0L),
+                nonEmptyCallingCodes.isEmpty() ? emptyList() : unmodifiableList(nonEmptyCallingCodes));
+    }
+
+    /**
+     * Get the same country with a different name, for another language. All other values are shared.
+     */
+    CountryEntityMem withName(String name) {
+        return new CountryEntityMem(name, iso3166Alpha2Code, iso3166Alpha3Code, population, callingCodes);
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String getIso3166Alpha2Code() {
+        return iso3166Alpha2Code;
+    }
+
+    @Override
+    public String getIso3166Alpha3Code() {
+        return iso3166Alpha3Code;
+    }
+
+    @Override
+    public Optional<Long> getPopulation() {
+        return population;
+    }
+
+    @Override
+    public List<String> getCallingCodes() {
+        return callingCodes;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        final CountryEntityMem that = (CountryEntityMem) o;
+        return Objects.equals(name, that.name) &&
+                Objects.equals(iso3166Alpha2Code, that.iso3166Alpha2Code) &&
+                Objects.equals(iso3166Alpha3Code, that.iso3166Alpha3Code) &&
+                Objects.equals(population, that.population) &&
+                Objects.equals(callingCodes, that.callingCodes);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(name, iso3166Alpha2Code, iso3166Alpha3Code, population, callingCodes);
+    }
+
+    @Override
+    public String toString() {
+        return "CountryEntityMem{" +
+                "name='" + name + '\'' +
+                ", iso3166Alpha2Code='" + iso3166Alpha2Code + '\'' +
+                ", iso3166Alpha3Code='" + iso3166Alpha3Code + '\'' +
+                ", population=" + population +
+                ", callingCodes=" + callingCodes +
+                '}';
+    }
+}
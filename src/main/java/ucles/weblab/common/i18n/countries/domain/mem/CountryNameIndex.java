@@ -0,0 +1,88 @@
+package ucles.weblab.common.i18n.countries.domain.mem;
+
+import ucles.weblab.common.i18n.countries.domain.CountryNames;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * N-gram index over every name of each country - the English name, all translations and all alternative spellings -
+ * used to narrow a substring search down to the countries which could possibly match.
+ * <p>
+ * Names are indexed case-folded and accent-folded, one character at a time, so that any name which contains a search
+ * string ignoring case also contains it once both are folded. Candidates must still be checked against the exact
+ * matching rules, since folding matches more than they do.
+ * </p>
+ *
+ * @since 18/10/26
+ */
+final class CountryNameIndex {
+    private static final int MAX_GRAM_LENGTH = 3;
+    private static final String ALT_SPELLINGS = "altSpellings";
+    /** The fields of each country the index is built from. */
+    static final List<String> FIELDS = Arrays.asList(CountriesSnapshot.NAME, CountriesSnapshot.TRANSLATIONS, ALT_SPELLINGS);
+
+    private final int size;
+    private final Map<String, BitSet> postings = new HashMap<>();
+
+    CountryNameIndex(List<Map<String, Object>> countries) {
+        this.size = countries.size();
+        for (int i = 0; i < countries.size(); i++) {
+            final int ordinal = i;
+            names(countries.get(i)).forEach(name -> indexName(CountryNames.fold(name), ordinal));
+        }
+    }
+
+    /**
+     * Get every name of the country.
+     */
+    static Stream<String> names(Map<String, Object> country) {
+        final Object translations = country.get(CountriesSnapshot.TRANSLATIONS);
+        final Object altSpellings = country.get(ALT_SPELLINGS);
+        return Stream.of(
+                Stream.of(country.get(CountriesSnapshot.NAME)),
+                translations instanceof Map ? ((Map<?, ?>) translations).values().stream() : Stream.empty(),
+                altSpellings instanceof Collection ? ((Collection<?>) altSpellings).stream() : Stream.empty())
+                .flatMap(Function.identity())
+                .filter(String.class::isInstance)
+                .map(String.class::cast);
+    }
+
+    private void indexName(String folded, int ordinal) {
+        for (int length = 1; length <= MAX_GRAM_LENGTH; length++) {
+            for (int start = 0; start + length <= folded.length(); start++) {
+                postings.computeIfAbsent(folded.substring(start, start + length), k -> new BitSet(size)).set(ordinal);
+            }
+        }
+    }
+
+    /**
+     * Find the ordinals of all countries which have a name that might contain the search string.
+     *
+     * @return a new set of ordinals, which the caller may modify
+     */
+    BitSet candidates(String searchString) {
+        final String folded = CountryNames.fold(searchString);
+        final BitSet result = new BitSet(size);
+        result.set(0, size);
+        final int length = Math.min(folded.length(), MAX_GRAM_LENGTH);
+        if (length == 0) {
+            return result;
+        }
+        for (int start = 0; start + length <= folded.length() && !result.isEmpty(); start++) {
+            final BitSet posting = postings.get(folded.substring(start, start + length));
+            if (posting == null) {
+                result.clear();
+            } else {
+                result.and(posting);
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,131 @@
+package ucles.weblab.common.i18n.countries.domain.mem;
+
+import ucles.weblab.common.i18n.countries.domain.CountryNames;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Sorted arrays of the folded names of countries in each language, used to find the countries whose name starts with
+ * a prefix by binary search.
+ *
+ * @since 18/10/26
+ */
+final class CountryNamePrefixIndex {
+    static final String ENGLISH = "en";
+    private static final String POPULATION = "population";
+    /** The fields of each country the index is built from. */
+    static final List<String> FIELDS = Arrays.asList(CountriesSnapshot.NAME, CountriesSnapshot.TRANSLATIONS, POPULATION);
+
+    private static final class Entry {
+        final String foldedName;
+        final int ordinal;
+        final long population;
+
+        Entry(String foldedName, int ordinal, long population) {
+            this.foldedName = foldedName;
+            this.ordinal = ordinal;
+            this.population = population;
+        }
+    }
+
+    private final Map<String, Entry[]> entriesByLanguage;
+
+    CountryNamePrefixIndex(List<Map<String, Object>> countries) {
+        final Map<String, List<Entry>> entries = new HashMap<>();
+        for (int i = 0; i < countries.size(); i++) {
+            final Map<String, Object> country = countries.get(i);
+            final Object population = country.get(POPULATION);
+            final long populationValue = population instanceof Number ? ((Number) population).longValue() : 0L;
+            addEntry(entries, ENGLISH, country.get(CountriesSnapshot.NAME), i, populationValue);
+            final Object translations = country.get(CountriesSnapshot.TRANSLATIONS);
+            if (translations instanceof Map) {
+                for (Map.Entry<?, ?> translation : ((Map<?, ?>) translations).entrySet()) {
+                    addEntry(entries, (String) translation.getKey(), translation.getValue(), i, populationValue);
+                }
+            }
+        }
+        this.entriesByLanguage = new HashMap<>();
+        entries.forEach((languageCode, list) -> {
+            final Entry[] array = list.toArray(new Entry[list.size()]);
+            Arrays.sort(array, Comparator.comparing(e -> e.foldedName));
+            entriesByLanguage.put(languageCode, array);
+        });
+    }
+
+    private static void addEntry(Map<String, List<Entry>> entries, String languageCode, Object name, int ordinal, long population) {
+        if (name instanceof String) {
+            entries.computeIfAbsent(languageCode, k -> new ArrayList<>())
+                    .add(new Entry(CountryNames.fold((String) name), ordinal, population));
+        }
+    }
+
+    boolean hasNamesIn(String languageCode) {
+        return entriesByLanguage.containsKey(languageCode);
+    }
+
+    /**
+     * Find the countries whose name in the given language starts with the prefix, ignoring case and accents. A
+     * country whose whole name matches comes first, and the rest are ordered by descending population.
+     *
+     * @param languageCode the language of names to search, which is English if there are no names in that language
+     * @return the ordinals of at most {@code limit} matching countries
+     */
+    List<Integer> findByNameStartingWith(String prefix, String languageCode, int limit) {
+        final Entry[] entries = entriesByLanguage.getOrDefault(languageCode, entriesByLanguage.get(ENGLISH));
+        if (entries == null || limit <= 0) {
+            return new ArrayList<>(0);
+        }
+        final String foldedPrefix = CountryNames.fold(prefix.trim());
+        final List<Entry> best = new ArrayList<>(Math.min(limit, entries.length));
+        for (int i = firstAtOrAfter(entries, foldedPrefix); i < entries.length && entries[i].foldedName.startsWith(foldedPrefix); i++) {
+            insertRanked(best, entries[i], foldedPrefix, limit);
+        }
+        final List<Integer> result = new ArrayList<>(best.size());
+        best.forEach(entry -> result.add(entry.ordinal));
+        return result;
+    }
+
+    private static int firstAtOrAfter(Entry[] entries, String foldedPrefix) {
+        int low = 0;
+        int high = entries.length;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (entries[mid].foldedName.compareTo(foldedPrefix) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Insert the entry into the list kept in rank order, dropping the lowest ranked if the list is then over the limit.
+     */
+    private static void insertRanked(List<Entry> best, Entry entry, String foldedPrefix, int limit) {
+        int position = best.size();
+        while (position > 0 && ranksBefore(entry, best.get(position - 1), foldedPrefix)) {
+            position--;
+        }
+        if (position < limit) {
+            best.add(position, entry);
+            if (best.size() > limit) {
+                best.remove(limit);
+            }
+        }
+    }
+
+    private static boolean ranksBefore(Entry a, Entry b, String foldedPrefix) {
+        final boolean aExact = a.foldedName.length() == foldedPrefix.length();
+        final boolean bExact = b.foldedName.length() == foldedPrefix.length();
+        if (aExact != bExact) {
+            return aExact;
+        }
+        return a.population > b.population;
+    }
+}
@@ -0,0 +1,109 @@
+package ucles.weblab.common.i18n.countries.reactive;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClientBuilder;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.AsyncClientHttpRequestFactory;
+import org.springframework.http.client.HttpComponentsAsyncClientHttpRequestFactory;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.client.AsyncRestTemplate;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import ucles.weblab.common.i18n.countries.config.CountriesDataLoader;
+import ucles.weblab.common.i18n.countries.domain.AutoRefreshCountriesServiceImpl;
+import ucles.weblab.common.i18n.countries.domain.CountriesRawRepository;
+import ucles.weblab.common.i18n.countries.domain.file.CountriesFileStore;
+import ucles.weblab.common.i18n.countries.webapi.CountriesController;
+import ucles.weblab.common.schema.webapi.ResourceSchemaCreator;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Configuration for the non-blocking variants of the countries web API and refresh service, which are used in place
+ * of the blocking ones if {@code i18n.countries.reactive.enabled} is {@code true} and Reactor is on the classpath.
+ * The refresh service also needs the Apache HTTP async client, which is closed with the context, and is not used if
+ * refreshes are coordinated across a cluster.
+ *
+ * @since 18/10/26
+ */
+@Configuration
+@ConditionalOnClass({Mono.class})
+@ConditionalOnProperty(name = CountriesReactiveConfig.ENABLED, havingValue = "true")
+public class CountriesReactiveConfig {
+    public static final String ENABLED = "i18n.countries.reactive.enabled";
+
+    @Configuration
+    @ConditionalOnClass({CloseableHttpAsyncClient.class})
+    @ConditionalOnProperty(name = "i18n.countries.coordination.lease", havingValue = "none", matchIfMissing = true)
+    static class ReactiveCountriesRefresh {
+        @Bean
+        ReactiveCountriesServiceImpl reactiveCountriesService(@Value("${restcountries.uri:http://restcountries.eu/rest/v1/all}") URI countriesUri,
+                                                              CountriesRawRepository countriesRawRepository,
+                                                              Optional<CountriesFileStore> countriesFileStore,
+                                                              @Qualifier("countriesAsyncRequestFactory") AsyncClientHttpRequestFactory countriesAsyncRequestFactory,
+                                                              @Qualifier("countriesRefreshExecutor") ExecutorService countriesRefreshExecutor,
+                                                              @Value("${i18n.countries.refresh.max-attempts:3}") int maxAttempts,
+                                                              @Value("${i18n.countries.refresh.initial-backoff-ms:1000}") long initialBackoff,
+                                                              @Value("${i18n.countries.refresh.max-backoff-ms:30000}") long maxBackoff) {
+            return new ReactiveCountriesServiceImpl(countriesUri, countriesRawRepository, new AsyncRestTemplate(countriesAsyncRequestFactory),
+                    countriesFileStore, Schedulers.fromExecutor(countriesRefreshExecutor),
+                    new AutoRefreshCountriesServiceImpl.Backoff(maxAttempts, Duration.ofMillis(initialBackoff), Duration.ofMillis(maxBackoff)));
+        }
+
+        /**
+         * Async HTTP client using a small pool of connections, which is closed with the context.
+         */
+        @Bean(destroyMethod = "close")
+        CloseableHttpAsyncClient countriesHttpAsyncClient() {
+            return HttpAsyncClientBuilder.create()
+                    .setMaxConnTotal(2)
+                    .setMaxConnPerRoute(2)
+                    .useSystemProperties()
+                    .build();
+        }
+
+        /**
+         * Requests to REST Countries through the async client, with timeouts so that a hung REST Countries cannot hold
+         * a refresh forever.
+         */
+        @Bean(destroyMethod = "destroy")
+        HttpComponentsAsyncClientHttpRequestFactory countriesAsyncRequestFactory(
+                @Qualifier("countriesHttpAsyncClient") CloseableHttpAsyncClient countriesHttpAsyncClient,
+                @Value("${i18n.countries.refresh.connect-timeout-ms:5000}") int connectTimeout,
+                @Value("${i18n.countries.refresh.read-timeout-ms:30000}") int readTimeout) {
+            final HttpComponentsAsyncClientHttpRequestFactory requestFactory = new HttpComponentsAsyncClientHttpRequestFactory(countriesHttpAsyncClient);
+            requestFactory.setConnectTimeout(connectTimeout);
+            requestFactory.setConnectionRequestTimeout(connectTimeout);
+            requestFactory.setReadTimeout(readTimeout);
+            return requestFactory;
+        }
+    }
+
+    @Configuration
+    @ConditionalOnWebApplication
+    @ConditionalOnClass({RestController.class})
+    static class ReactiveCountriesWeb {
+        /**
+         * The reactive controller serves the views of a countries controller which is created here rather than
+         * component scanned, so that only the reactive one handles requests.
+         */
+        @Bean
+        ReactiveCountriesController reactiveCountriesController(CountriesRawRepository countriesRawRepository,
+                                                                 ResourceSchemaCreator schemaCreator, ObjectMapper objectMapper,
+                                                                 CountriesDataLoader countriesDataLoader,
+                                                                 @Qualifier("countriesLoaderExecutor") ExecutorService countriesLoaderExecutor) {
+            return new ReactiveCountriesController(new CountriesController(countriesRawRepository, schemaCreator, objectMapper),
+                    countriesDataLoader, countriesLoaderExecutor);
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package ucles.weblab.common.i18n.countries.reactive;
+
+import net.rossillo.spring.web.mvc.CacheControl;
+import net.rossillo.spring.web.mvc.CachePolicy;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import ucles.weblab.common.i18n.countries.config.CountriesDataLoader;
+import ucles.weblab.common.i18n.countries.domain.CountriesUpdatedEvent;
+import ucles.weblab.common.i18n.countries.webapi.CountriesController;
+import ucles.weblab.common.i18n.countries.webapi.resource.CountryResource;
+import ucles.weblab.common.webapi.MoreMediaTypes;
+import ucles.weblab.common.schema.webapi.SchemaMediaTypes;
+import ucles.weblab.common.xc.service.CrossContextMapping;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import static org.springframework.web.bind.annotation.RequestMethod.GET;
+
+/**
+ * Non-blocking variant of the {@link CountriesController}, providing the same API.
+ * The responses are built as {@link Mono}s from the in-memory views of the countries controller, once the countries
+ * data has loaded. A request which arrives while the data is still loading does not hold its thread waiting for it,
+ * but is completed asynchronously when the data has loaded. Each endpoint returns a {@link CompletableFuture} for
+ * Spring MVC to complete the response from, and the countries themselves are also available as a {@link Flux}.
+ *
+ * @since 18/10/26
+ */
+@RestController
+@RequestMapping(value = "/data/countries")
+public class ReactiveCountriesController {
+    private final CountriesController countries;
+    private final CountriesDataLoader countriesDataLoader;
+    private final Executor loadExecutor;
+
+    /**
+     * @param countries the controller whose views to serve, which is not itself mapped to handle requests
+     * @param loadExecutor executor to load the countries data on if it has not been loaded yet
+     */
+    public ReactiveCountriesController(CountriesController countries, CountriesDataLoader countriesDataLoader, Executor loadExecutor) {
+        this.countries = countries;
+        this.countriesDataLoader = countriesDataLoader;
+        this.loadExecutor = loadExecutor;
+    }
+
+    @EventListener
+    public void onCountriesUpdated(CountriesUpdatedEvent event) {
+        countries.onCountriesUpdated(event);
+    }
+
+    /**
+     * Get all the countries, with names in the language given by {@code lang}, or negotiated from the
+     * {@code Accept-Language} header if there is none, and with only the properties given by {@code fields} if any.
+     */
+    @RequestMapping(value = "/", method = GET, produces = MoreMediaTypes.APPLICATION_JSON_UTF8_VALUE)
+    @CacheControl(policy = CachePolicy.PUBLIC, maxAge = 60 * 60 * 24 * 7)
+    public CompletableFuture<ResponseEntity<byte[]>> getCountriesJson(@RequestParam(value = "lang", required = false) String languageCode,
+                                                                      @RequestParam(value = "fields", required = false) List<String> fields,
+                                                                      @RequestHeader(value = HttpHeaders.ACCEPT_LANGUAGE, required = false) String acceptLanguage,
+                                                                      @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+                                                                      @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        return whenLoaded(() -> countries.getCountriesJson(languageCode, fields, acceptLanguage, ifNoneMatch, acceptEncoding)).toFuture();
+    }
+
+    /**
+     * Get all the countries with names in the given language, or in English where there is no translation.
+     */
+    public Flux<CountryResource> getCountries(String languageCode) {
+        return whenLoaded(() -> countries.getCountries(languageCode)).flatMapIterable(list -> list);
+    }
+
+    /**
+     * Get many countries by ISO 3166-1 alpha-2 code in one request.
+     *
+     * @param isoCodes     the country codes, comma separated
+     * @param languageCode the language of the names to return, which defaults to English
+     * @return the countries found, in the order requested
+     */
+    @RequestMapping(value = "", method = GET, params = "iso", produces = MoreMediaTypes.APPLICATION_JSON_UTF8_VALUE)
+    public CompletableFuture<List<CountryResource>> getCountriesByIso(@RequestParam("iso") List<String> isoCodes,
+                                                                      @RequestParam(value = "lang", required = false) String languageCode) {
+        return whenLoaded(() -> countries.getCountriesByIso(isoCodes, languageCode)).toFuture();
+    }
+
+    /**
+     * Get the countries which have all the given attributes, such as a region and a currency.
+     */
+    @RequestMapping(value = "", method = GET, params = "!iso", produces = MoreMediaTypes.APPLICATION_JSON_UTF8_VALUE)
+    @CacheControl(policy = CachePolicy.PUBLIC, maxAge = 60 * 60 * 24 * 7)
+    public CompletableFuture<ResponseEntity<byte[]>> getCountriesByAttributes(@RequestParam(value = "region", required = false) String region,
+                                                                              @RequestParam(value = "subregion", required = false) String subregion,
+                                                                              @RequestParam(value = "currency", required = false) String currencyCode,
+                                                                              @RequestParam(value = "language", required = false) String spokenLanguageCode,
+                                                                              @RequestParam(value = "timezone", required = false) String timezone,
+                                                                              @RequestParam(value = "lang", required = false) String languageCode,
+                                                                              @RequestHeader(value = HttpHeaders.ACCEPT_LANGUAGE, required = false) String acceptLanguage,
+                                                                              @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+                                                                              @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        return whenLoaded(() -> countries.getCountriesByAttributes(region, subregion, currencyCode, spokenLanguageCode, timezone,
+                languageCode, acceptLanguage, ifNoneMatch, acceptEncoding)).toFuture();
+    }
+
+    /**
+     * Suggest countries whose name starts with what the user has typed so far, best matches first.
+     *
+     * @param query        the start of the country name
+     * @param languageCode the language of the names to search and return, which defaults to English
+     * @param limit        the maximum number of suggestions to return
+     */
+    @RequestMapping(value = "/suggest", method = GET, produces = MoreMediaTypes.APPLICATION_JSON_UTF8_VALUE)
+    public CompletableFuture<List<CountryResource>> suggest(@RequestParam("q") String query,
+                                                            @RequestParam(value = "lang", required = false) String languageCode,
+                                                            @RequestParam(value = "limit", defaultValue = "10") int limit) {
+        return whenLoaded(() -> countries.suggest(query, languageCode, limit)).toFuture();
+    }
+
+    @CrossContextMapping(value = "urn:xc:i18n:countries:$isoCodes")
+    @RequestMapping(value = "/$isoCodes", method = GET, produces = SchemaMediaTypes.APPLICATION_SCHEMA_JSON_UTF8_VALUE)
+    public CompletableFuture<ResponseEntity<byte[]>> enumerate(@RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+                                                               @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        return whenLoaded(() -> countries.enumerateJson(ifNoneMatch, acceptEncoding)).toFuture();
+    }
+
+    @CrossContextMapping(value = "urn:xc:i18n:countries:$iddPrefixes")
+    @RequestMapping(value = "/$iddPrefixes", method = GET, produces = SchemaMediaTypes.APPLICATION_SCHEMA_JSON_UTF8_VALUE)
+    public CompletableFuture<ResponseEntity<byte[]>> countryCallingCodes(@RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+                                                                         @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        return whenLoaded(() -> countries.countryCallingCodesJson(ifNoneMatch, acceptEncoding)).toFuture();
+    }
+
+    /**
+     * Get a view once the countries data has loaded. The view is got on the thread which finishes loading the data if
+     * it is still loading, so the current request is made available to it there for building links.
+     */
+    private <T> Mono<T> whenLoaded(Callable<T> view) {
+        final RequestAttributes request = RequestContextHolder.getRequestAttributes();
+        return Mono.fromFuture(countriesDataLoader.whenLoaded(loadExecutor))
+                .then(Mono.fromCallable(() -> inRequest(request, view)));
+    }
+
+    private static <T> T inRequest(RequestAttributes request, Callable<T> view) throws Exception {
+        final RequestAttributes current = RequestContextHolder.getRequestAttributes();
+        RequestContextHolder.setRequestAttributes(request);
+        try {
+            return view.call();
+        } finally {
+            RequestContextHolder.setRequestAttributes(current);
+        }
+    }
+}
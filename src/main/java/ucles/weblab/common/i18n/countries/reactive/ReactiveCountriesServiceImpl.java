@@ -0,0 +1,141 @@
+package ucles.weblab.common.i18n.countries.reactive;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.ApplicationEventPublisherAware;
+import org.springframework.http.HttpMethod;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.util.concurrent.ListenableFuture;
+import org.springframework.web.client.AsyncRestTemplate;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import ucles.weblab.common.i18n.countries.domain.AutoRefreshCountriesServiceImpl;
+import ucles.weblab.common.i18n.countries.domain.CountriesRawRepository;
+import ucles.weblab.common.i18n.countries.domain.CountriesRefreshSupport;
+import ucles.weblab.common.i18n.countries.domain.CountriesService;
+import ucles.weblab.common.i18n.countries.domain.ScheduledRefresh;
+import ucles.weblab.common.i18n.countries.domain.file.CountriesFileStore;
+
+import java.io.IOException;
+import java.net.URI;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+/**
+ * Non-blocking implementation of the service, which fetches the countries data with an {@link AsyncRestTemplate} so
+ * that no thread is held while waiting for REST Countries to respond.
+ * <p>
+ * Like {@link AutoRefreshCountriesServiceImpl}, with which it shares a {@link CountriesRefreshSupport}, each refresh
+ * is a conditional request, at most one refresh is in progress at a time, and a fetch which fails with an I/O or
+ * server error is retried with a randomised exponential backoff - here on a timer rather than by sleeping. The
+ * response body is streamed straight into the repository as it is handled, on the HTTP client's own thread, and only
+ * the update of the file store runs on the update scheduler. Refreshes are not coordinated across a cluster.
+ * </p>
+ *
+ * @since 18/10/26
+ */
+public class ReactiveCountriesServiceImpl implements CountriesService, ScheduledRefresh, ApplicationEventPublisherAware {
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final URI countriesUri;
+    private final AsyncRestTemplate restTemplate;
+    private final Scheduler updateScheduler;
+    private final AutoRefreshCountriesServiceImpl.Backoff backoff;
+    private final CountriesRefreshSupport refreshes;
+
+    /**
+     * @param countriesFileStore local store to keep a copy of the refreshed data in, if any
+     * @param updateScheduler scheduler to update the file store on, which may block
+     * @param backoff how to retry a failed fetch
+     */
+    public ReactiveCountriesServiceImpl(URI countriesUri, CountriesRawRepository countriesRawRepository, AsyncRestTemplate restTemplate,
+                                        Optional<CountriesFileStore> countriesFileStore, Scheduler updateScheduler,
+                                        AutoRefreshCountriesServiceImpl.Backoff backoff) {
+        this.countriesUri = countriesUri;
+        this.restTemplate = restTemplate;
+        this.updateScheduler = updateScheduler;
+        this.backoff = backoff;
+        this.refreshes = new CountriesRefreshSupport(this, countriesUri, countriesRawRepository, countriesFileStore);
+    }
+
+    @Override
+    public void setApplicationEventPublisher(ApplicationEventPublisher applicationEventPublisher) {
+        refreshes.setApplicationEventPublisher(applicationEventPublisher);
+    }
+
+    /**
+     * Scheduled job to refresh the repository once a month.
+     */
+    @Scheduled(cron = "0 0 5 1 * *")
+    public void scheduledRefresh() {
+        refreshRepository();
+    }
+
+    /**
+     * {@inheritDoc}
+     * The refresh starts straight away, and if a refresh is already in progress then this joins it rather than
+     * starting another. If any error occurs during the refresh the exception will be returned in the {@code Future}.
+     *
+     * @return the refreshed data, which is only rendered as a string if the future is asked for it
+     */
+    @Override
+    public Future<String> refreshRepository() {
+        return start();
+    }
+
+    /**
+     * Refresh the repository as {@link #refreshRepository()} does. The refresh starts whether or not the result is
+     * subscribed to.
+     *
+     * @return the refreshed data, or an error if the refresh failed
+     */
+    public Mono<String> refresh() {
+        return Mono.fromFuture(start().toCompletableFuture());
+    }
+
+    private CountriesRefreshSupport.Refresh start() {
+        return refreshes.startOrJoin(refresh -> fetchWithRetry()
+                .publishOn(updateScheduler)
+                .doOnNext(refreshes::store)
+                .subscribe(fetched -> refresh.finish(fetched, null), e -> refresh.finish(null, e)));
+    }
+
+    private Mono<CountriesRefreshSupport.Fetched> fetchWithRetry() {
+        return fetch().retryWhen(errors -> errors
+                .zipWith(Flux.range(1, Integer.MAX_VALUE), (error, attempt) -> {
+                    if (attempt >= backoff.getMaxAttempts() || !isTransient(error)) {
+                        return Mono.<Long>error(error);
+                    }
+                    final long delay = backoff.delayMillis(attempt);
+                    logger.warn("Failed to refresh countries data, attempt " + attempt + " of " + backoff.getMaxAttempts()
+                            + ", retrying in " + delay + "ms - " + error.getMessage());
+                    return Mono.delay(Duration.ofMillis(delay));
+                })
+                .flatMap(Function.identity()));
+    }
+
+    /**
+     * Check if a fetch failed in a way which retrying might fix - not if the data itself was invalid.
+     */
+    private static boolean isTransient(Throwable error) {
+        return (error instanceof IOException && !(error instanceof JsonProcessingException))
+                || error instanceof ResourceAccessException || error instanceof HttpServerErrorException;
+    }
+
+    private Mono<CountriesRefreshSupport.Fetched> fetch() {
+        return Mono.<CountriesRefreshSupport.Fetched>create(sink -> {
+            logger.info("Refreshing countries data from REST Countries…");
+            final ListenableFuture<CountriesRefreshSupport.Fetched> response = restTemplate.execute(countriesUri, HttpMethod.GET,
+                    refreshes::prepare, refreshes::read);
+            sink.onCancel(() -> response.cancel(true));
+            response.addCallback(sink::success, sink::error);
+        });
+    }
+}
@@ -1,15 +1,27 @@
 package ucles.weblab.common.i18n.countries.webapi;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.fasterxml.jackson.module.jsonSchema.JsonSchema;
 import net.rossillo.spring.web.mvc.CacheControl;
 import net.rossillo.spring.web.mvc.CachePolicy;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.boot.json.JsonParserFactory;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
-import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+import org.springframework.web.bind.ServletRequestBindingException;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 import ucles.weblab.common.i18n.countries.domain.CountriesRawRepository;
+import ucles.weblab.common.i18n.countries.domain.CountriesUpdatedEvent;
+import ucles.weblab.common.i18n.countries.domain.CountryAttribute;
+import ucles.weblab.common.i18n.countries.domain.CountryEntity;
 import ucles.weblab.common.i18n.countries.webapi.resource.CountryResource;
 import ucles.weblab.common.i18n.countries.webapi.resource.CountryResource.CurrencyResource;
 import ucles.weblab.common.webapi.MoreMediaTypes;
@@ -22,8 +34,10 @@ import java.util.*;
 import java.util.function.Function;
 import java.util.stream.Stream;
 
+import static java.util.stream.Collectors.collectingAndThen;
 import static java.util.stream.Collectors.toList;
 import static java.util.stream.Collectors.toMap;
+import static java.util.stream.Collectors.toSet;
 import static org.springframework.hateoas.mvc.ControllerLinkBuilder.methodOn;
 import static org.springframework.web.bind.annotation.RequestMethod.GET;
 
@@ -31,10 +45,25 @@ import static org.springframework.web.bind.annotation.RequestMethod.GET;
  * Controller for retrieving countries data.
  * This controller is registered outside the /api/ path so that it can be excluding from Spring Security
  * and specify cacheing headers.
+ * The country list is built from the countries the repository has already parsed, and rendered once per version of
+ * the countries data, and served with a strong ETag so that conditional requests can be answered without consulting
+ * the repository. Compressed encodings are produced
+ * along with it, so they are not compressed again on each request. The enum schemas of ISO codes and IDD prefixes
+ * are likewise built and rendered once per version of the data, for each of the most recently used hosts. Lists
+ * projected onto only some fields of each country are rendered once per version too, but only the most recently used
+ * projections are kept.
  * Provides the following API:
  * <dl>
  * <dt>/data/countries/</dt>
- * <dd>GET to retrieve country names, internal dialling codes and ISO3166-1 alpha-2 country codes</dd>
+ * <dd>GET to retrieve country names, internal dialling codes and ISO3166-1 alpha-2 country codes. Names are in
+ * the language given by a {@code lang} parameter or negotiated from {@code Accept-Language}, defaulting to English.
+ * A {@code fields} parameter limits each country to the comma separated properties given, such as {@code iso,name}.</dd>
+ * <dt>/data/countries?iso=&amp;lang=</dt>
+ * <dd>GET to retrieve the countries with the given comma separated ISO3166-1 alpha-2 country codes</dd>
+ * <dt>/data/countries?region=&amp;subregion=&amp;currency=&amp;language=&amp;timezone=&amp;lang=</dt>
+ * <dd>GET to retrieve the countries with all the given attributes, e.g. the countries in Europe using EUR</dd>
+ * <dt>/data/countries/suggest?q=&amp;lang=&amp;limit=</dt>
+ * <dd>GET to suggest countries whose name starts with {@code q}, best matches first</dd>
  * </dl>
  *
  * @since 18/05/15
@@ -42,24 +71,259 @@ import static org.springframework.web.bind.annotation.RequestMethod.GET;
 @RestController
 @RequestMapping(value = "/data/countries")
 public class CountriesController {
+    private static final String ENGLISH = "en";
+    private static final String COUNTRIES_RAW_VIEW = "countries.raw";
+    private static final String LANGUAGES_VIEW = "languages";
+    private static final String COUNTRIES_VIEW = "countries";
+    private static final String COUNTRIES_JSON_VIEW = "countries.json";
+    private static final String COUNTRIES_PROJECTION_VIEW = "countries.json.fields";
+    private static final String COUNTRIES_BY_ATTRIBUTES_VIEW = "countries.json.attributes";
+    private static final String COUNTRIES_BY_ISO_VIEW = "countries.iso";
+    private static final String ISO_CODES_SCHEMA_VIEW = "$isoCodes";
+    private static final String ISO_CODES_SCHEMA_JSON_VIEW = "$isoCodes.json";
+    private static final String IDD_PREFIXES_SCHEMA_VIEW = "$iddPrefixes";
+    private static final String IDD_PREFIXES_SCHEMA_JSON_VIEW = "$iddPrefixes.json";
+    private static final int MAX_SUGGESTIONS = 50;
+    /** The most projections of the country list to keep rendered at once. */
+    private static final int MAX_PROJECTIONS = 64;
+
     private final CountriesRawRepository countriesRawRepository;
     private final ResourceSchemaCreator schemaCreator;
+    private final ObjectMapper objectMapper;
+    private final CountriesViewCache views = new CountriesViewCache(MAX_PROJECTIONS);
 
     @Autowired
-    public CountriesController(CountriesRawRepository countriesRawRepository, ResourceSchemaCreator schemaCreator) {
+    public CountriesController(CountriesRawRepository countriesRawRepository, ResourceSchemaCreator schemaCreator, ObjectMapper objectMapper) {
         this.countriesRawRepository = countriesRawRepository;
         this.schemaCreator = schemaCreator;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * @deprecated the controller now renders its responses with the application's object mapper.
+     * Use {@link #CountriesController(CountriesRawRepository, ResourceSchemaCreator, ObjectMapper)} instead.
+     */
+    @Deprecated
+    public CountriesController(CountriesRawRepository countriesRawRepository, ResourceSchemaCreator schemaCreator) {
+        this(countriesRawRepository, schemaCreator, new ObjectMapper());
+    }
+
+    @EventListener
+    public void onCountriesUpdated(CountriesUpdatedEvent event) {
+        views.invalidate();
+    }
+
+    /**
+     * Get all the countries, with names in the language given by {@code lang}, or negotiated from the
+     * {@code Accept-Language} header if there is none.
+     */
+    public ResponseEntity<byte[]> getCountriesJson(String languageCode, String acceptLanguage, String ifNoneMatch, String acceptEncoding) {
+        final String negotiatedLanguageCode = negotiateLanguage(languageCode, acceptLanguage);
+        return views.get(COUNTRIES_JSON_VIEW + ':' + negotiatedLanguageCode, () -> render(getCountries(negotiatedLanguageCode)))
+                .toResponse(ifNoneMatch, acceptEncoding, languageHeaders(negotiatedLanguageCode));
     }
 
+    /**
+     * Get all the countries, with names in the language given by {@code lang}, or negotiated from the
+     * {@code Accept-Language} header if there is none, and with only the properties given by {@code fields} if any.
+     *
+     * @throws ServletRequestBindingException if any of the fields is not a property of a country
+     */
     @RequestMapping(value = "/", method = GET, produces = MoreMediaTypes.APPLICATION_JSON_UTF8_VALUE)
     @CacheControl(policy = CachePolicy.PUBLIC, maxAge = 60 * 60 * 24 * 7)
+    public ResponseEntity<byte[]> getCountriesJson(@RequestParam(value = "lang", required = false) String languageCode,
+                                                   @RequestParam(value = "fields", required = false) List<String> fields,
+                                                   @RequestHeader(value = HttpHeaders.ACCEPT_LANGUAGE, required = false) String acceptLanguage,
+                                                   @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+                                                   @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding)
+            throws ServletRequestBindingException {
+        final Optional<List<String>> projection = projection(fields);
+        if (!projection.isPresent()) {
+            return getCountriesJson(languageCode, acceptLanguage, ifNoneMatch, acceptEncoding);
+        }
+        final String negotiatedLanguageCode = negotiateLanguage(languageCode, acceptLanguage);
+        final String key = COUNTRIES_PROJECTION_VIEW + ':' + negotiatedLanguageCode + ':' + String.join(",", projection.get());
+        return views.getBounded(key, () -> render(project(getCountries(negotiatedLanguageCode), projection.get())))
+                .toResponse(ifNoneMatch, acceptEncoding, languageHeaders(negotiatedLanguageCode));
+    }
+
+    private static HttpHeaders languageHeaders(String languageCode) {
+        final HttpHeaders headers = new HttpHeaders();
+        headers.add(HttpHeaders.VARY, HttpHeaders.ACCEPT_LANGUAGE);
+        headers.set(HttpHeaders.CONTENT_LANGUAGE, languageCode);
+        return headers;
+    }
+
+    /**
+     * Choose the properties of each country to list, in their usual order so that each projection is cached once
+     * however its fields are given.
+     *
+     * @return the properties, or empty to list all of them if no fields are given
+     */
+    private static Optional<List<String>> projection(List<String> fields) throws ServletRequestBindingException {
+        final Set<String> requested = fields == null ? Collections.emptySet() : fields.stream()
+                .map(String::trim)
+                .filter(field -> !field.isEmpty())
+                .collect(toSet());
+        if (requested.isEmpty()) {
+            return Optional.empty();
+        }
+        if (!CountryResource.FIELDS.containsAll(requested)) {
+            requested.removeAll(CountryResource.FIELDS);
+            throw new ServletRequestBindingException("Unknown country fields " + requested + " - expected some of " + CountryResource.FIELDS);
+        }
+        return Optional.of(CountryResource.FIELDS.stream().filter(requested::contains).collect(toList()));
+    }
+
+    private ArrayNode project(List<CountryResource> countries, List<String> fields) {
+        final ArrayNode projected = objectMapper.valueToTree(countries);
+        projected.forEach(country -> ((ObjectNode) country).retain(fields));
+        return projected;
+    }
+
+    /**
+     * Get all the countries, built from the current countries data on first use after each update.
+     *
+     * @return an unmodifiable list of countries
+     */
     public List<CountryResource> getCountries() {
-        final String rawData = countriesRawRepository.findAllRaw().orElseThrow(() -> new ResourceNotFoundException(-1));
-        final List<Object> list = JsonParserFactory.getJsonParser().parseList(rawData);
-        return list.stream()
-                .map((o) -> {
-                    Assert.isInstanceOf(Map.class, o);
-                    Map map = (Map) o;
+        return getCountries(ENGLISH);
+    }
+
+    /**
+     * Get all the countries with names in the given language, or in English where there is no translation.
+     *
+     * @return an unmodifiable list of countries
+     */
+    public List<CountryResource> getCountries(String languageCode) {
+        return views.get(COUNTRIES_VIEW + ':' + languageCode, () -> createCountries(languageCode));
+    }
+
+    /**
+     * Get many countries by ISO 3166-1 alpha-2 code in one request.
+     *
+     * @param isoCodes     the country codes, comma separated
+     * @param languageCode the language of the names to return, which defaults to English
+     * @return the countries found, in the order requested
+     */
+    @RequestMapping(value = "", method = GET, params = "iso", produces = MoreMediaTypes.APPLICATION_JSON_UTF8_VALUE)
+    public List<CountryResource> getCountriesByIso(@RequestParam("iso") List<String> isoCodes,
+                                                   @RequestParam(value = "lang", required = false) String languageCode) {
+        return localise(countriesRawRepository.findAllByAlpha2Codes(isoCodes, languageCode).values().stream());
+    }
+
+    /**
+     * Get the countries which have all the given attributes, such as a region and a currency. The list for each
+     * combination of attributes is rendered once per version of the data, while it is among the most recently used.
+     *
+     * @param languageCode the language of the names to return, which defaults to English
+     * @throws ServletRequestBindingException if no attributes are given
+     */
+    @RequestMapping(value = "", method = GET, params = "!iso", produces = MoreMediaTypes.APPLICATION_JSON_UTF8_VALUE)
+    @CacheControl(policy = CachePolicy.PUBLIC, maxAge = 60 * 60 * 24 * 7)
+    public ResponseEntity<byte[]> getCountriesByAttributes(@RequestParam(value = "region", required = false) String region,
+                                                           @RequestParam(value = "subregion", required = false) String subregion,
+                                                           @RequestParam(value = "currency", required = false) String currencyCode,
+                                                           @RequestParam(value = "language", required = false) String spokenLanguageCode,
+                                                           @RequestParam(value = "timezone", required = false) String timezone,
+                                                           @RequestParam(value = "lang", required = false) String languageCode,
+                                                           @RequestHeader(value = HttpHeaders.ACCEPT_LANGUAGE, required = false) String acceptLanguage,
+                                                           @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+                                                           @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding)
+            throws ServletRequestBindingException {
+        final Map<CountryAttribute, String> attributes = new EnumMap<>(CountryAttribute.class);
+        putAttribute(attributes, CountryAttribute.REGION, region);
+        putAttribute(attributes, CountryAttribute.SUBREGION, subregion);
+        putAttribute(attributes, CountryAttribute.CURRENCY, currencyCode);
+        putAttribute(attributes, CountryAttribute.LANGUAGE, spokenLanguageCode);
+        putAttribute(attributes, CountryAttribute.TIMEZONE, timezone);
+        if (attributes.isEmpty()) {
+            throw new ServletRequestBindingException("Expected any of region, subregion, currency, language or timezone");
+        }
+        final String negotiatedLanguageCode = negotiateLanguage(languageCode, acceptLanguage);
+        return views.getBounded(COUNTRIES_BY_ATTRIBUTES_VIEW + ':' + negotiatedLanguageCode + ':' + attributes,
+                () -> render(findByAttributes(attributes, negotiatedLanguageCode)))
+                .toResponse(ifNoneMatch, acceptEncoding, languageHeaders(negotiatedLanguageCode));
+    }
+
+    private static void putAttribute(Map<CountryAttribute, String> attributes, CountryAttribute attribute, String value) {
+        if (StringUtils.hasText(value)) {
+            attributes.put(attribute, CountryAttribute.key(value));
+        }
+    }
+
+    /**
+     * Find the countries with the first attribute, keeping only those which also have the others.
+     */
+    private List<CountryResource> findByAttributes(Map<CountryAttribute, String> attributes, String languageCode) {
+        List<? extends CountryEntity> countries = null;
+        for (Map.Entry<CountryAttribute, String> attribute : attributes.entrySet()) {
+            final List<? extends CountryEntity> found = countriesRawRepository.findByAttribute(attribute.getKey(), attribute.getValue(), languageCode);
+            if (countries == null) {
+                countries = found;
+            } else {
+                final Set<String> foundCodes = found.stream().map(CountryEntity::getIso3166Alpha2Code).collect(toSet());
+                countries = countries.stream().filter(country -> foundCodes.contains(country.getIso3166Alpha2Code())).collect(toList());
+            }
+        }
+        return localise(countries.stream());
+    }
+
+    /**
+     * Suggest countries whose name starts with what the user has typed so far, best matches first.
+     *
+     * @param query        the start of the country name
+     * @param languageCode the language of the names to search and return, which defaults to English
+     * @param limit        the maximum number of suggestions to return
+     */
+    @RequestMapping(value = "/suggest", method = GET, produces = MoreMediaTypes.APPLICATION_JSON_UTF8_VALUE)
+    public List<CountryResource> suggest(@RequestParam("q") String query,
+                                         @RequestParam(value = "lang", required = false) String languageCode,
+                                         @RequestParam(value = "limit", defaultValue = "10") int limit) {
+        return localise(countriesRawRepository.findByNameStartingWith(query, languageCode, Math.min(limit, MAX_SUGGESTIONS)).stream());
+    }
+
+    /**
+     * Get the resource for each country, with its name as given by the country.
+     */
+    private List<CountryResource> localise(Stream<? extends CountryEntity> countries) {
+        final Map<String, CountryResource> countriesByIso = getCountriesByIso();
+        return countries
+                .filter(country -> countriesByIso.containsKey(country.getIso3166Alpha2Code()))
+                .map(country -> countriesByIso.get(country.getIso3166Alpha2Code()).withName(country.getName()))
+                .collect(toList());
+    }
+
+    private Map<String, CountryResource> getCountriesByIso() {
+        return views.get(COUNTRIES_BY_ISO_VIEW, () -> getCountries().stream()
+                .collect(collectingAndThen(toMap(CountryResource::getIso, Function.identity(), (a, b) -> a), Collections::unmodifiableMap)));
+    }
+
+    private CountriesPayload render(Object view) {
+        try {
+            return new CountriesPayload(objectMapper.writeValueAsBytes(view));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to render countries data", e);
+        }
+    }
+
+    private List<Map<String, Object>> findCountries() {
+        return countriesRawRepository.findAllParsed().orElseThrow(() -> new ResourceNotFoundException(-1));
+    }
+
+    private Set<String> parseLanguages() {
+        final Set<String> languageCodes = new TreeSet<>();
+        languageCodes.add(ENGLISH);
+        views.get(COUNTRIES_RAW_VIEW, this::findCountries).stream()
+                .map(map -> map.get("translations"))
+                .filter(Map.class::isInstance)
+                .forEach(translations -> ((Map<?, ?>) translations).keySet().forEach(key -> languageCodes.add((String) key)));
+        return Collections.unmodifiableSet(languageCodes);
+    }
+
+    private List<CountryResource> createCountries(String languageCode) {
+        return views.get(COUNTRIES_RAW_VIEW, this::findCountries).stream()
+                .map((map) -> {
                     // Use this to filter out any empty codes
                     @SuppressWarnings("unchecked")
                     final Collection<String> callingCodes = (Collection<String>) map.get("callingCodes");
@@ -76,7 +340,7 @@ public class CountriesController {
                             return new CurrencyResource(s);
                         }
                     };
-                    return new CountryResource((String) map.get("name"),
+                    return new CountryResource(translatedName(map, languageCode),
                             isoCode,
                             languages,
                             callingCodes.stream().filter(s -> !s.isEmpty()).collect(toList()),
@@ -84,28 +348,103 @@ public class CountriesController {
                             currencies.stream().filter(s -> !s.isEmpty()).collect(toMap(Function.identity(),
                                     resourceForCurrencyCode, (a, b) -> a, LinkedHashMap::new)));
                 })
-                .collect(toList());
+                .collect(collectingAndThen(toList(), Collections::unmodifiableList));
+    }
+
+    /**
+     * Get the name of the country in the given language, falling back to the English name if there is no translation.
+     */
+    private static String translatedName(Map<?, ?> map, String languageCode) {
+        final Object translations = map.get("translations");
+        final Object translation = translations instanceof Map ? ((Map<?, ?>) translations).get(languageCode) : null;
+        return translation instanceof String ? (String) translation : (String) map.get("name");
+    }
+
+    /**
+     * Choose the language to list countries in - the language requested if there is one, otherwise the best match
+     * for the {@code Accept-Language} header - falling back to English.
+     */
+    private String negotiateLanguage(String languageCode, String acceptLanguage) {
+        final Set<String> languageCodes = views.get(LANGUAGES_VIEW, this::parseLanguages);
+        if (StringUtils.hasText(languageCode)) {
+            final String requested = languageCode.trim().toLowerCase(Locale.ROOT);
+            return languageCodes.contains(requested) ? requested : ENGLISH;
+        }
+        if (StringUtils.hasText(acceptLanguage)) {
+            try {
+                final String tag = Locale.lookupTag(Locale.LanguageRange.parse(acceptLanguage), languageCodes);
+                if (tag != null) {
+                    return tag;
+                }
+            } catch (IllegalArgumentException e) {
+                // Ignore a malformed header, as though it were not sent.
+            }
+        }
+        return ENGLISH;
     }
 
     @CrossContextMapping(value = "urn:xc:i18n:countries:$isoCodes")
     @RequestMapping(value = "/$isoCodes", method = GET, produces = SchemaMediaTypes.APPLICATION_SCHEMA_JSON_UTF8_VALUE)
-    public ResponseEntity<JsonSchema> enumerate() {
-        final JsonSchema enumSchema = schemaCreator.createEnum(getCountries(), methodOn(CountriesController.class).enumerate(),
-                CountryResource::getIso, Optional.of(CountryResource::getName));
-        return ResponseEntity.ok(enumSchema);
+    public ResponseEntity<byte[]> enumerateJson(@RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+                                                @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        return views.getBounded(schemaViewKey(ISO_CODES_SCHEMA_JSON_VIEW), () -> render(getIsoCodesSchema())).toResponse(ifNoneMatch, acceptEncoding);
     }
 
     @CrossContextMapping(value = "urn:xc:i18n:countries:$iddPrefixes")
     @RequestMapping(value = "/$iddPrefixes", method = GET, produces = SchemaMediaTypes.APPLICATION_SCHEMA_JSON_UTF8_VALUE)
+    public ResponseEntity<byte[]> countryCallingCodesJson(@RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+                                                          @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        return views.getBounded(schemaViewKey(IDD_PREFIXES_SCHEMA_JSON_VIEW), () -> render(getIddPrefixesSchema())).toResponse(ifNoneMatch, acceptEncoding);
+    }
+
+    /**
+     * @deprecated the schema is now served already rendered, with an ETag.
+     * Use {@link #enumerateJson(String, String)} instead, which is also the method to link to.
+     */
+    @Deprecated
+    public ResponseEntity<JsonSchema> enumerate() {
+        return ResponseEntity.ok(getIsoCodesSchema());
+    }
+
+    /**
+     * @deprecated the schema is now served already rendered, with an ETag.
+     * Use {@link #countryCallingCodesJson(String, String)} instead, which is also the method to link to.
+     */
+    @Deprecated
     public ResponseEntity<JsonSchema> countryCallingCodes() {
+        return ResponseEntity.ok(getIddPrefixesSchema());
+    }
+
+    private JsonSchema getIsoCodesSchema() {
+        return views.getBounded(schemaViewKey(ISO_CODES_SCHEMA_VIEW), this::createIsoCodesSchema);
+    }
+
+    private JsonSchema getIddPrefixesSchema() {
+        return views.getBounded(schemaViewKey(IDD_PREFIXES_SCHEMA_VIEW), this::createIddPrefixesSchema);
+    }
+
+    /**
+     * Schemas contain links to themselves, which depend on the host and context the request was made to, so are
+     * cached separately for each. Since the host is chosen by the client, they are kept in the bounded section of the
+     * cache, so that requests with many different hosts cannot grow it without limit.
+     */
+    private static String schemaViewKey(String view) {
+        return view + '@' + ServletUriComponentsBuilder.fromCurrentServletMapping().build().toUriString();
+    }
+
+    private JsonSchema createIsoCodesSchema() {
+        return schemaCreator.createEnum(getCountries(), methodOn(CountriesController.class).enumerateJson(null, null),
+                CountryResource::getIso, Optional.of(CountryResource::getName));
+    }
+
+    private JsonSchema createIddPrefixesSchema() {
         Stream<CountryResource> countriesWithCodes = getCountries().stream()
                 .filter(r -> !r.getCode().isEmpty())
                 .sorted(Comparator.comparing(r -> r.getCode().iterator().next()));
         final Function<CountryResource, String> valueFn = r -> r.getCode().iterator().next();
         final Optional<Function<CountryResource, String>> nameFn = Optional.of(r -> "+" + r.getCode().iterator().next());
         final Optional<Function<CountryResource, String>> descFn = Optional.of(CountryResource::getIso);
-        final JsonSchema enumSchema = schemaCreator.createEnum(countriesWithCodes, methodOn(CountriesController.class).countryCallingCodes(),
+        return schemaCreator.createEnum(countriesWithCodes, methodOn(CountriesController.class).countryCallingCodesJson(null, null),
                 valueFn, nameFn, descFn);
-        return ResponseEntity.ok(enumSchema);
     }
 }
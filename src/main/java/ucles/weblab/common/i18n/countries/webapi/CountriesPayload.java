@@ -0,0 +1,182 @@
+package ucles.weblab.common.i18n.countries.webapi;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.DigestUtils;
+import org.springframework.util.StringUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A response body rendered once from the countries data, together with a strong entity tag derived from its content.
+ * <p>
+ * Compressed encodings of the body are produced at the same time, so that they can be served as they are to any
+ * client which accepts them instead of being compressed again on every request. Each encoding has its own entity tag.
+ * </p>
+ *
+ * @since 18/10/26
+ */
+final class CountriesPayload {
+    enum ContentCoding {
+        GZIP("gzip"),
+        DEFLATE("deflate"),
+        IDENTITY("identity");
+
+        private final String token;
+
+        ContentCoding(String token) {
+            this.token = token;
+        }
+
+        OutputStream wrap(OutputStream out) throws IOException {
+            switch (this) {
+                case GZIP:
+                    return new GZIPOutputStream(out);
+                case DEFLATE:
+                    return new DeflaterOutputStream(out);
+                default:
+                    return out;
+            }
+        }
+    }
+
+    private static final class Variant {
+        final byte[] body;
+        final String eTag;
+
+        Variant(byte[] body, String eTag) {
+            this.body = body;
+            this.eTag = eTag;
+        }
+    }
+
+    private final Map<ContentCoding, Variant> variants = new EnumMap<>(ContentCoding.class);
+
+    CountriesPayload(byte[] body) {
+        final String hash = DigestUtils.md5DigestAsHex(body);
+        variants.put(ContentCoding.IDENTITY, new Variant(body, "\"" + hash + "\""));
+        for (ContentCoding coding : new ContentCoding[] { ContentCoding.GZIP, ContentCoding.DEFLATE }) {
+            final byte[] encoded = encode(body, coding);
+            // Don't offer an encoding which makes small bodies larger.
+            if (encoded.length < body.length) {
+                variants.put(coding, new Variant(encoded, "\"" + hash + "-" + coding.token + "\""));
+            }
+        }
+    }
+
+    private static byte[] encode(byte[] body, ContentCoding coding) {
+        final ByteArrayOutputStream buffer = new ByteArrayOutputStream(body.length / 4);
+        try (OutputStream out = coding.wrap(buffer)) {
+            out.write(body);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return buffer.toByteArray();
+    }
+
+    String getETag() {
+        return variants.get(ContentCoding.IDENTITY).eTag;
+    }
+
+    byte[] getBody() {
+        return variants.get(ContentCoding.IDENTITY).body;
+    }
+
+    /**
+     * Build the response to a request, which is {@code 304 Not Modified} if the client already holds this payload.
+     *
+     * @param ifNoneMatch the value of the request's {@code If-None-Match} header, if any
+     * @param acceptEncoding the value of the request's {@code Accept-Encoding} header, if any
+     */
+    ResponseEntity<byte[]> toResponse(String ifNoneMatch, String acceptEncoding) {
+        return toResponse(ifNoneMatch, acceptEncoding, new HttpHeaders());
+    }
+
+    /**
+     * Build the response to a request, which is {@code 304 Not Modified} if the client already holds this payload.
+     *
+     * @param ifNoneMatch the value of the request's {@code If-None-Match} header, if any
+     * @param acceptEncoding the value of the request's {@code Accept-Encoding} header, if any
+     * @param headers any further headers to add to the response
+     */
+    ResponseEntity<byte[]> toResponse(String ifNoneMatch, String acceptEncoding, HttpHeaders headers) {
+        final ContentCoding coding = selectCoding(acceptEncoding);
+        final Variant variant = variants.get(coding);
+        final boolean notModified = isNotModified(ifNoneMatch);
+        final ResponseEntity.BodyBuilder builder = ResponseEntity.status(notModified ? HttpStatus.NOT_MODIFIED : HttpStatus.OK)
+                .headers(headers)
+                .eTag(variant.eTag);
+        if (variants.size() > 1) {
+            builder.header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        }
+        if (notModified) {
+            return builder.build();
+        }
+        if (coding != ContentCoding.IDENTITY) {
+            builder.header(HttpHeaders.CONTENT_ENCODING, coding.token);
+        }
+        return builder.body(variant.body);
+    }
+
+    /**
+     * Pick the preferred encoding we hold which the client accepts, i.e. which is listed (or matched by {@code *})
+     * with a non-zero quality value.
+     */
+    private ContentCoding selectCoding(String acceptEncoding) {
+        if (!StringUtils.hasText(acceptEncoding)) {
+            return ContentCoding.IDENTITY;
+        }
+        final Map<String, Boolean> accepted = new HashMap<>();
+        for (String element : StringUtils.commaDelimitedListToStringArray(acceptEncoding)) {
+            final String[] parts = element.split(";");
+            boolean acceptable = true;
+            for (int i = 1; i < parts.length; i++) {
+                final String parameter = parts[i].trim();
+                if (parameter.startsWith("q=")) {
+                    try {
+                        acceptable = Double.parseDouble(parameter.substring(2)) > 0;
+                    } catch (NumberFormatException e) {
+                        acceptable = false;
+                    }
+                }
+            }
+            accepted.put(parts[0].trim().toLowerCase(Locale.ROOT), acceptable);
+        }
+        for (ContentCoding coding : variants.keySet()) {
+            if (coding != ContentCoding.IDENTITY
+                    && accepted.getOrDefault(coding.token, accepted.getOrDefault("*", false))) {
+                return coding;
+            }
+        }
+        return ContentCoding.IDENTITY;
+    }
+
+    private boolean isNotModified(String ifNoneMatch) {
+        if (!StringUtils.hasText(ifNoneMatch)) {
+            return false;
+        }
+        for (String candidate : StringUtils.commaDelimitedListToStringArray(ifNoneMatch)) {
+            final String tag = candidate.trim();
+            // If-None-Match uses the weak comparison function, so ignore any weakness indicator. All our encodings
+            // have the same content, so a tag for any of them will do.
+            if (tag.equals("*") || matchesAnyVariant(tag.startsWith("W/") ? tag.substring(2) : tag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean matchesAnyVariant(String tag) {
+        return variants.values().stream().anyMatch(variant -> variant.eTag.equals(tag));
+    }
+}
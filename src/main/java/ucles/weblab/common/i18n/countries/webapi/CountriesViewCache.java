@@ -0,0 +1,96 @@
+package ucles.weblab.common.i18n.countries.webapi;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Cache of views derived from the countries data (parsed resources, rendered payloads etc.) which remain valid until
+ * the data is next updated.
+ * <p>
+ * Each cached view is tagged with the generation it was computed in, so a view computed from old data while an
+ * invalidation is in progress is never served afterwards.
+ * </p>
+ * <p>
+ * Views of which there may be too many to keep them all, such as one for every combination of request parameters,
+ * are kept in a bounded section of the cache, which discards the least recently used view when it is full.
+ * </p>
+ *
+ * @since 18/10/26
+ */
+class CountriesViewCache {
+    private final AtomicLong generation = new AtomicLong();
+    private final ConcurrentMap<Object, View> views = new ConcurrentHashMap<>();
+    private final Map<Object, View> boundedViews;
+
+    private static class View {
+        final long generation;
+        final Object value;
+
+        View(long generation, Object value) {
+            this.generation = generation;
+            this.value = value;
+        }
+    }
+
+    /**
+     * @param maxBoundedViews the most views to keep in the bounded section of the cache
+     */
+    CountriesViewCache(int maxBoundedViews) {
+        boundedViews = new LinkedHashMap<Object, View>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Object, View> eldest) {
+                return size() > maxBoundedViews;
+            }
+        };
+    }
+
+    /**
+     * Get the view with the given key, computing it if it is not already cached for the current data.
+     */
+    @SuppressWarnings("unchecked")
+    <T> T get(Object key, Supplier<T> factory) {
+        final long current = generation.get();
+        final View view = views.get(key);
+        if (view != null && view.generation == current) {
+            return (T) view.value;
+        }
+        final T value = factory.get();
+        views.put(key, new View(current, value));
+        return value;
+    }
+
+    /**
+     * Get the view with the given key from the bounded section of the cache, computing it if it is not already cached
+     * for the current data.
+     */
+    @SuppressWarnings("unchecked")
+    <T> T getBounded(Object key, Supplier<T> factory) {
+        final long current = generation.get();
+        synchronized (boundedViews) {
+            final View view = boundedViews.get(key);
+            if (view != null && view.generation == current) {
+                return (T) view.value;
+            }
+        }
+        final T value = factory.get();
+        synchronized (boundedViews) {
+            boundedViews.put(key, new View(current, value));
+        }
+        return value;
+    }
+
+    /**
+     * Discard all cached views, because the data they were derived from has changed.
+     */
+    void invalidate() {
+        generation.incrementAndGet();
+        views.clear();
+        synchronized (boundedViews) {
+            boundedViews.clear();
+        }
+    }
+}
@@ -4,15 +4,22 @@ import com.fasterxml.jackson.annotation.JsonInclude;
 import org.springframework.hateoas.ResourceSupport;
 
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 
+import static java.util.Arrays.asList;
+import static java.util.Collections.unmodifiableList;
+
 /**
  * View model, designed for JSON serialization, of country data.
  *
  * @since 18/05/15
  */
 public class CountryResource extends ResourceSupport {
+    /** The names of the properties of the country itself, as serialized. */
+    public static final List<String> FIELDS = unmodifiableList(asList("name", "code", "iso", "languages", "population", "currency"));
+
     private String name;
     private Collection<String> code;
     private String iso;
@@ -73,6 +80,13 @@ public class CountryResource extends ResourceSupport {
         this.currency = currency;
     }
 
+    /**
+     * Copy this resource with the name replaced, e.g. by a translation.
+     */
+    public CountryResource withName(String name) {
+        return new CountryResource(name, iso, languages, code, population, currency);
+    }
+
     public String getName() {
         return name;
     }
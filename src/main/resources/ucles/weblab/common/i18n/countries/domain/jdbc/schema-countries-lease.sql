@@ -0,0 +1,5 @@
+CREATE TABLE countries_refresh_lease (
+  name       VARCHAR(64)  NOT NULL PRIMARY KEY,
+  owner      VARCHAR(255) NOT NULL,
+  expires_at BIGINT       NOT NULL
+);
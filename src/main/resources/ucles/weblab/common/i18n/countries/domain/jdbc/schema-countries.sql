@@ -0,0 +1,52 @@
+CREATE TABLE countries_data (
+  id       INT         NOT NULL PRIMARY KEY,
+  version  BIGINT      NOT NULL,
+  digest   VARCHAR(32),
+  raw_data CLOB
+);
+
+CREATE TABLE country (
+  ordinal     INT          NOT NULL PRIMARY KEY,
+  alpha2_code VARCHAR(2),
+  alpha3_code VARCHAR(3),
+  name        VARCHAR(255),
+  name_folded VARCHAR(255),
+  population  BIGINT
+);
+CREATE INDEX country_alpha2_code ON country (alpha2_code);
+CREATE INDEX country_alpha3_code ON country (alpha3_code);
+CREATE INDEX country_name ON country (name);
+CREATE INDEX country_name_folded ON country (name_folded);
+
+CREATE TABLE country_translation (
+  country_ordinal INT          NOT NULL REFERENCES country (ordinal),
+  language_code   VARCHAR(16)  NOT NULL,
+  name            VARCHAR(255) NOT NULL,
+  name_folded     VARCHAR(255) NOT NULL,
+  PRIMARY KEY (country_ordinal, language_code)
+);
+CREATE INDEX country_translation_name ON country_translation (language_code, name);
+CREATE INDEX country_translation_name_folded ON country_translation (language_code, name_folded);
+
+CREATE TABLE country_alt_spelling (
+  country_ordinal INT          NOT NULL REFERENCES country (ordinal),
+  position        INT          NOT NULL,
+  name            VARCHAR(255) NOT NULL,
+  name_folded     VARCHAR(255) NOT NULL,
+  PRIMARY KEY (country_ordinal, position)
+);
+
+CREATE TABLE country_calling_code (
+  country_ordinal INT         NOT NULL REFERENCES country (ordinal),
+  position        INT         NOT NULL,
+  calling_code    VARCHAR(16) NOT NULL,
+  PRIMARY KEY (country_ordinal, position)
+);
+
+CREATE TABLE country_attribute (
+  country_ordinal INT          NOT NULL REFERENCES country (ordinal),
+  attribute       VARCHAR(16)  NOT NULL,
+  value_key       VARCHAR(255) NOT NULL,
+  PRIMARY KEY (country_ordinal, attribute, value_key)
+);
+CREATE INDEX country_attribute_value ON country_attribute (attribute, value_key);
@@ -0,0 +1,98 @@
+package ucles.weblab.common.i18n.countries;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.module.jsonSchema.factories.JsonSchemaFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.context.PropertyPlaceholderAutoConfiguration;
+import org.springframework.boot.test.util.EnvironmentTestUtils;
+import org.springframework.context.ApplicationContextInitializer;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.MessageSource;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.security.access.expression.method.DefaultMethodSecurityExpressionHandler;
+import org.springframework.security.access.expression.method.MethodSecurityExpressionHandler;
+import ucles.weblab.common.i18n.countries.config.CountriesConfig;
+import ucles.weblab.common.i18n.service.LocalisationService;
+import ucles.weblab.common.i18n.service.impl.LocalisationServiceImpl;
+import ucles.weblab.common.schema.webapi.EnumSchemaCreator;
+import ucles.weblab.common.schema.webapi.ResourceSchemaCreator;
+import ucles.weblab.common.security.SecurityChecker;
+import ucles.weblab.common.xc.service.CrossContextConversionService;
+import ucles.weblab.common.xc.service.CrossContextConversionServiceImpl;
+
+import java.util.function.Supplier;
+
+/**
+ * Configuration for integration tests of the countries domain, supplying the beans it needs from the rest of the
+ * application.
+ *
+ * @since 18/05/15
+ */
+@Configuration
+@Import({CountriesConfig.class, PropertyPlaceholderAutoConfiguration.class})
+public class CountriesIntegrationConfig {
+    @Bean
+    @ConditionalOnMissingBean(MethodSecurityExpressionHandler.class)
+    MethodSecurityExpressionHandler methodSecurityExpressionHandler() {
+        return new DefaultMethodSecurityExpressionHandler();
+    }
+
+    @Bean
+    SecurityChecker securityChecker(MethodSecurityExpressionHandler handler) {
+        return new SecurityChecker(handler);
+    }
+
+    @Bean
+    CrossContextConversionService crossContextConversionService() {
+        return new CrossContextConversionServiceImpl();
+    }
+
+    @Bean
+    EnumSchemaCreator enumSchemaCreator(final JsonSchemaFactory schemaFactory) {
+        return new EnumSchemaCreator();
+    }
+
+    @Bean
+    JsonSchemaFactory jsonSchemaFactory() {
+        return new JsonSchemaFactory();
+    }
+
+    @Bean
+    LocalisationService localisationService(MessageSource messageSource) {
+        return new LocalisationServiceImpl(messageSource);
+    }
+
+    @Bean
+    public ResourceSchemaCreator resourceSchemaCreator(SecurityChecker securityChecker,
+                                                       CrossContextConversionService crossContextConversionService,
+                                                       EnumSchemaCreator enumSchemaCreator,
+                                                       JsonSchemaFactory jsonSchemaFactory,
+                                                       LocalisationService localisationService) {
+
+        return new ResourceSchemaCreator(securityChecker,
+                new ObjectMapper(),
+                crossContextConversionService,
+                enumSchemaCreator,
+                jsonSchemaFactory,
+                localisationService);
+    }
+
+    /**
+     * Points {@code restcountries.uri} at a local stub, so that tests do not depend on the real service. Subclass this
+     * with a no-argument constructor to use it in {@code @ContextConfiguration(initializers = ...)}.
+     */
+    public abstract static class StubInitializer implements ApplicationContextInitializer<ConfigurableApplicationContext> {
+        private final Supplier<RestCountriesStub> stub;
+
+        protected StubInitializer(Supplier<RestCountriesStub> stub) {
+            this.stub = stub;
+        }
+
+        @Override
+        public void initialize(ConfigurableApplicationContext applicationContext) {
+            EnvironmentTestUtils.addEnvironment(applicationContext, "restcountries.uri=" + stub.get().getUri());
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package ucles.weblab.common.i18n.countries;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import ucles.weblab.common.i18n.countries.config.CountriesDataLoader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A local stand-in for REST Countries, serving the bundled countries data from an embedded HTTP server, with
+ * configurable latency, payload size and failures.
+ * <p>
+ * Responses carry an ETag, and a conditional request for data which has not changed gets {@code 304 Not Modified}.
+ * The data can be made to change on every request, to exercise updates downstream.
+ * </p>
+ *
+ * @since 18/10/26
+ */
+public class RestCountriesStub implements AutoCloseable {
+    private static final String PATH = "/rest/v1/all";
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    /**
+     * How a request fails.
+     */
+    public enum Failure {
+        /** Respond with {@code 503 Service Unavailable}. */
+        SERVER_ERROR,
+        /** Close the connection without responding. */
+        DISCONNECT,
+        /** Send only the first half of the data. */
+        TRUNCATED
+    }
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger generation = new AtomicInteger();
+    private volatile ArrayNode countries;
+    private volatile Duration latency = Duration.ZERO;
+    private volatile boolean changing;
+    private volatile Failure failure;
+    private volatile int failEvery;
+
+    public RestCountriesStub() {
+        try {
+            server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        setScale(1);
+        server.createContext(PATH, this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    public URI getUri() {
+        return URI.create("http://" + server.getAddress().getHostString() + ':' + server.getAddress().getPort() + PATH);
+    }
+
+    /**
+     * The number of requests received so far.
+     */
+    public int getRequests() {
+        return requests.get();
+    }
+
+    /**
+     * Delay every response by this long.
+     */
+    public void setLatency(Duration latency) {
+        this.latency = latency;
+    }
+
+    /**
+     * Serve this many copies of the bundled data, to make the payload larger.
+     */
+    public void setScale(int scale) {
+        final ArrayNode bundled = readBundled();
+        final ArrayNode scaled = objectMapper.createArrayNode();
+        for (int i = 0; i < scale; i++) {
+            scaled.addAll(bundled);
+        }
+        countries = scaled;
+    }
+
+    /**
+     * Change the data served on every request, rather than only when configured to.
+     */
+    public void setChanging(boolean changing) {
+        this.changing = changing;
+    }
+
+    /**
+     * Fail every {@code every}th request in the given way, or stop failing if {@code failure} is {@code null}.
+     */
+    public void setFailure(Failure failure, int every) {
+        this.failEvery = every;
+        this.failure = failure;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            final int request = requests.incrementAndGet();
+            if (!latency.isZero()) {
+                Thread.sleep(latency.toMillis());
+            }
+            final Failure failing = failure;
+            if (failing != null && request % failEvery == 0) {
+                fail(exchange, failing);
+                return;
+            }
+            final int current = changing ? generation.incrementAndGet() : generation.get();
+            final String entityTag = "\"" + current + '"';
+            exchange.getResponseHeaders().set("ETag", entityTag);
+            if (entityTag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                exchange.sendResponseHeaders(304, -1);
+                return;
+            }
+            final byte[] body = body(current);
+            exchange.getResponseHeaders().set("Content-Type", "application/json;charset=UTF-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (final OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void fail(HttpExchange exchange, Failure failing) throws IOException {
+        switch (failing) {
+            case SERVER_ERROR:
+                exchange.sendResponseHeaders(503, -1);
+                break;
+            case DISCONNECT:
+                // Closing the exchange before sending any headers drops the connection.
+                break;
+            case TRUNCATED:
+                final byte[] body = body(generation.get());
+                exchange.sendResponseHeaders(200, body.length / 2);
+                try (final OutputStream out = exchange.getResponseBody()) {
+                    out.write(body, 0, body.length / 2);
+                }
+                break;
+            default:
+                throw new IllegalStateException("Unknown failure " + failing);
+        }
+    }
+
+    /**
+     * The data for a generation, which from the first onwards has an extra country named after it, so that each
+     * generation differs.
+     */
+    private byte[] body(int generation) throws IOException {
+        ArrayNode data = countries;
+        if (generation > 0) {
+            data = data.deepCopy();
+            data.addObject()
+                    .put("name", "Generation " + generation)
+                    .put("alpha2Code", "XG")
+                    .put("alpha3Code", "XGN")
+                    .putArray("callingCodes").add("");
+        }
+        return objectMapper.writeValueAsBytes(data);
+    }
+
+    private static ArrayNode readBundled() {
+        try (final InputStream json = CountriesDataLoader.class.getResourceAsStream("restcountries.json")) {
+            return (ArrayNode) objectMapper.readTree(json);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,148 @@
+package ucles.weblab.common.i18n.countries.config;
+
+import org.junit.Test;
+import org.springframework.boot.actuate.health.Status;
+import ucles.weblab.common.i18n.countries.domain.CountriesRawRepository;
+import ucles.weblab.common.i18n.countries.domain.CountriesService;
+import ucles.weblab.common.i18n.countries.domain.CountryRepository;
+import ucles.weblab.common.i18n.countries.domain.GatedCountriesRawRepository;
+import ucles.weblab.common.i18n.countries.domain.mem.CountriesDualRepositoryMem;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @since 18/10/26
+ */
+public class CountriesDataLoaderTest {
+    private final CountriesService countriesService = mock(CountriesService.class);
+
+    @Test
+    public void testLazyLoadOnFirstRead() {
+        final CountriesDualRepositoryMem repository = new CountriesDualRepositoryMem();
+        final CountriesDataLoader loader = new CountriesDataLoader(() -> repository, () -> countriesService, Optional.empty());
+        final CountriesHealthIndicator health = new CountriesHealthIndicator(loader, CountriesDataLoader.Mode.LAZY);
+        final GatedCountriesRawRepository gated = new GatedCountriesRawRepository(repository, loader::awaitLoaded);
+        assertEquals(CountriesDataLoader.State.NOT_LOADED, loader.getState());
+        assertEquals(Status.UP, health.health().getStatus());
+
+        assertEquals("New Zealand", gated.findOneByAlpha2Code("NZ").get().getName());
+        assertEquals(CountriesDataLoader.State.LOADED, loader.getState());
+        gated.findOneByAlpha2Code("AU");
+        verify(countriesService, times(1)).refreshRepository();
+    }
+
+    @Test
+    public void testLazyLoadOnFirstReadAsCountryRepository() {
+        final CountriesDualRepositoryMem repository = new CountriesDualRepositoryMem();
+        final CountriesDataLoader loader = new CountriesDataLoader(() -> repository, () -> countriesService, Optional.empty());
+        final CountryRepository gated = new GatedCountriesRawRepository(repository, loader::awaitLoaded);
+
+        assertEquals("NZ", gated.findOneByName("New Zealand").get().getIso3166Alpha2Code());
+        assertEquals(CountriesDataLoader.State.LOADED, loader.getState());
+        assertFalse(gated.findAll().isEmpty());
+    }
+
+    @Test
+    public void testConcurrentReadsWaitForOneLoad() throws Exception {
+        final CountDownLatch loading = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountriesRawRepository repository = mock(CountriesRawRepository.class);
+        when(repository.findAllRaw()).thenReturn(Optional.empty());
+        when(repository.updateAll(any(InputStream.class))).then(invocation -> {
+            loading.countDown();
+            release.await();
+            return 1;
+        });
+        final CountriesDataLoader loader = new CountriesDataLoader(() -> repository, () -> countriesService, Optional.empty());
+        final CountriesHealthIndicator health = new CountriesHealthIndicator(loader, CountriesDataLoader.Mode.BACKGROUND);
+        final ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            loader.start(executor);
+            assertTrue("Expect loading to start", loading.await(10, TimeUnit.SECONDS));
+            assertEquals(CountriesDataLoader.State.LOADING, loader.getState());
+            assertEquals(Status.OUT_OF_SERVICE, health.health().getStatus());
+
+            final Future<?> first = executor.submit(loader::awaitLoaded);
+            final Future<?> second = executor.submit(loader::awaitLoaded);
+            release.countDown();
+            first.get(10, TimeUnit.SECONDS);
+            second.get(10, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+        verify(repository, times(1)).updateAll(any(InputStream.class));
+        assertEquals(Status.UP, health.health().getStatus());
+    }
+
+    @Test
+    public void testFailedLoad() throws IOException {
+        final CountriesRawRepository repository = mock(CountriesRawRepository.class);
+        when(repository.findAllRaw()).thenReturn(Optional.empty());
+        when(repository.updateAll(any(InputStream.class))).thenThrow(new IOException("Broken"));
+        final CountriesDataLoader loader = new CountriesDataLoader(() -> repository, () -> countriesService, Optional.empty());
+        try {
+            loader.awaitLoaded();
+            fail("Expect the load to fail");
+        } catch (IllegalStateException e) {
+            assertEquals("Broken", e.getCause().getCause().getMessage());
+        }
+        assertEquals(CountriesDataLoader.State.FAILED, loader.getState());
+        assertEquals(Status.DOWN, new CountriesHealthIndicator(loader, CountriesDataLoader.Mode.EAGER).health().getStatus());
+        verify(countriesService, times(0)).refreshRepository();
+    }
+
+    @Test
+    public void testExistingDataIsNotReplaced() {
+        final CountriesDualRepositoryMem repository = new CountriesDualRepositoryMem();
+        repository.updateAll("[{ \"name\": \"Bouvet Island\", \"alpha2Code\": \"BV\" }]");
+        final CountriesDataLoader[] loader = new CountriesDataLoader[1];
+        final GatedCountriesRawRepository gated = new GatedCountriesRawRepository(repository, () -> loader[0].awaitLoaded());
+        loader[0] = new CountriesDataLoader(() -> gated, () -> countriesService, Optional.empty());
+
+        assertEquals("Bouvet Island", gated.findOneByAlpha2Code("BV").get().getName());
+        assertFalse("Expect the bundled data not to be loaded", gated.findOneByAlpha2Code("NZ").isPresent());
+        verify(countriesService, times(1)).refreshRepository();
+    }
+
+    @Test
+    public void testWhenLoadedDoesNotWait() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountriesRawRepository repository = mock(CountriesRawRepository.class);
+        when(repository.findAllRaw()).thenReturn(Optional.empty());
+        when(repository.updateAll(any(InputStream.class))).then(invocation -> {
+            release.await();
+            return 1;
+        });
+        final CountriesDataLoader loader = new CountriesDataLoader(() -> repository, () -> countriesService, Optional.empty());
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final CompletableFuture<Void> loaded = loader.whenLoaded(executor);
+            assertFalse("Expect the future to be returned while loading", loaded.isDone());
+            assertFalse("Expect only one load to start", loader.whenLoaded(executor).isDone());
+            release.countDown();
+            loaded.get(10, TimeUnit.SECONDS);
+            assertTrue(loader.whenLoaded(executor).isDone());
+        } finally {
+            executor.shutdownNow();
+        }
+        verify(repository, times(1)).updateAll(any(InputStream.class));
+    }
+}
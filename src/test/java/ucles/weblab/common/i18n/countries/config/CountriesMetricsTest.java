@@ -0,0 +1,111 @@
+package ucles.weblab.common.i18n.countries.config;
+
+import org.junit.Test;
+import org.springframework.boot.actuate.metrics.CounterService;
+import org.springframework.boot.actuate.metrics.GaugeService;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.context.ApplicationEventPublisherAware;
+import ucles.weblab.common.i18n.countries.domain.CountriesRawRepository;
+import ucles.weblab.common.i18n.countries.domain.CountriesRefreshedEvent;
+import ucles.weblab.common.i18n.countries.domain.CountriesService;
+import ucles.weblab.common.i18n.countries.domain.CountriesUpdatedEvent;
+import ucles.weblab.common.i18n.countries.domain.CountryRepository;
+import ucles.weblab.common.i18n.countries.domain.mem.CountriesDualRepositoryMem;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Collection;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.Matchers.instanceOf;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.anyDouble;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @since 18/10/26
+ */
+public class CountriesMetricsTest {
+    private static final String COUNTRIES = "[{ \"name\": \"Bouvet Island\", \"alpha2Code\": \"BV\", \"callingCodes\": [\"\"] }]";
+
+    private final CounterService counterService = mock(CounterService.class);
+    private final GaugeService gaugeService = mock(GaugeService.class);
+
+    @Test
+    public void testRepositoryCallsAreMetered() {
+        final CountriesDualRepositoryMem target = new CountriesDualRepositoryMem();
+        target.updateAll(COUNTRIES);
+        final Object bean = new MeteredCountriesRepositories(() -> counterService, () -> gaugeService)
+                .postProcessAfterInitialization(target, "countriesRawRepository");
+        assertThat("Expect all interfaces to be kept", bean, instanceOf(ApplicationEventPublisherAware.class));
+        assertThat(bean, instanceOf(CountryRepository.class));
+        final CountriesRawRepository repository = (CountriesRawRepository) bean;
+
+        assertEquals("Bouvet Island", repository.findOneByAlpha2Code("BV").get().getName());
+        repository.findOneByAlpha2Code("ZZ");
+        repository.findByNameContaining("island", "en");
+        repository.toString();
+
+        verify(counterService).increment("countries.repository.findOneByAlpha2Code.hit");
+        verify(counterService).increment("countries.repository.findOneByAlpha2Code.miss");
+        verify(gaugeService).submit("histogram.countries.repository.findByNameContaining.size", 1);
+        verify(gaugeService, times(2)).submit(eq("timer.countries.repository.findOneByAlpha2Code"), anyDouble());
+        verify(gaugeService, never()).submit(eq("timer.countries.repository.toString"), anyDouble());
+    }
+
+    @Test
+    public void testRepositoryFailuresAreCounted() {
+        final CountriesRawRepository target = mock(CountriesRawRepository.class);
+        when(target.findAllRaw()).thenThrow(new IllegalStateException("Broken"));
+        final CountriesRawRepository repository = MeteredCountriesRepositories.metered(target, counterService, gaugeService);
+        try {
+            repository.findAllRaw();
+            fail("Expect the exception to be rethrown");
+        } catch (IllegalStateException e) {
+            assertEquals("Expect the original exception", "Broken", e.getMessage());
+        }
+        verify(counterService).increment("countries.repository.findAllRaw.failure");
+    }
+
+    @Test
+    public void testRefreshesAreMetered() {
+        final CountriesMetrics metrics = new CountriesMetrics(counterService, gaugeService);
+        final CountriesService source = mock(CountriesService.class);
+        metrics.onCountriesRefreshed(new CountriesRefreshedEvent(source, Duration.ofMillis(150), true, 2048L, 250, null));
+        metrics.onCountriesRefreshed(new CountriesRefreshedEvent(source, Duration.ofMillis(20), false, 0L, 0, null));
+        metrics.onCountriesRefreshed(new CountriesRefreshedEvent(source, Duration.ofMillis(30), false, 0L, 0, new IllegalStateException()));
+
+        verify(gaugeService).submit("timer.countries.refresh", 150);
+        verify(gaugeService).submit("histogram.countries.refresh.bytes", 2048);
+        verify(gaugeService).submit("histogram.countries.refresh.countries", 250);
+        verify(counterService).increment("countries.refresh.modified");
+        verify(counterService).increment("countries.refresh.not-modified");
+        verify(counterService).increment("countries.refresh.failure");
+    }
+
+    @Test
+    public void testDataVersionAndAge() {
+        final Instant now = Instant.parse("2026-10-18T05:00:00Z");
+        final CountriesMetrics metrics = new CountriesMetrics(counterService, gaugeService, Clock.fixed(now, ZoneOffset.UTC));
+        assertEquals(0L, values(metrics.metrics()).get("countries.data.version"));
+
+        metrics.onCountriesUpdated(new CountriesUpdatedEvent(mock(CountriesRawRepository.class), 3L));
+        final Map<String, Number> values = values(metrics.metrics());
+        assertEquals(3L, values.get("countries.data.version"));
+        assertEquals(0L, values.get("countries.data.age"));
+    }
+
+    private static Map<String, Number> values(Collection<Metric<?>> metrics) {
+        return metrics.stream().collect(Collectors.toMap(Metric::getName, Metric::getValue));
+    }
+}
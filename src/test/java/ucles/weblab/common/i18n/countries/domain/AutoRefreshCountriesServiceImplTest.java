@@ -0,0 +1,304 @@
+package ucles.weblab.common.i18n.countries.domain;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestTemplate;
+import ucles.weblab.common.i18n.countries.domain.file.CountriesFileStore;
+import ucles.weblab.common.i18n.countries.domain.file.FileCountriesRefreshLease;
+import ucles.weblab.common.i18n.countries.domain.mem.CountriesDualRepositoryMem;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.instanceOf;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.header;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.method;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withStatus;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
+
+/**
+ * @since 18/10/26
+ */
+public class AutoRefreshCountriesServiceImplTest {
+    private static final URI COUNTRIES_URI = URI.create("http://restcountries.test/rest/v1/all");
+    private static final String COUNTRIES = "[{ \"name\": \"Bouvet Island\", \"alpha2Code\": \"BV\", \"callingCodes\": [\"\"] }]";
+    private static final String ETAG = "\"v1\"";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final CountriesDualRepositoryMem countriesRawRepository = new CountriesDualRepositoryMem();
+    private RestTemplate restTemplate;
+    private MockRestServiceServer server;
+    private AutoRefreshCountriesServiceImpl countriesService;
+
+    @Before
+    public void setUp() {
+        restTemplate = new RestTemplate();
+        server = MockRestServiceServer.bindTo(restTemplate).build();
+        countriesService = new AutoRefreshCountriesServiceImpl(COUNTRIES_URI, countriesRawRepository, restTemplate);
+    }
+
+    @Test
+    public void testRefreshIsConditionalOnLastResponse() throws InterruptedException, ExecutionException {
+        final HttpHeaders headers = new HttpHeaders();
+        headers.setETag(ETAG);
+        headers.setLastModified(1500000000000L);
+        server.expect(requestTo(COUNTRIES_URI)).andExpect(method(HttpMethod.GET))
+                .andRespond(withSuccess(COUNTRIES, MediaType.APPLICATION_JSON).headers(headers));
+        server.expect(requestTo(COUNTRIES_URI)).andExpect(header(HttpHeaders.IF_NONE_MATCH, ETAG))
+                .andExpect(header(HttpHeaders.IF_MODIFIED_SINCE, headers.getFirst(HttpHeaders.LAST_MODIFIED)))
+                .andRespond(withStatus(HttpStatus.NOT_MODIFIED));
+
+        countriesService.refreshRepository().get();
+        final CountryEntity bouvet = countriesRawRepository.findOneByAlpha2Code("BV").get();
+        assertEquals("Bouvet Island", bouvet.getName());
+
+        final String result = countriesService.refreshRepository().get();
+        assertEquals("Expect the current data to be returned", countriesRawRepository.findAllRaw().get(), result);
+        assertSame("Expect the data not to be changed", bouvet, countriesRawRepository.findOneByAlpha2Code("BV").get());
+        server.verify();
+    }
+
+    private static CountriesFileStore mockFileStore() {
+        final CountriesFileStore fileStore = mock(CountriesFileStore.class);
+        when(fileStore.getLoadedValidators()).thenReturn(CountriesFileStore.Validators.NONE);
+        return fileStore;
+    }
+
+    @Test
+    public void testRefreshedDataIsStored() throws IOException, InterruptedException, ExecutionException {
+        final CountriesFileStore fileStore = mockFileStore();
+        countriesService = new AutoRefreshCountriesServiceImpl(COUNTRIES_URI, countriesRawRepository, restTemplate, Optional.of(fileStore));
+        final HttpHeaders headers = new HttpHeaders();
+        headers.setETag(ETAG);
+        server.expect(requestTo(COUNTRIES_URI)).andRespond(withSuccess(COUNTRIES, MediaType.APPLICATION_JSON).headers(headers));
+        server.expect(requestTo(COUNTRIES_URI)).andRespond(withStatus(HttpStatus.NOT_MODIFIED));
+
+        countriesService.refreshRepository().get();
+        final ArgumentCaptor<CountriesFileStore.Validators> validators = ArgumentCaptor.forClass(CountriesFileStore.Validators.class);
+        verify(fileStore).save(eq(countriesRawRepository.findAllParsed().get()), validators.capture());
+        assertEquals(ETAG, validators.getValue().getEntityTag());
+        countriesService.refreshRepository().get();
+        verify(fileStore).touch();
+        server.verify();
+    }
+
+    @Test
+    public void testRefreshDoesNotRenderRawData() throws IOException {
+        final CountriesDualRepositoryMem repository = spy(new CountriesDualRepositoryMem());
+        final CountriesFileStore fileStore = mockFileStore();
+        countriesService = new AutoRefreshCountriesServiceImpl(COUNTRIES_URI, repository, restTemplate, Optional.of(fileStore));
+        server.expect(requestTo(COUNTRIES_URI)).andRespond(withSuccess(COUNTRIES, MediaType.APPLICATION_JSON));
+
+        final Future<String> refresh = countriesService.refreshRepository();
+        assertTrue(refresh.isDone());
+        verify(fileStore).save(eq(repository.findAllParsed().get()), any(CountriesFileStore.Validators.class));
+        verify(repository, never()).findAllRaw();
+        server.verify();
+    }
+
+    @Test
+    public void testRefreshAfterRestartIsConditionalOnStoredData() throws IOException, InterruptedException, ExecutionException {
+        final Path directory = folder.getRoot().toPath();
+        final HttpHeaders headers = new HttpHeaders();
+        headers.setETag(ETAG);
+        server.expect(requestTo(COUNTRIES_URI)).andRespond(withSuccess(COUNTRIES, MediaType.APPLICATION_JSON).headers(headers));
+        new AutoRefreshCountriesServiceImpl(COUNTRIES_URI, countriesRawRepository, restTemplate,
+                Optional.of(new CountriesFileStore(directory, Duration.ofHours(24)))).refreshRepository().get();
+        server.verify();
+
+        final CountriesDualRepositoryMem restarted = new CountriesDualRepositoryMem();
+        final CountriesFileStore fileStore = new CountriesFileStore(directory, Duration.ofHours(24));
+        fileStore.load(restarted);
+        server = MockRestServiceServer.bindTo(restTemplate).build();
+        server.expect(requestTo(COUNTRIES_URI)).andExpect(header(HttpHeaders.IF_NONE_MATCH, ETAG))
+                .andRespond(withStatus(HttpStatus.NOT_MODIFIED));
+        new AutoRefreshCountriesServiceImpl(COUNTRIES_URI, restarted, restTemplate, Optional.of(fileStore)).refreshRepository().get();
+        assertEquals("Bouvet Island", restarted.findOneByAlpha2Code("BV").get().getName());
+        server.verify();
+    }
+
+    @Test
+    public void testRefreshOutcomesArePublished() throws InterruptedException, ExecutionException {
+        final ApplicationEventPublisher publisher = mock(ApplicationEventPublisher.class);
+        countriesService.setApplicationEventPublisher(publisher);
+        server.expect(requestTo(COUNTRIES_URI)).andRespond(withSuccess(COUNTRIES, MediaType.APPLICATION_JSON));
+        server.expect(requestTo(COUNTRIES_URI)).andRespond(withStatus(HttpStatus.NOT_MODIFIED));
+        server.expect(requestTo(COUNTRIES_URI)).andRespond(withStatus(HttpStatus.NO_CONTENT));
+
+        countriesService.refreshRepository().get();
+        countriesService.refreshRepository().get();
+        try {
+            countriesService.refreshRepository().get();
+            fail("Expect the refresh to fail");
+        } catch (ExecutionException expected) {
+            // Fall through
+        }
+        final ArgumentCaptor<CountriesRefreshedEvent> events = ArgumentCaptor.forClass(CountriesRefreshedEvent.class);
+        verify(publisher, times(3)).publishEvent(events.capture());
+        final CountriesRefreshedEvent modified = events.getAllValues().get(0);
+        assertEquals(true, modified.isModified());
+        assertEquals(COUNTRIES.length(), modified.getBytes());
+        assertEquals(1, modified.getCountries());
+        assertFalse(modified.getFailure().isPresent());
+        assertEquals(false, events.getAllValues().get(1).isModified());
+        assertThat(events.getAllValues().get(2).getFailure().get(), instanceOf(IllegalStateException.class));
+    }
+
+    @Test
+    public void testRefreshFinishesWhenPublishingFails() throws InterruptedException, ExecutionException {
+        final ApplicationEventPublisher publisher = mock(ApplicationEventPublisher.class);
+        doThrow(new IllegalStateException("Listener failed")).when(publisher).publishEvent(any(CountriesRefreshedEvent.class));
+        countriesService.setApplicationEventPublisher(publisher);
+        server.expect(requestTo(COUNTRIES_URI)).andRespond(withStatus(HttpStatus.NO_CONTENT));
+        server.expect(requestTo(COUNTRIES_URI)).andRespond(withSuccess(COUNTRIES, MediaType.APPLICATION_JSON));
+
+        final Future<String> failed = countriesService.refreshRepository();
+        assertTrue(failed.isDone());
+        try {
+            failed.get();
+            fail("Expect the refresh to fail");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), instanceOf(IllegalStateException.class));
+        }
+        // A later refresh must fetch again rather than join the failed one
+        countriesService.refreshRepository().get();
+        assertEquals("Bouvet Island", countriesRawRepository.findOneByAlpha2Code("BV").get().getName());
+        server.verify();
+    }
+
+    @Test
+    public void testRefreshFailsWithoutData() throws InterruptedException {
+        server.expect(requestTo(COUNTRIES_URI)).andRespond(withStatus(HttpStatus.NO_CONTENT));
+        try {
+            countriesService.refreshRepository().get();
+            fail("Expect the refresh to fail");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), instanceOf(IllegalStateException.class));
+        }
+    }
+
+    @Test
+    public void testServerErrorsAreRetried() throws InterruptedException, ExecutionException {
+        countriesService = new AutoRefreshCountriesServiceImpl(COUNTRIES_URI, countriesRawRepository, restTemplate, Optional.empty(),
+                Runnable::run, new AutoRefreshCountriesServiceImpl.Backoff(3, Duration.ofMillis(1), Duration.ofMillis(5)));
+        server.expect(requestTo(COUNTRIES_URI)).andRespond(withStatus(HttpStatus.SERVICE_UNAVAILABLE));
+        server.expect(requestTo(COUNTRIES_URI)).andRespond(withStatus(HttpStatus.BAD_GATEWAY));
+        server.expect(requestTo(COUNTRIES_URI)).andRespond(withSuccess(COUNTRIES, MediaType.APPLICATION_JSON));
+
+        countriesService.refreshRepository().get();
+        assertEquals("Bouvet Island", countriesRawRepository.findOneByAlpha2Code("BV").get().getName());
+        server.verify();
+    }
+
+    @Test
+    public void testClientErrorsAreNotRetried() throws InterruptedException {
+        countriesService = new AutoRefreshCountriesServiceImpl(COUNTRIES_URI, countriesRawRepository, restTemplate, Optional.empty(),
+                Runnable::run, new AutoRefreshCountriesServiceImpl.Backoff(3, Duration.ZERO, Duration.ZERO));
+        server.expect(requestTo(COUNTRIES_URI)).andRespond(withStatus(HttpStatus.NOT_FOUND));
+        try {
+            countriesService.refreshRepository().get();
+            fail("Expect the refresh to fail");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), instanceOf(HttpClientErrorException.class));
+        }
+        server.verify();
+    }
+
+    @Test
+    public void testConcurrentRefreshesAreCoalesced() throws InterruptedException, ExecutionException {
+        final List<Runnable> tasks = new ArrayList<>();
+        countriesService = new AutoRefreshCountriesServiceImpl(COUNTRIES_URI, countriesRawRepository, restTemplate, Optional.empty(),
+                tasks::add, AutoRefreshCountriesServiceImpl.Backoff.NONE);
+        server.expect(requestTo(COUNTRIES_URI)).andRespond(withSuccess(COUNTRIES, MediaType.APPLICATION_JSON));
+
+        final Future<String> first = countriesService.refreshRepository();
+        final Future<String> second = countriesService.refreshRepository();
+        assertSame("Expect the refreshes to be joined", first, second);
+        assertEquals(1, tasks.size());
+        tasks.get(0).run();
+        assertEquals(countriesRawRepository.findAllRaw().get(), second.get());
+        server.verify();
+
+        countriesService.refreshRepository();
+        assertEquals("Expect a new refresh once the last has finished", 2, tasks.size());
+    }
+
+    private AutoRefreshCountriesServiceImpl coordinatedService(String node, CountriesRawRepository repository, Executor executor) {
+        final Path directory = folder.getRoot().toPath();
+        return new AutoRefreshCountriesServiceImpl(COUNTRIES_URI, repository, restTemplate,
+                Optional.of(new CountriesFileStore(directory, Duration.ofHours(24))), executor, AutoRefreshCountriesServiceImpl.Backoff.NONE,
+                Optional.of(new AutoRefreshCountriesServiceImpl.Coordination(new FileCountriesRefreshLease(directory, node),
+                        Duration.ofSeconds(10), Duration.ofMillis(10))));
+    }
+
+    @Test
+    public void testCoordinatedRefreshFetchesOnce() throws InterruptedException, ExecutionException {
+        final CountriesDualRepositoryMem otherRepository = new CountriesDualRepositoryMem();
+        server.expect(requestTo(COUNTRIES_URI)).andRespond(withSuccess(COUNTRIES, MediaType.APPLICATION_JSON));
+
+        coordinatedService("node-1", countriesRawRepository, Runnable::run).refreshRepository().get();
+        final String result = coordinatedService("node-2", otherRepository, Runnable::run).refreshRepository().get();
+        assertEquals("Expect the other node to load the stored data", "Bouvet Island", otherRepository.findOneByAlpha2Code("BV").get().getName());
+        assertEquals(otherRepository.findAllRaw().get(), result);
+        server.verify();
+    }
+
+    @Test
+    public void testCoordinatedRefreshWaitsForLeaseHolder() throws Exception {
+        final FileCountriesRefreshLease holder = new FileCountriesRefreshLease(folder.getRoot().toPath(), "node-1");
+        assertTrue(holder.tryAcquire(Duration.ofSeconds(10)));
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final Future<String> refresh = coordinatedService("node-2", countriesRawRepository, executor).refreshRepository();
+            Thread.sleep(50);
+            assertFalse("Expect the refresh to wait", refresh.isDone());
+
+            new CountriesFileStore(folder.getRoot().toPath(), Duration.ofHours(24)).save(COUNTRIES);
+            holder.release();
+            refresh.get(10, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals("Bouvet Island", countriesRawRepository.findOneByAlpha2Code("BV").get().getName());
+        server.verify();
+    }
+}
@@ -0,0 +1,71 @@
+package ucles.weblab.common.i18n.countries.domain;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Collections.singletonList;
+import static java.util.stream.Collectors.toList;
+import static org.hamcrest.Matchers.contains;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @since 18/10/26
+ */
+public class CountriesDiffTest {
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private static List<Map<String, Object>> countries(String json) throws IOException {
+        return objectMapper.readValue(json.replace('\'', '"'), new TypeReference<List<Map<String, Object>>>() { });
+    }
+
+    @Test
+    public void testChangedFields() throws IOException {
+        final CountriesDiff diff = CountriesDiff.between(
+                countries("[{ 'name': 'Australia', 'alpha2Code': 'AU', 'population': 1, 'translations': { 'de': 'Australien' } }," +
+                        " { 'name': 'New Zealand', 'alpha2Code': 'NZ', 'population': 2 }]"),
+                countries("[{ 'name': 'Australia', 'alpha2Code': 'AU', 'population': 1, 'translations': { 'de': 'Australien!' } }," +
+                        " { 'name': 'New Zealand', 'alpha2Code': 'NZ', 'population': 3, 'area': 4 }]"));
+
+        assertTrue(diff.isSameCountries());
+        assertEquals(Arrays.asList("AU", "NZ"), diff.getChanges().stream().map(CountriesDiff.Change::getCountryCode).collect(toList()));
+        assertThat(diff.getChanges().get(0).getFields(), contains("translations"));
+        assertThat(diff.getChanges().get(1).getFields(), contains("area", "population"));
+        assertEquals(Arrays.asList(0, 1), diff.getChangedOrdinals());
+        assertTrue(diff.isUnchanged(singletonList("name")));
+        assertFalse(diff.isUnchanged(Arrays.asList("name", "population")));
+    }
+
+    @Test
+    public void testAddedAndRemovedCountries() throws IOException {
+        final CountriesDiff diff = CountriesDiff.between(
+                countries("[{ 'name': 'Australia', 'alpha2Code': 'AU' }, { 'name': 'Atlantis' }]"),
+                countries("[{ 'name': 'Australia', 'alpha2Code': 'AU' }, { 'name': 'Niue', 'alpha2Code': 'NU' }]"));
+
+        assertFalse(diff.isSameCountries());
+        assertFalse(diff.isUnchanged(singletonList("name")));
+        assertEquals(Arrays.asList(CountryChangedEvent.Type.ADDED, CountryChangedEvent.Type.REMOVED),
+                diff.getChanges().stream().map(CountriesDiff.Change::getType).collect(toList()));
+        assertEquals("NU", diff.getChanges().get(0).getCountryCode());
+        assertEquals(null, diff.getChanges().get(1).getCountryCode());
+        assertThat(diff.getChanges().get(1).getFields(), contains("name"));
+    }
+
+    @Test
+    public void testReorderedCountries() throws IOException {
+        final CountriesDiff diff = CountriesDiff.between(
+                countries("[{ 'name': 'Australia', 'alpha2Code': 'AU' }, { 'name': 'Niue', 'alpha2Code': 'NU' }]"),
+                countries("[{ 'name': 'Niue', 'alpha2Code': 'NU' }, { 'name': 'Australia', 'alpha2Code': 'AU' }]"));
+
+        assertTrue("Expect no changes", diff.getChanges().isEmpty());
+        assertFalse("Expect ordinals to have changed", diff.isSameCountries());
+    }
+}
@@ -0,0 +1,136 @@
+package ucles.weblab.common.i18n.countries.domain;
+
+import org.junit.Before;
+import org.junit.Test;
+import ucles.weblab.common.i18n.countries.domain.mem.CountriesDualRepositoryMem;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.Assert.assertEquals;
+import static java.util.stream.Collectors.toList;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the default implementations of the repository methods, which scan the raw data.
+ *
+ * @since 18/10/26
+ */
+public class CountriesRawRepositoryTest {
+    private final CountriesDualRepositoryMem indexed = new CountriesDualRepositoryMem();
+    private final CountriesRawRepository repository = new UnindexedRepository(indexed);
+
+    @Before
+    public void setUp() throws IOException {
+        try (final InputStream resource = getClass().getResourceAsStream("mem/countries-subset.json")) {
+            indexed.updateAll(resource);
+        }
+    }
+
+    @Test
+    public void testFindOneByAlpha3Code() {
+        assertEquals("New Zealand", repository.findOneByAlpha3Code("NZL").get().getName());
+        assertEquals("Australien", repository.findOneByAlpha3Code("AUS", "de").get().getName());
+        assertFalse(repository.findOneByAlpha3Code("GBR").isPresent());
+    }
+
+    @Test
+    public void testFindOneByAlpha3CodeWithoutData() {
+        assertFalse(new UnindexedRepository(new CountriesDualRepositoryMem()).findOneByAlpha3Code("NZL").isPresent());
+    }
+
+    @Test
+    public void testUpdateAllFromStream() throws IOException {
+        final CountriesRawRepository empty = new UnindexedRepository(new CountriesDualRepositoryMem());
+        try (final InputStream resource = getClass().getResourceAsStream("mem/countries-subset.json")) {
+            assertEquals(5, empty.updateAll(resource));
+        }
+        assertEquals("Australien", empty.findOneByAlpha2Code("AU", "de").get().getName());
+    }
+
+    @Test
+    public void testFindAllByAlpha2Codes() {
+        final Map<String, ? extends CountryEntity> countries = repository.findAllByAlpha2Codes(Arrays.asList("NZ", "GB", "AU", "NZ"), "de");
+        assertEquals(Arrays.asList("NZ", "AU"), new ArrayList<>(countries.keySet()));
+        assertEquals(Arrays.asList("Neuseeland", "Australien"), names(new ArrayList<>(countries.values())));
+    }
+
+    @Test
+    public void testFindByAttribute() {
+        assertEquals(names(indexed.findByRegion("oceania", "de")), names(repository.findByRegion("oceania", "de")));
+        assertFalse(repository.findByRegion("Oceania", null).isEmpty());
+        assertEquals(names(indexed.findByCurrency("AUD", "xx")), names(repository.findByCurrency("AUD", "xx")));
+        assertTrue(repository.findByTimezone("UTC+99:00", null).isEmpty());
+    }
+
+    @Test
+    public void testFindByAnyNameContaining() {
+        assertEquals(names(indexed.findByAnyNameContaining("territory", "de")), names(repository.findByAnyNameContaining("territory", "de")));
+        assertEquals(names(indexed.findByAnyNameContaining(" AUSTRALIEN ", null)), names(repository.findByAnyNameContaining(" AUSTRALIEN ", null)));
+        assertFalse(repository.findByAnyNameContaining("Australien", null).isEmpty());
+        assertTrue(repository.findByAnyNameContaining("Atlantis", null).isEmpty());
+    }
+
+    @Test
+    public void testFindByNameStartingWith() {
+        assertEquals(names(indexed.findByNameStartingWith("n", null, 10)), names(repository.findByNameStartingWith("n", null, 10)));
+        assertEquals(names(indexed.findByNameStartingWith("norfolk island", "en", 10)), names(repository.findByNameStartingWith("norfolk island", "en", 10)));
+        assertEquals(names(indexed.findByNameStartingWith("ile", "fr", 10)), names(repository.findByNameStartingWith("ile", "fr", 10)));
+        assertEquals(names(indexed.findByNameStartingWith("Aus", "biscuit", 10)), names(repository.findByNameStartingWith("Aus", "biscuit", 10)));
+        assertFalse(repository.findByNameStartingWith("ile", "fr", 10).isEmpty());
+        assertEquals(1, repository.findByNameStartingWith("N", null, 1).size());
+        assertTrue(repository.findByNameStartingWith("Zealand", null, 10).isEmpty());
+        assertTrue(repository.findByNameStartingWith("N", null, 0).isEmpty());
+    }
+
+    private static List<String> names(List<? extends CountryEntity> countries) {
+        return countries.stream().map(CountryEntity::getName).collect(toList());
+    }
+
+    /**
+     * A repository which only implements the methods it must, by delegating them.
+     */
+    private static class UnindexedRepository implements CountriesRawRepository {
+        private final CountriesRawRepository delegate;
+
+        UnindexedRepository(CountriesRawRepository delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Optional<String> findAllRaw() {
+            return delegate.findAllRaw();
+        }
+
+        @Override
+        public void updateAll(String rawData) {
+            delegate.updateAll(rawData);
+        }
+
+        @Override
+        public Optional<? extends CountryEntity> findOneByAlpha2Code(String countryCode) {
+            return delegate.findOneByAlpha2Code(countryCode);
+        }
+
+        @Override
+        public Optional<? extends CountryEntity> findOneByAlpha2Code(String countryCode, String languageCode) {
+            return delegate.findOneByAlpha2Code(countryCode, languageCode);
+        }
+
+        @Override
+        public List<? extends CountryEntity> findByNameContaining(String countrySearchString, String languageCode) {
+            return delegate.findByNameContaining(countrySearchString, languageCode);
+        }
+
+        @Override
+        public Optional<String> getCodeByNameAndLocale(String countryName, String languageCode) {
+            return delegate.getCodeByNameAndLocale(countryName, languageCode);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package ucles.weblab.common.i18n.countries.domain.file;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ucles.weblab.common.i18n.countries.domain.mem.CountriesDualRepositoryMem;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Optional;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @since 18/10/26
+ */
+public class CountriesFileStoreTest {
+    private static final String COUNTRIES = "[{ \"name\": \"Bouvet Island\", \"alpha2Code\": \"BV\", \"callingCodes\": [\"\"]," +
+            " \"translations\": { \"de\": \"Bouvetinsel\" } }]";
+    private static final String BUNDLED_JSON = "/ucles/weblab/common/i18n/countries/config/restcountries.json";
+    private static final Instant NOW = Instant.parse("2026-10-18T05:00:00Z");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private CountriesFileStore fileStore(Path directory, Instant now) {
+        return new CountriesFileStore(directory, Duration.ofHours(24), Clock.fixed(now, ZoneOffset.UTC));
+    }
+
+    @Test
+    public void testSaveAndLoad() throws IOException {
+        final Path directory = folder.getRoot().toPath().resolve("countries");
+        fileStore(directory, NOW).save(COUNTRIES);
+        final byte[] stored = Files.readAllBytes(directory.resolve(CountriesFileStore.FILE_NAME));
+        assertArrayEquals("Expect Smile format", new byte[] { ':', ')', '\n' }, new byte[] { stored[0], stored[1], stored[2] });
+
+        final CountriesDualRepositoryMem repository = new CountriesDualRepositoryMem();
+        assertEquals(Optional.of(NOW), fileStore(directory, NOW).load(repository));
+        assertEquals("Bouvetinsel", repository.findOneByAlpha2Code("BV", "de").get().getName());
+        assertTrue("Expect no temporary files left", Files.list(directory).allMatch(path -> path.endsWith(CountriesFileStore.FILE_NAME)));
+    }
+
+    @Test
+    public void testSaveParsed() throws IOException {
+        final CountriesDualRepositoryMem source = new CountriesDualRepositoryMem();
+        source.updateAll(COUNTRIES);
+        fileStore(folder.getRoot().toPath(), NOW).save(source.findAllParsed().get());
+
+        final CountriesDualRepositoryMem repository = new CountriesDualRepositoryMem();
+        fileStore(folder.getRoot().toPath(), NOW).load(repository);
+        assertEquals("Bouvetinsel", repository.findOneByAlpha2Code("BV", "de").get().getName());
+    }
+
+    @Test
+    public void testSaveAndLoadValidators() throws IOException {
+        final CountriesDualRepositoryMem source = new CountriesDualRepositoryMem();
+        source.updateAll(COUNTRIES);
+        final Path directory = folder.getRoot().toPath();
+        fileStore(directory, NOW).save(source.findAllParsed().get(), new CountriesFileStore.Validators("\"v1\"", 1000L));
+
+        final CountriesFileStore store = fileStore(directory, NOW);
+        assertSame(CountriesFileStore.Validators.NONE, store.getLoadedValidators());
+        store.load(new CountriesDualRepositoryMem());
+        assertEquals("\"v1\"", store.getLoadedValidators().getEntityTag());
+        assertEquals(1000L, store.getLoadedValidators().getLastModified());
+
+        fileStore(directory, NOW).save(COUNTRIES);
+        store.load(new CountriesDualRepositoryMem());
+        assertSame("Expect validators to be replaced with the data", CountriesFileStore.Validators.NONE, store.getLoadedValidators());
+        assertTrue("Expect no validators file left", Files.list(directory).allMatch(path -> path.endsWith(CountriesFileStore.FILE_NAME)));
+    }
+
+    @Test
+    public void testCompiledDataMatchesJson() throws IOException, URISyntaxException {
+        final Path source = Paths.get(getClass().getResource(BUNDLED_JSON).toURI());
+        final Path target = folder.getRoot().toPath().resolve("compiled/restcountries.sml");
+        CountriesDataCompiler.compile(source, target);
+
+        final CountriesDualRepositoryMem fromJson = new CountriesDualRepositoryMem();
+        final CountriesDualRepositoryMem fromSmile = new CountriesDualRepositoryMem();
+        try (final InputStream json = Files.newInputStream(source); final InputStream smile = Files.newInputStream(target)) {
+            assertEquals(fromJson.updateAll(json), fromSmile.updateAll(smile));
+        }
+        assertTrue("Expect a smaller file", Files.size(target) < Files.size(source));
+        assertEquals(fromJson.findAll(), fromSmile.findAll());
+        assertEquals(fromJson.findOneByAlpha2Code("NZ", "ja"), fromSmile.findOneByAlpha2Code("NZ", "ja"));
+    }
+
+    @Test
+    public void testLoadWithoutStoredData() throws IOException {
+        final CountriesDualRepositoryMem repository = new CountriesDualRepositoryMem();
+        assertFalse(fileStore(folder.getRoot().toPath(), NOW).load(repository).isPresent());
+        assertFalse(repository.findAllRaw().isPresent());
+    }
+
+    @Test
+    public void testFreshnessAndTouch() throws IOException {
+        final Path directory = folder.getRoot().toPath();
+        fileStore(directory, NOW).save(COUNTRIES);
+        final Instant later = NOW.plus(Duration.ofHours(25));
+        assertTrue(fileStore(directory, NOW.plus(Duration.ofHours(24))).isFresh(NOW));
+        assertFalse(fileStore(directory, later).isFresh(NOW));
+
+        fileStore(directory, later).touch();
+        assertEquals(Optional.of(later), fileStore(directory, later).load(new CountriesDualRepositoryMem()));
+    }
+}
@@ -0,0 +1,55 @@
+package ucles.weblab.common.i18n.countries.domain.file;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @since 18/10/26
+ */
+public class FileCountriesRefreshLeaseTest {
+    private static final Instant NOW = Instant.parse("2026-10-18T05:00:00Z");
+    private static final Duration LEASE = Duration.ofMinutes(5);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private FileCountriesRefreshLease lease(String owner, Instant now) {
+        return new FileCountriesRefreshLease(folder.getRoot().toPath(), owner, Clock.fixed(now, ZoneOffset.UTC));
+    }
+
+    @Test
+    public void testOneNodeHoldsLease() throws Exception {
+        assertTrue(lease("node-1", NOW).tryAcquire(LEASE));
+        assertFalse(lease("node-2", NOW).tryAcquire(LEASE));
+        assertTrue("Expect the holder to extend its lease", lease("node-1", NOW.plusSeconds(60)).tryAcquire(LEASE));
+        assertFalse(lease("node-2", NOW.plus(LEASE)).tryAcquire(LEASE));
+
+        lease("node-2", NOW).release();
+        assertFalse("Expect only the holder to release the lease", lease("node-2", NOW).tryAcquire(LEASE));
+        lease("node-1", NOW).release();
+        assertTrue(lease("node-2", NOW).tryAcquire(LEASE));
+        assertTrue("Expect no temporary files left", Files.list(folder.getRoot().toPath())
+                .allMatch(path -> path.endsWith(FileCountriesRefreshLease.FILE_NAME)));
+    }
+
+    @Test
+    public void testExpiredOrUnreadableLeaseIsTakenOver() throws Exception {
+        assertTrue(lease("node-1", NOW).tryAcquire(LEASE));
+        assertTrue(lease("node-2", NOW.plus(LEASE).plusMillis(1)).tryAcquire(LEASE));
+
+        final Path file = folder.getRoot().toPath().resolve(FileCountriesRefreshLease.FILE_NAME);
+        Files.write(file, new byte[0]);
+        assertTrue(lease("node-1", NOW).tryAcquire(LEASE));
+    }
+}
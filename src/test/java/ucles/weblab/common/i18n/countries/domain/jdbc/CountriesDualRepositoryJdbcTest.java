@@ -0,0 +1,213 @@
+package ucles.weblab.common.i18n.countries.domain.jdbc;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import ucles.weblab.common.i18n.countries.domain.CountriesUpdatedEvent;
+import ucles.weblab.common.i18n.countries.domain.CountryChangedEvent;
+import ucles.weblab.common.i18n.countries.domain.CountryEntity;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.stream.Collectors.toList;
+import static org.hamcrest.Matchers.contains;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.isA;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * @since 18/10/26
+ */
+public class CountriesDualRepositoryJdbcTest {
+    private static final String COUNTRIES_SUBSET_JSON = "/ucles/weblab/common/i18n/countries/domain/mem/countries-subset.json";
+    private static final Instant NOW = Instant.parse("2026-10-18T05:00:00Z");
+    private static final Duration VERSION_CHECK = Duration.ofSeconds(1);
+
+    private final EmbeddedDatabase database = new EmbeddedDatabaseBuilder()
+            .setType(EmbeddedDatabaseType.H2)
+            .generateUniqueName(true)
+            .addScript("classpath:ucles/weblab/common/i18n/countries/domain/jdbc/schema-countries.sql")
+            .build();
+    private Instant now = NOW;
+    private final CountriesDualRepositoryJdbc repository = repository(new Clock() {
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    });
+
+    @Before
+    public void setUp() throws IOException {
+        try (final InputStream resource = getClass().getResourceAsStream(COUNTRIES_SUBSET_JSON)) {
+            repository.updateAll(resource);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        database.shutdown();
+    }
+
+    private CountriesDualRepositoryJdbc repository(Clock clock) {
+        return new CountriesDualRepositoryJdbc(database, 100, VERSION_CHECK, clock);
+    }
+
+    @Test
+    public void testFindByCode() {
+        final CountryEntity newZealand = repository.findOneByAlpha2Code("NZ").get();
+        assertEquals("New Zealand", newZealand.getName());
+        assertEquals("NZL", newZealand.getIso3166Alpha3Code());
+        assertEquals((Long) 4547900L, newZealand.getPopulation().get());
+        assertEquals(Arrays.asList("64"), newZealand.getCallingCodes());
+        assertEquals("Australien", repository.findOneByAlpha3Code("AUS", "de").get().getName());
+        assertNull("Expect no name in an unknown language", repository.findOneByAlpha2Code("NZ", "xx").get().getName());
+        assertFalse("Expect codes to be upper case", repository.findOneByAlpha3Code("nzl").isPresent());
+        assertFalse(repository.findOneByAlpha2Code("NZL").isPresent());
+        assertThat(names(repository.findAll()), contains("Australia", "Christmas Island", "Cocos (Keeling) Islands", "New Zealand", "Norfolk Island"));
+        assertEquals(newZealand, repository.findOneByName("New Zealand").get());
+
+        final Map<String, ? extends CountryEntity> byCodes = repository.findAllByAlpha2Codes(Arrays.asList("NZ", "XX", "AU", "NZ"), "de");
+        assertThat("Expect found countries in order given", byCodes.keySet(), contains("NZ", "AU"));
+        assertEquals("Neuseeland", byCodes.get("NZ").getName());
+    }
+
+    @Test
+    public void testFindByName() {
+        assertThat(names(repository.findByNameContaining("isl", "en")), contains("Christmas Island", "Cocos (Keeling) Islands", "Norfolk Island"));
+        assertThat(names(repository.findByNameContaining("NUEva", "es")), contains("Nueva Zelanda"));
+        assertThat(names(repository.findByNameContaining("Zeal", "ja")), contains("ニュージーランド"));
+        assertTrue("Expect wildcards to be literal", repository.findByNameContaining("%", null).isEmpty());
+        assertTrue(repository.findByNameContaining("NUEva", "ja").isEmpty());
+
+        assertThat(names(repository.findByAnyNameContaining("Weihnachts", null)), contains("Christmas Island"));
+        assertThat(names(repository.findByAnyNameContaining("Aotearoa", "de")), contains("Neuseeland"));
+
+        assertThat("Expect ordered by population", names(repository.findByNameStartingWith("n", null, 10)), contains("New Zealand", "Norfolk Island"));
+        assertThat("Expect exact match first", names(repository.findByNameStartingWith("norfolk island", "en", 10)), contains("Norfolk Island"));
+        assertThat("Expect limit applied", names(repository.findByNameStartingWith("N", null, 1)), contains("New Zealand"));
+        assertThat("Expect accents ignored", names(repository.findByNameStartingWith("ile", "fr", 10)),
+                contains("Île de Norfolk", "Île Christmas", "Îles Cocos"));
+        assertThat("Expect English for unknown language", names(repository.findByNameStartingWith("Aus", "biscuit", 10)), contains("Australia"));
+
+        assertEquals("AU", repository.getCodeByNameAndLocale("Australia", null).get());
+        assertEquals("AU", repository.getCodeByNameAndLocale("Australien", "de").get());
+        assertFalse(repository.getCodeByNameAndLocale("Australien", "pp").isPresent());
+    }
+
+    @Test
+    public void testFindByAttribute() {
+        assertThat(names(repository.findByCurrency("aud", null)), contains("Australia", "Christmas Island", "Cocos (Keeling) Islands", "Norfolk Island"));
+        assertThat(names(repository.findBySpokenLanguage("MI", "de")), contains("Neuseeland"));
+        assertEquals(5, repository.findByRegion("Oceania", null).size());
+        assertTrue(repository.findByRegion("Europe", null).isEmpty());
+
+        repository.updateAll(repository.findAllRaw().get().replace("\"NZD\"", "\"AUD\""));
+        assertEquals("Expect changed country replaced", 5, repository.findByCurrency("AUD", null).size());
+        assertTrue(repository.findByCurrency("NZD", null).isEmpty());
+    }
+
+    @Test
+    public void testUpdates() throws IOException {
+        final ApplicationEventPublisher eventPublisher = mock(ApplicationEventPublisher.class);
+        repository.setApplicationEventPublisher(eventPublisher);
+        final String rawData = repository.findAllRaw().get();
+        repository.updateAll(rawData);
+        try (final InputStream resource = getClass().getResourceAsStream(COUNTRIES_SUBSET_JSON)) {
+            repository.updateAll(resource);
+        }
+        verify(eventPublisher, times(0)).publishEvent(isA(CountriesUpdatedEvent.class));
+
+        for (String invalid : Arrays.asList("{}", "[{ \"name\": \"Bouvet Island\" }, 1]", "[] []")) {
+            try {
+                repository.updateAll(new ByteArrayInputStream(invalid.getBytes(StandardCharsets.UTF_8)));
+                fail("Expect an exception for " + invalid);
+            } catch (IOException e) {
+                assertTrue("Expect old data to be kept", repository.findOneByAlpha2Code("AU").isPresent());
+            }
+        }
+
+        repository.updateAll("[{ \"name\": \"Bouvet Island\", \"alpha2Code\": \"BV\", \"callingCodes\": [\"\"]," +
+                " \"translations\": { \"de\": \"Bouvetinsel\" } }]");
+        verify(eventPublisher, times(1)).publishEvent(isA(CountriesUpdatedEvent.class));
+        assertFalse("Expect old data to be gone", repository.findOneByAlpha2Code("AU").isPresent());
+        assertEquals("Bouvetinsel", repository.findOneByAlpha2Code("BV", "de").get().getName());
+        assertTrue(repository.findOneByAlpha2Code("BV").get().getCallingCodes().isEmpty());
+
+        repository.updateAll("not countries");
+        assertEquals("not countries", repository.findAllRaw().get());
+        assertTrue(repository.findAll().isEmpty());
+    }
+
+    @Test
+    public void testOnlyChangedCountriesAreReplaced() {
+        final ApplicationEventPublisher eventPublisher = mock(ApplicationEventPublisher.class);
+        repository.setApplicationEventPublisher(eventPublisher);
+        repository.updateAll(repository.findAllRaw().get().replace("\"Neuseeland\"", "\"Aotearoa Neuseeland\""));
+
+        assertEquals("Aotearoa Neuseeland", repository.findOneByAlpha2Code("NZ", "de").get().getName());
+        assertEquals(Arrays.asList("64"), repository.findOneByAlpha2Code("NZ").get().getCallingCodes());
+        assertThat(names(repository.findByNameContaining("Aotearoa", "de")), contains("Aotearoa Neuseeland"));
+        assertEquals(5, repository.findAll().size());
+        final ArgumentCaptor<ApplicationEvent> events = ArgumentCaptor.forClass(ApplicationEvent.class);
+        verify(eventPublisher, times(2)).publishEvent(events.capture());
+        final CountryChangedEvent changed = (CountryChangedEvent) events.getAllValues().get(0);
+        assertEquals(CountryChangedEvent.Type.CHANGED, changed.getType());
+        assertEquals("NZ", changed.getCountryCode());
+        assertThat(changed.getFields(), contains("translations"));
+    }
+
+    @Test
+    public void testUpdatesByOtherNodesAreSeenAfterVersionCheck() {
+        final CountryEntity australia = repository.findOneByAlpha2Code("AU").get();
+        assertSame("Expect reads to be cached", australia, repository.findOneByAlpha2Code("AU").get());
+        final ApplicationEventPublisher eventPublisher = mock(ApplicationEventPublisher.class);
+        repository.setApplicationEventPublisher(eventPublisher);
+
+        repository(Clock.systemUTC()).updateAll("[{ \"name\": \"Bouvet Island\", \"alpha2Code\": \"BV\" }]");
+        assertSame("Expect cached reads until the version is checked", australia, repository.findOneByAlpha2Code("AU").get());
+
+        now = NOW.plus(VERSION_CHECK);
+        assertFalse(repository.findOneByAlpha2Code("AU").isPresent());
+        assertEquals("Bouvet Island", repository.findOneByAlpha2Code("BV").get().getName());
+        verify(eventPublisher, times(1)).publishEvent(isA(CountriesUpdatedEvent.class));
+    }
+
+    private static List<String> names(List<? extends CountryEntity> countries) {
+        return countries.stream().map(CountryEntity::getName).collect(toList());
+    }
+}
@@ -0,0 +1,58 @@
+package ucles.weblab.common.i18n.countries.domain.jdbc;
+
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @since 18/10/26
+ */
+public class JdbcCountriesRefreshLeaseTest {
+    private static final Instant NOW = Instant.parse("2026-10-18T05:00:00Z");
+    private static final Duration LEASE = Duration.ofMinutes(5);
+
+    private final EmbeddedDatabase database = new EmbeddedDatabaseBuilder()
+            .setType(EmbeddedDatabaseType.H2)
+            .generateUniqueName(true)
+            .addScript("classpath:ucles/weblab/common/i18n/countries/domain/jdbc/schema-countries-lease.sql")
+            .build();
+
+    @After
+    public void tearDown() {
+        database.shutdown();
+    }
+
+    private JdbcCountriesRefreshLease lease(String owner, Instant now) {
+        return new JdbcCountriesRefreshLease(database, owner, Clock.fixed(now, ZoneOffset.UTC));
+    }
+
+    @Test
+    public void testOneNodeHoldsLease() {
+        assertTrue(lease("node-1", NOW).tryAcquire(LEASE));
+        assertFalse(lease("node-2", NOW).tryAcquire(LEASE));
+        assertTrue("Expect the holder to extend its lease", lease("node-1", NOW.plusSeconds(60)).tryAcquire(LEASE));
+        assertFalse(lease("node-2", NOW.plus(LEASE)).tryAcquire(LEASE));
+
+        lease("node-2", NOW).release();
+        assertFalse("Expect only the holder to release the lease", lease("node-2", NOW).tryAcquire(LEASE));
+        lease("node-1", NOW).release();
+        assertTrue(lease("node-2", NOW).tryAcquire(LEASE));
+    }
+
+    @Test
+    public void testExpiredLeaseIsTakenOver() {
+        assertTrue(lease("node-1", NOW).tryAcquire(LEASE));
+        assertTrue(lease("node-2", NOW.plus(LEASE).plusMillis(1)).tryAcquire(LEASE));
+        assertFalse(lease("node-1", NOW.plus(LEASE).plusMillis(2)).tryAcquire(LEASE));
+    }
+}
@@ -1,36 +1,52 @@
 package ucles.weblab.common.i18n.countries.domain.mem;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
 import org.hamcrest.BaseMatcher;
 import org.hamcrest.Description;
 import org.hamcrest.Matcher;
 import org.junit.Test;
-import ucles.weblab.common.i18n.countries.domain.CountriesBuilders;
+import org.mockito.ArgumentCaptor;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import ucles.weblab.common.i18n.countries.domain.CountriesUpdatedEvent;
+import ucles.weblab.common.i18n.countries.domain.CountryChangedEvent;
 import ucles.weblab.common.i18n.countries.domain.CountryEntity;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Scanner;
+import java.util.regex.Pattern;
 
+import static java.util.stream.Collectors.toList;
 import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.equalTo;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.junit.Assume.assumeNoException;
+import static org.mockito.Matchers.isA;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 
 /**
  * @since 18/05/15
  */
 public class CountriesDualRepositoryMemTest {
     private static final String COUNTRIES_SUBSET_JSON = "countries-subset.json";
-    private CountriesDualRepositoryMem countriesDualRepository = new CountriesDualRepositoryMem(new CountriesBuilders().countryEntityBuilder());
+    private CountriesDualRepositoryMem countriesDualRepository = new CountriesDualRepositoryMem();
 
     @Test
     public void testRepository() {
@@ -70,6 +86,137 @@ public class CountriesDualRepositoryMemTest {
         assertEquals("AU", result.get().getIso3166Alpha2Code());        
     }
 
+    @Test
+    public void findOneBy3LetterCode() throws Exception {
+        loadCountries();
+        Optional<? extends CountryEntity> result = countriesDualRepository.findOneByAlpha3Code("NZL");
+        assertTrue("Expect a result", result.isPresent());
+        assertEquals("New Zealand", result.get().getName());
+        assertEquals("NZ", result.get().getIso3166Alpha2Code());
+        assertEquals("NZL", result.get().getIso3166Alpha3Code());
+        assertEquals("Australien", countriesDualRepository.findOneByAlpha3Code("AUS", "de").get().getName());
+        assertFalse("Expect codes to be upper case", countriesDualRepository.findOneByAlpha3Code("nzl").isPresent());
+        assertFalse("Expect no result for a 2 letter code", countriesDualRepository.findOneByAlpha3Code("NZ").isPresent());
+        assertFalse("Expect no result for a 3 letter code", countriesDualRepository.findOneByAlpha2Code("NZL").isPresent());
+        assertFalse("Expect no result for other characters", countriesDualRepository.findOneByAlpha2Code("N!").isPresent());
+    }
+
+    @Test
+    public void testCountriesAreShared() {
+        loadCountries();
+        assertSame(countriesDualRepository.findOneByAlpha2Code("NZ").get(), countriesDualRepository.findOneByAlpha2Code("NZ").get());
+        assertSame(countriesDualRepository.findOneByAlpha2Code("NZ").get(), countriesDualRepository.findOneByAlpha3Code("NZL", "en").get());
+        assertSame(countriesDualRepository.findOneByAlpha2Code("NZ").get(), countriesDualRepository.findOneByName("New Zealand").get());
+        assertSame(countriesDualRepository.findOneByAlpha2Code("NZ", "de").get(), countriesDualRepository.findByNameContaining("Neusee", "de").get(0));
+        assertEquals("Neuseeland", countriesDualRepository.findOneByAlpha2Code("NZ", "de").get().getName());
+        assertEquals(Arrays.asList("64"), countriesDualRepository.findOneByAlpha2Code("NZ", "de").get().getCallingCodes());
+        assertNull("Expect no name in an unknown language", countriesDualRepository.findOneByAlpha2Code("NZ", "xx").get().getName());
+    }
+
+    @Test
+    public void testFindAllByAlpha2Codes() {
+        loadCountries();
+        final Map<String, ? extends CountryEntity> result = countriesDualRepository.findAllByAlpha2Codes(Arrays.asList("NZ", "XX", "AU", "NZ"), "de");
+        assertThat("Expect found countries in order given", result.keySet(), contains("NZ", "AU"));
+        assertEquals("Neuseeland", result.get("NZ").getName());
+        assertEquals("Australien", result.get("AU").getName());
+    }
+
+    @Test
+    public void testUpdateAllReplacesIndexedData() {
+        loadCountries();
+        assertTrue("Expect a result", countriesDualRepository.findOneByAlpha2Code("AU").isPresent());
+
+        countriesDualRepository.updateAll("[{ \"name\": \"Bouvet Island\", \"alpha2Code\": \"BV\", \"callingCodes\": [\"\"]," +
+                " \"translations\": { \"de\": \"Bouvetinsel\" } }]");
+        assertFalse("Expect old data to be gone", countriesDualRepository.findOneByAlpha2Code("AU").isPresent());
+        assertEquals("Bouvet Island", countriesDualRepository.findOneByAlpha2Code("BV").get().getName());
+        assertEquals("Bouvetinsel", countriesDualRepository.findOneByAlpha2Code("BV", "de").get().getName());
+        assertEquals("BV", countriesDualRepository.getCodeByNameAndLocale("Bouvetinsel", "de").get());
+        assertThat(countriesDualRepository.findAll(), contains(countryWithName("Bouvet Island")));
+    }
+
+    @Test
+    public void testUpdateAllFromStream() throws IOException {
+        final int count;
+        try (final InputStream resource = getClass().getResourceAsStream(COUNTRIES_SUBSET_JSON)) {
+            count = countriesDualRepository.updateAll(resource);
+        }
+        assertEquals(countriesDualRepository.findAll().size(), count);
+        assertEquals("Neuseeland", countriesDualRepository.findOneByAlpha2Code("NZ", "de").get().getName());
+
+        final Optional<String> rawData = countriesDualRepository.findAllRaw();
+        assertTrue("Expect raw data rendered from the stream", rawData.isPresent());
+        assertSame("Expect raw data to be rendered once", rawData.get(), countriesDualRepository.findAllRaw().get());
+        countriesDualRepository.updateAll(rawData.get());
+        assertEquals(count, countriesDualRepository.findAll().size());
+        assertEquals("Neuseeland", countriesDualRepository.findOneByAlpha2Code("NZ", "de").get().getName());
+    }
+
+    @Test
+    public void testUpdateAllWithSameDataIsIgnored() throws IOException {
+        final ApplicationEventPublisher eventPublisher = mock(ApplicationEventPublisher.class);
+        countriesDualRepository.setApplicationEventPublisher(eventPublisher);
+        loadCountries();
+        final CountryEntity australia = countriesDualRepository.findOneByAlpha2Code("AU").get();
+
+        loadCountries();
+        try (final InputStream resource = getClass().getResourceAsStream(COUNTRIES_SUBSET_JSON)) {
+            countriesDualRepository.updateAll(resource);
+        }
+        assertSame("Expect the same data not to be indexed again", australia, countriesDualRepository.findOneByAlpha2Code("AU").get());
+        verify(eventPublisher, times(1)).publishEvent(isA(CountriesUpdatedEvent.class));
+
+        final Object countries;
+        try (final InputStream resource = getClass().getResourceAsStream(COUNTRIES_SUBSET_JSON)) {
+            countries = new ObjectMapper().readValue(resource, Object.class);
+        }
+        countriesDualRepository.updateAll(new ByteArrayInputStream(new ObjectMapper(new SmileFactory()).writeValueAsBytes(countries)));
+        countriesDualRepository.updateAll(new ObjectMapper().writerWithDefaultPrettyPrinter().writeValueAsString(countries));
+        assertSame("Expect the same data in another form not to be indexed again", australia, countriesDualRepository.findOneByAlpha2Code("AU").get());
+        verify(eventPublisher, times(1)).publishEvent(isA(CountriesUpdatedEvent.class));
+
+        countriesDualRepository.updateAll("[]");
+        verify(eventPublisher, times(2)).publishEvent(isA(CountriesUpdatedEvent.class));
+    }
+
+    @Test
+    public void testUpdateAllKeepsUnchangedCountries() {
+        final ApplicationEventPublisher eventPublisher = mock(ApplicationEventPublisher.class);
+        countriesDualRepository.setApplicationEventPublisher(eventPublisher);
+        final String countries = "[{ \"name\": \"Australia\", \"alpha2Code\": \"AU\", \"population\": 24117360, \"translations\": { \"de\": \"Australien\" } }," +
+                " { \"name\": \"New Zealand\", \"alpha2Code\": \"NZ\", \"population\": %d, \"translations\": { \"de\": \"Neuseeland\" } }]";
+        countriesDualRepository.updateAll(String.format(countries, 4547900));
+        final CountryEntity australia = countriesDualRepository.findOneByAlpha2Code("AU", "de").get();
+
+        countriesDualRepository.updateAll(String.format(countries, 48000000));
+        assertSame("Expect an unchanged country to be kept", australia, countriesDualRepository.findOneByAlpha2Code("AU", "de").get());
+        assertEquals((Long) 48000000L, countriesDualRepository.findOneByAlpha2Code("NZ", "de").get().getPopulation().get());
+        assertThat("Expect the prefix index to be rebuilt for the new population", countriesDualRepository.findByNameStartingWith("", null, 1),
+                contains(countryWithName("New Zealand")));
+
+        final ArgumentCaptor<ApplicationEvent> events = ArgumentCaptor.forClass(ApplicationEvent.class);
+        verify(eventPublisher, times(5)).publishEvent(events.capture());
+        final CountryChangedEvent changed = (CountryChangedEvent) events.getAllValues().get(3);
+        assertEquals(CountryChangedEvent.Type.CHANGED, changed.getType());
+        assertEquals("NZ", changed.getCountryCode());
+        assertThat(changed.getFields(), contains("population"));
+        assertTrue(events.getAllValues().get(4) instanceof CountriesUpdatedEvent);
+    }
+
+    @Test
+    public void testUpdateAllFromInvalidStreamKeepsData() {
+        loadCountries();
+        for (String invalid : Arrays.asList("{}", "[{ \"name\": \"Bouvet Island\" }, 1]", "[{ \"name\": \"Bouvet Island\" }", "[] []")) {
+            try {
+                countriesDualRepository.updateAll(new ByteArrayInputStream(invalid.getBytes(StandardCharsets.UTF_8)));
+                fail("Expect an exception for " + invalid);
+            } catch (IOException e) {
+                assertTrue("Expect old data to be kept", countriesDualRepository.findOneByAlpha2Code("AU").isPresent());
+            }
+        }
+    }
+
     @Test
     public void testFindByNameContaining() throws Exception {
         loadCountries();
@@ -94,6 +241,74 @@ public class CountriesDualRepositoryMemTest {
         assertEquals("Norfolkinsel", countriesDualRepository.findByNameContaining("Norfolk", "de").get(0).getName());
     }
 
+    @Test
+    public void testFindByNameContainingMatchesRegexScanOfFullData() throws Exception {
+        loadCountries("/ucles/weblab/common/i18n/countries/config/restcountries.json");
+        final List<? extends CountryEntity> all = countriesDualRepository.findAll();
+        for (String search : Arrays.asList("", "a", "Å", "land", "ISLAND", "ia", "é", "Ile", "Île", "of the", "ーランド", "zz", " ")) {
+            for (String languageCode : Arrays.asList(null, "fr", "ja")) {
+                final Pattern pattern = Pattern.compile(".*" + Pattern.quote(search.trim()) + ".*", Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+                final List<String> expected = all.stream()
+                        .filter(c -> pattern.matcher(c.getName()).matches() || languageCode != null &&
+                                countriesDualRepository.findOneByAlpha2Code(c.getIso3166Alpha2Code(), languageCode)
+                                        .map(CountryEntity::getName).filter(name -> pattern.matcher(name).matches()).isPresent())
+                        .map(CountryEntity::getIso3166Alpha2Code)
+                        .collect(toList());
+                final List<String> actual = countriesDualRepository.findByNameContaining(search, languageCode).stream()
+                        .map(CountryEntity::getIso3166Alpha2Code)
+                        .collect(toList());
+                assertEquals("Expect same results as a full scan for '" + search + "' in " + languageCode, expected, actual);
+            }
+        }
+    }
+
+    @Test
+    public void testFindByAnyNameContaining() throws Exception {
+        loadCountries();
+
+        assertThat(countriesDualRepository.findByAnyNameContaining("NUEva", "ja"), contains(countryWithName("ニュージーランド")));
+        assertThat(countriesDualRepository.findByAnyNameContaining("Weihnachts", null), contains(countryWithName("Christmas Island")));
+        assertThat(countriesDualRepository.findByAnyNameContaining("Aotearoa", "de"), contains(countryWithName("Neuseeland")));
+        assertTrue(countriesDualRepository.findByAnyNameContaining("Aotearoa.*", null).isEmpty());
+    }
+
+    @Test
+    public void testFindByNameStartingWith() throws Exception {
+        loadCountries();
+
+        assertThat("Expect ordered by population", countriesDualRepository.findByNameStartingWith("n", null, 10),
+                contains(countryWithName("New Zealand"), countryWithName("Norfolk Island")));
+        assertThat("Expect exact match first", countriesDualRepository.findByNameStartingWith("norfolk island", "en", 10),
+                contains(countryWithName("Norfolk Island")));
+        assertThat("Expect limit applied", countriesDualRepository.findByNameStartingWith("N", null, 1),
+                contains(countryWithName("New Zealand")));
+        assertThat("Expect accents ignored", countriesDualRepository.findByNameStartingWith("ile", "fr", 10),
+                contains(countryWithName("Île de Norfolk"), countryWithName("Île Christmas"), countryWithName("Îles Cocos")));
+        assertThat("Expect English for unknown language", countriesDualRepository.findByNameStartingWith("Aus", "biscuit", 10),
+                contains(countryWithName("Australia")));
+        assertTrue(countriesDualRepository.findByNameStartingWith("Zealand", null, 10).isEmpty());
+        assertTrue(countriesDualRepository.findByNameStartingWith("N", null, 0).isEmpty());
+    }
+
+    @Test
+    public void testFindByAttribute() {
+        loadCountries();
+        assertThat(countriesDualRepository.findByCurrency("NZD", null), contains(countryWithName("New Zealand")));
+        assertThat("Expect case ignored and data order", countriesDualRepository.findByCurrency(" aud", null), contains(countryWithName("Australia"),
+                countryWithName("Christmas Island"), countryWithName("Cocos (Keeling) Islands"), countryWithName("Norfolk Island")));
+        assertEquals(5, countriesDualRepository.findByRegion("Oceania", null).size());
+        assertEquals(5, countriesDualRepository.findBySubregion("australia and new zealand", null).size());
+        assertThat(countriesDualRepository.findBySpokenLanguage("mi", "de"), contains(countryWithName("Neuseeland")));
+        assertThat(countriesDualRepository.findByTimezone("UTC+09:30", null), contains(countryWithName("Australia")));
+        assertTrue(countriesDualRepository.findByRegion("Europe", null).isEmpty());
+        assertSame("Expect the same list to be shared", countriesDualRepository.findByRegion("Oceania", "de"),
+                countriesDualRepository.findByRegion("oceania", "de"));
+
+        countriesDualRepository.updateAll(countriesDualRepository.findAllRaw().get().replace("\"NZD\"", "\"AUD\""));
+        assertEquals("Expect index rebuilt after update", 5, countriesDualRepository.findByCurrency("AUD", null).size());
+        assertTrue(countriesDualRepository.findByCurrency("NZD", null).isEmpty());
+    }
+
     @Test
     public void testGetCodeByNameAndLocale() throws Exception {
         loadCountries();
@@ -138,7 +353,11 @@ public class CountriesDualRepositoryMemTest {
     }
 
     private void loadCountries() {
-        final InputStream resource = getClass().getResourceAsStream(COUNTRIES_SUBSET_JSON);
+        loadCountries(COUNTRIES_SUBSET_JSON);
+    }
+
+    private void loadCountries(String resourceName) {
+        final InputStream resource = getClass().getResourceAsStream(resourceName);
         try (final InputStreamReader readable = new InputStreamReader(resource, StandardCharsets.UTF_8)) {
             final String initialCountries = readAll(readable);
             countriesDualRepository.updateAll(initialCountries);
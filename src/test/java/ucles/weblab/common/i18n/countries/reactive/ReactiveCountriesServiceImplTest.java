@@ -0,0 +1,93 @@
+package ucles.weblab.common.i18n.countries.reactive;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.web.client.AsyncRestTemplate;
+import org.springframework.web.client.HttpClientErrorException;
+import reactor.core.scheduler.Schedulers;
+import ucles.weblab.common.i18n.countries.domain.AutoRefreshCountriesServiceImpl;
+import ucles.weblab.common.i18n.countries.domain.CountryEntity;
+import ucles.weblab.common.i18n.countries.domain.mem.CountriesDualRepositoryMem;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import static org.springframework.test.web.client.ExpectedCount.times;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.header;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.method;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withStatus;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
+
+/**
+ * @since 18/10/26
+ */
+public class ReactiveCountriesServiceImplTest {
+    private static final URI COUNTRIES_URI = URI.create("http://restcountries.test/rest/v1/all");
+    private static final String COUNTRIES = "[{ \"name\": \"Bouvet Island\", \"alpha2Code\": \"BV\", \"callingCodes\": [\"\"] }]";
+    private static final String ETAG = "\"v1\"";
+
+    private final CountriesDualRepositoryMem countriesRawRepository = new CountriesDualRepositoryMem();
+    private MockRestServiceServer server;
+    private ReactiveCountriesServiceImpl countriesService;
+
+    @Before
+    public void setUp() {
+        final AsyncRestTemplate restTemplate = new AsyncRestTemplate();
+        server = MockRestServiceServer.bindTo(restTemplate).build();
+        countriesService = new ReactiveCountriesServiceImpl(COUNTRIES_URI, countriesRawRepository, restTemplate, Optional.empty(),
+                Schedulers.immediate(), new AutoRefreshCountriesServiceImpl.Backoff(3, Duration.ZERO, Duration.ZERO));
+    }
+
+    @Test
+    public void testRefreshIsConditionalOnLastResponse() throws InterruptedException, ExecutionException {
+        final HttpHeaders headers = new HttpHeaders();
+        headers.setETag(ETAG);
+        server.expect(requestTo(COUNTRIES_URI)).andExpect(method(HttpMethod.GET))
+                .andRespond(withSuccess(COUNTRIES, MediaType.APPLICATION_JSON).headers(headers));
+        server.expect(requestTo(COUNTRIES_URI)).andExpect(header(HttpHeaders.IF_NONE_MATCH, ETAG))
+                .andRespond(withStatus(HttpStatus.NOT_MODIFIED));
+
+        countriesService.refresh().block();
+        final CountryEntity bouvet = countriesRawRepository.findOneByAlpha2Code("BV").get();
+        assertEquals("Bouvet Island", bouvet.getName());
+
+        assertEquals("Expect the current data to be returned", countriesRawRepository.findAllRaw().get(),
+                countriesService.refreshRepository().get());
+        assertSame("Expect the data not to be changed", bouvet, countriesRawRepository.findOneByAlpha2Code("BV").get());
+        server.verify();
+    }
+
+    @Test
+    public void testServerErrorsAreRetried() {
+        server.expect(times(2), requestTo(COUNTRIES_URI)).andRespond(withStatus(HttpStatus.SERVICE_UNAVAILABLE));
+        server.expect(requestTo(COUNTRIES_URI)).andRespond(withSuccess(COUNTRIES, MediaType.APPLICATION_JSON));
+
+        countriesService.refresh().block();
+        assertEquals("Bouvet Island", countriesRawRepository.findOneByAlpha2Code("BV").get().getName());
+        server.verify();
+    }
+
+    @Test
+    public void testClientErrorsAreNotRetried() {
+        server.expect(requestTo(COUNTRIES_URI)).andRespond(withStatus(HttpStatus.NOT_FOUND));
+
+        try {
+            countriesService.refresh().block();
+            fail("Expect the refresh to fail");
+        } catch (HttpClientErrorException e) {
+            assertEquals(HttpStatus.NOT_FOUND, e.getStatusCode());
+        }
+        server.verify();
+    }
+}
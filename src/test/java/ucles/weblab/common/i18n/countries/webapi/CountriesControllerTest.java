@@ -1,27 +1,63 @@
 package ucles.weblab.common.i18n.countries.webapi;
 
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.module.jsonSchema.types.StringSchema;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.util.StreamUtils;
+import org.springframework.web.bind.ServletRequestBindingException;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import ucles.weblab.common.i18n.countries.domain.CountriesBuilders;
 import ucles.weblab.common.i18n.countries.domain.CountriesRawRepository;
+import ucles.weblab.common.i18n.countries.domain.CountriesUpdatedEvent;
+import ucles.weblab.common.i18n.countries.domain.CountryAttribute;
+import ucles.weblab.common.i18n.countries.domain.CountryEntity;
 import ucles.weblab.common.i18n.countries.webapi.resource.CountryResource;
 import ucles.weblab.common.i18n.countries.webapi.resource.CountryResource.CurrencyResource;
 import ucles.weblab.common.test.webapi.WebTestSupport;
 import ucles.weblab.common.webapi.exception.ResourceNotFoundException;
 import ucles.weblab.common.schema.webapi.ResourceSchemaCreator;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.zip.GZIPInputStream;
 
 import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.emptyCollectionOf;
+import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.hasEntry;
+import static org.hamcrest.Matchers.hasItem;
 import static org.hamcrest.Matchers.hasKey;
 import static org.hamcrest.Matchers.hasSize;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
@@ -29,6 +65,14 @@ import static org.mockito.Mockito.when;
  */
 @RunWith(MockitoJUnitRunner.class)
 public class CountriesControllerTest {
+    private static final String MINIMAL_COUNTRIES = "[{\n" +
+            "    \"name\": \"Bouvet Island\",\n" +
+            "    \"callingCodes\": [\"\"],\n" +
+            "    \"alpha2Code\": \"BV\",\n" +
+            "    \"currencies\": [\"NOK\"],\n" +
+            "    \"languages\": []\n" +
+            "  }]";
+
     @Mock
     private CountriesRawRepository countriesRawRepository;
     @Mock
@@ -36,21 +80,29 @@ public class CountriesControllerTest {
     
     private CountriesController countriesController;
 
+    private static Optional<List<Map<String, Object>>> parsed(String rawData) {
+        try {
+            return Optional.of(new ObjectMapper().readValue(rawData, new TypeReference<List<Map<String, Object>>>() { }));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
     @Before
     public void setUp() throws Exception {
-        countriesController = new CountriesController(countriesRawRepository, schemaCreator);
+        countriesController = new CountriesController(countriesRawRepository, schemaCreator, new ObjectMapper());
         WebTestSupport.setUpRequestContext();
     }
 
     @Test(expected = ResourceNotFoundException.class)
     public void testGetCountriesWithNoCountryData() {
-        when(countriesRawRepository.findAllRaw()).thenReturn(Optional.empty());
+        when(countriesRawRepository.findAllParsed()).thenReturn(Optional.empty());
         countriesController.getCountries();
     }
 
     @Test
     public void testGetCountries() {
-        when(countriesRawRepository.findAllRaw()).thenReturn(Optional.of("[{\n" +
+        when(countriesRawRepository.findAllParsed()).thenReturn(parsed("[{\n" +
                 "    \"name\": \"Republic of Macedonia\",\n" +
                 "    \"altSpellings\": [\n" +
                 "      \"MK\",\n" +
@@ -79,7 +131,7 @@ public class CountriesControllerTest {
 
     @Test
     public void testGetCountriesWithZeroPopulation() {
-        when(countriesRawRepository.findAllRaw()).thenReturn(Optional.of("[{\n" +
+        when(countriesRawRepository.findAllParsed()).thenReturn(parsed("[{\n" +
                 "    \"name\": \"Heard Island and McDonald Islands\",\n" +
                 "    \"altSpellings\": [\"HM\"],\n" +
                 "    \"region\": \"\",\n" +
@@ -114,7 +166,7 @@ public class CountriesControllerTest {
 
     @Test
     public void testGetCountriesWithNoPopulationSpecified() {
-        when(countriesRawRepository.findAllRaw()).thenReturn(Optional.of("[{\n" +
+        when(countriesRawRepository.findAllParsed()).thenReturn(parsed("[{\n" +
                 "    \"name\": \"Bouvet Island\",\n" +
                 "    \"altSpellings\": [\n" +
                 "      \"BV\",\n" +
@@ -145,5 +197,202 @@ public class CountriesControllerTest {
         assertThat("Expected languages", result.get(0).getLanguages(), hasSize(0));
     }
 
+    @Test
+    public void testGetCountriesJsonIsRenderedOncePerVersion() throws Exception {
+        when(countriesRawRepository.findAllParsed()).thenReturn(parsed(MINIMAL_COUNTRIES));
+        final ResponseEntity<byte[]> first = countriesController.getCountriesJson(null, null, null, null);
+        assertEquals(HttpStatus.OK, first.getStatusCode());
+        final String eTag = first.getHeaders().getETag();
+        assertThat("Expected body to be the country list", new ObjectMapper().readTree(first.getBody()).get(0).get("iso").asText(), equalTo("BV"));
+
+        final ResponseEntity<byte[]> second = countriesController.getCountriesJson(null, null, null, null);
+        assertEquals("Expect same ETag", eTag, second.getHeaders().getETag());
+        verify(countriesRawRepository, times(1)).findAllParsed();
+    }
+
+    @Test
+    public void testGetCountriesJsonNotModified() {
+        when(countriesRawRepository.findAllParsed()).thenReturn(parsed(MINIMAL_COUNTRIES));
+        final String eTag = countriesController.getCountriesJson(null, null, null, null).getHeaders().getETag();
+
+        final ResponseEntity<byte[]> result = countriesController.getCountriesJson(null, null, "\"other\", " + eTag, null);
+        assertEquals(HttpStatus.NOT_MODIFIED, result.getStatusCode());
+        assertEquals(eTag, result.getHeaders().getETag());
+        assertNull("Expect no body", result.getBody());
+        assertEquals(HttpStatus.NOT_MODIFIED, countriesController.getCountriesJson(null, null, "W/" + eTag, null).getStatusCode());
+        verify(countriesRawRepository, times(1)).findAllParsed();
+    }
+
+    @Test
+    public void testGetCountriesJsonRenderedAgainAfterUpdate() {
+        when(countriesRawRepository.findAllParsed()).thenReturn(parsed(MINIMAL_COUNTRIES));
+        final String eTag = countriesController.getCountriesJson(null, null, null, null).getHeaders().getETag();
+
+        when(countriesRawRepository.findAllParsed()).thenReturn(parsed(MINIMAL_COUNTRIES.replace("Bouvet Island", "Bouvetøya")));
+        countriesController.onCountriesUpdated(new CountriesUpdatedEvent(countriesRawRepository, 2L));
+        final ResponseEntity<byte[]> result = countriesController.getCountriesJson(null, null, eTag, null);
+        assertEquals(HttpStatus.OK, result.getStatusCode());
+        assertNotEquals("Expect new ETag", eTag, result.getHeaders().getETag());
+        assertEquals("Bouvetøya", countriesController.getCountries().get(0).getName());
+    }
+
+    @Test
+    public void testGetCountriesJsonGzipEncoded() throws Exception {
+        when(countriesRawRepository.findAllParsed()).thenReturn(parsed("[" + String.join(",", Collections.nCopies(20, MINIMAL_COUNTRIES.substring(1, MINIMAL_COUNTRIES.length() - 1))) + "]"));
+        final ResponseEntity<byte[]> identity = countriesController.getCountriesJson(null, null, null, null);
+        final ResponseEntity<byte[]> gzipped = countriesController.getCountriesJson(null, null, null, "deflate;q=0.5, gzip, br;q=0");
+        assertEquals("gzip", gzipped.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+        assertThat(gzipped.getHeaders().getVary(), hasItem(HttpHeaders.ACCEPT_ENCODING));
+        assertNotEquals("Expect distinct ETag per encoding", identity.getHeaders().getETag(), gzipped.getHeaders().getETag());
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(gzipped.getBody()))) {
+            assertArrayEquals("Expect same content", identity.getBody(), StreamUtils.copyToByteArray(in));
+        }
+
+        assertEquals("deflate", countriesController.getCountriesJson(null, null, null, "gzip;q=0, *").getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+        assertNull(countriesController.getCountriesJson(null, null, null, "gzip;q=0, deflate;q=0").getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+        assertEquals(HttpStatus.NOT_MODIFIED, countriesController.getCountriesJson(null, null, identity.getHeaders().getETag(), "gzip").getStatusCode());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testIsoCodesSchemaBuiltOncePerVersion() {
+        when(countriesRawRepository.findAllParsed()).thenReturn(parsed(MINIMAL_COUNTRIES));
+        when(schemaCreator.createEnum(any(List.class), any(), any(), any())).thenReturn(new StringSchema());
+        final ResponseEntity<byte[]> first = countriesController.enumerateJson(null, null);
+        assertEquals(HttpStatus.OK, first.getStatusCode());
+        assertEquals(HttpStatus.NOT_MODIFIED, countriesController.enumerateJson(first.getHeaders().getETag(), null).getStatusCode());
+        verify(schemaCreator, times(1)).createEnum(any(List.class), any(), any(), any());
+
+        countriesController.onCountriesUpdated(new CountriesUpdatedEvent(countriesRawRepository, 2L));
+        countriesController.enumerateJson(null, null);
+        verify(schemaCreator, times(2)).createEnum(any(List.class), any(), any(), any());
+        verify(countriesRawRepository, times(2)).findAllParsed();
+    }
+
+    @Test
+    @SuppressWarnings({"unchecked", "deprecation"})
+    public void testDeprecatedIsoCodesSchemaSharesCachedSchema() {
+        final StringSchema schema = new StringSchema();
+        when(countriesRawRepository.findAllParsed()).thenReturn(parsed(MINIMAL_COUNTRIES));
+        when(schemaCreator.createEnum(any(List.class), any(), any(), any())).thenReturn(schema);
+        countriesController.enumerateJson(null, null);
+        assertSame(schema, countriesController.enumerate().getBody());
+        verify(schemaCreator, times(1)).createEnum(any(List.class), any(), any(), any());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testSchemasForManyHostsAreBounded() {
+        when(countriesRawRepository.findAllParsed()).thenReturn(parsed(MINIMAL_COUNTRIES));
+        when(schemaCreator.createEnum(any(List.class), any(), any(), any())).thenReturn(new StringSchema());
+        for (int i = 0; i < 100; i++) {
+            final MockHttpServletRequest request = new MockHttpServletRequest();
+            request.setServerName("host" + i + ".test");
+            RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+            countriesController.enumerateJson(null, null);
+        }
+        verify(schemaCreator, times(100)).createEnum(any(List.class), any(), any(), any());
 
+        final MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setServerName("host0.test");
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+        countriesController.enumerateJson(null, null);
+        // The least recently used host's schema has been discarded.
+        verify(schemaCreator, times(101)).createEnum(any(List.class), any(), any(), any());
+    }
+
+    @Test
+    public void testSuggest() {
+        when(countriesRawRepository.findAllParsed()).thenReturn(parsed(MINIMAL_COUNTRIES));
+        final CountryEntity bouvet = new CountriesBuilders().countryEntityBuilder().get()
+                .name("Bouvetinsel")
+                .iso3166Alpha2Code("BV")
+                .population(Optional.empty())
+                .callingCodes(Collections.emptyList())
+                .get();
+        doReturn(Collections.singletonList(bouvet)).when(countriesRawRepository).findByNameStartingWith("bou", "de", 5);
+
+        final List<CountryResource> result = countriesController.suggest("bou", "de", 5);
+        assertEquals("Expected 1 country", 1, result.size());
+        assertEquals("Expected translated name", "Bouvetinsel", result.get(0).getName());
+        assertEquals("Expected ISO code", "BV", result.get(0).getIso());
+        assertThat("Expected currency", result.get(0).getCurrency(), hasKey("NOK"));
+    }
+
+    @Test
+    public void testGetCountriesJsonInLanguage() throws Exception {
+        when(countriesRawRepository.findAllParsed()).thenReturn(parsed(MINIMAL_COUNTRIES.replace("\"alpha2Code\"",
+                "\"translations\": { \"de\": \"Bouvetinsel\", \"fr\": \"Île Bouvet\" }, \"alpha2Code\"")));
+        final ResponseEntity<byte[]> english = countriesController.getCountriesJson(null, null, null, null);
+        final ResponseEntity<byte[]> german = countriesController.getCountriesJson("de", "fr", null, null);
+        final ResponseEntity<byte[]> french = countriesController.getCountriesJson(null, "es;q=0.9, fr-CH, de;q=0.5", null, null);
+        final ResponseEntity<byte[]> unknown = countriesController.getCountriesJson("xx", null, null, null);
+
+        assertEquals("Bouvet Island", new ObjectMapper().readTree(english.getBody()).get(0).get("name").asText());
+        assertEquals("Bouvetinsel", new ObjectMapper().readTree(german.getBody()).get(0).get("name").asText());
+        assertEquals("Île Bouvet", new ObjectMapper().readTree(french.getBody()).get(0).get("name").asText());
+        assertEquals("fr", french.getHeaders().getFirst(HttpHeaders.CONTENT_LANGUAGE));
+        assertThat(french.getHeaders().getVary(), hasItem(HttpHeaders.ACCEPT_LANGUAGE));
+        assertEquals("Expect English for unknown language", english.getHeaders().getETag(), unknown.getHeaders().getETag());
+        assertNotEquals("Expect ETag per language", english.getHeaders().getETag(), german.getHeaders().getETag());
+        assertEquals(HttpStatus.NOT_MODIFIED, countriesController.getCountriesJson("de", null, german.getHeaders().getETag(), null).getStatusCode());
+        verify(countriesRawRepository, times(1)).findAllParsed();
+    }
+
+    @Test
+    public void testGetCountriesJsonWithFields() throws Exception {
+        when(countriesRawRepository.findAllParsed()).thenReturn(parsed(MINIMAL_COUNTRIES));
+        final ResponseEntity<byte[]> projected = countriesController.getCountriesJson(null, Arrays.asList("name", " iso"), null, null, null);
+        final JsonNode country = new ObjectMapper().readTree(projected.getBody()).get(0);
+        final List<String> fields = new ArrayList<>();
+        country.fieldNames().forEachRemaining(fields::add);
+        assertThat(fields, contains("name", "iso"));
+        assertEquals("BV", country.get("iso").asText());
+
+        final ResponseEntity<byte[]> reordered = countriesController.getCountriesJson(null, Arrays.asList("iso", "name", "iso"), null, null, null);
+        assertSame("Expect one payload per projection", projected.getBody(), reordered.getBody());
+        assertNotEquals("Expect ETag per projection", countriesController.getCountriesJson(null, null, null, null).getHeaders().getETag(),
+                projected.getHeaders().getETag());
+        assertEquals(HttpStatus.NOT_MODIFIED, countriesController.getCountriesJson(null, Arrays.asList("name", "iso"), null,
+                projected.getHeaders().getETag(), null).getStatusCode());
+        verify(countriesRawRepository, times(1)).findAllParsed();
+
+        countriesController.onCountriesUpdated(new CountriesUpdatedEvent(countriesRawRepository, 2L));
+        assertNotSame("Expect projection rendered again after update", projected.getBody(),
+                countriesController.getCountriesJson(null, Arrays.asList("name", "iso"), null, null, null).getBody());
+    }
+
+    @Test
+    public void testGetCountriesByAttributes() throws Exception {
+        when(countriesRawRepository.findAllParsed()).thenReturn(parsed(MINIMAL_COUNTRIES));
+        final CountryEntity bouvet = new CountriesBuilders().countryEntityBuilder().get()
+                .name("Bouvet Island")
+                .iso3166Alpha2Code("BV")
+                .population(Optional.empty())
+                .callingCodes(Collections.emptyList())
+                .get();
+        doReturn(Collections.singletonList(bouvet)).when(countriesRawRepository).findByAttribute(CountryAttribute.CURRENCY, "nok", "en");
+        doReturn(Collections.emptyList()).when(countriesRawRepository).findByAttribute(CountryAttribute.REGION, "europe", "en");
+
+        final ResponseEntity<byte[]> result = countriesController.getCountriesByAttributes(null, null, "NOK", null, null, null, null, null, null);
+        final JsonNode countries = new ObjectMapper().readTree(result.getBody());
+        assertEquals("Bouvet Island", countries.get(0).get("name").asText());
+        assertEquals(HttpStatus.NOT_MODIFIED, countriesController.getCountriesByAttributes(null, null, "nok", null, null, null, null,
+                result.getHeaders().getETag(), null).getStatusCode());
+        verify(countriesRawRepository, times(1)).findByAttribute(CountryAttribute.CURRENCY, "nok", "en");
+
+        assertEquals("Expect countries with every attribute", 0, new ObjectMapper().readTree(countriesController.getCountriesByAttributes(
+                "Europe", null, "NOK", null, null, null, null, null, null).getBody()).size());
+    }
+
+    @Test(expected = ServletRequestBindingException.class)
+    public void testGetCountriesByNoAttributes() throws Exception {
+        countriesController.getCountriesByAttributes(null, null, " ", null, null, null, null, null, null);
+    }
+
+    @Test(expected = ServletRequestBindingException.class)
+    public void testGetCountriesJsonWithUnknownField() throws Exception {
+        when(countriesRawRepository.findAllParsed()).thenReturn(parsed(MINIMAL_COUNTRIES));
+        countriesController.getCountriesJson(null, Arrays.asList("name", "capital"), null, null, null);
+    }
 }
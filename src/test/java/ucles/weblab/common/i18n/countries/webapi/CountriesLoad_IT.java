@@ -0,0 +1,199 @@
+package ucles.weblab.common.i18n.countries.webapi;
+
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+import org.springframework.web.servlet.config.annotation.EnableWebMvc;
+import ucles.weblab.common.i18n.countries.CountriesIntegrationConfig;
+import ucles.weblab.common.i18n.countries.RestCountriesStub;
+import ucles.weblab.common.i18n.countries.domain.CountriesService;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+/**
+ * Drives concurrent reads of the countries web API while the data is refreshed from a local REST Countries stand-in
+ * which changes its data every time and sometimes fails. Reports the latency percentiles and throughput of the reads,
+ * and fails if the 99th percentile latency is over budget.
+ * <p>
+ * The load can be tuned with system properties:
+ * <ul>
+ *     <li>{@code countries.load.threads} - concurrent readers, default 8</li>
+ *     <li>{@code countries.load.duration-ms} - how long to read for, default 10000</li>
+ *     <li>{@code countries.load.refresh-interval-ms} - the pause between refreshes, default 250</li>
+ *     <li>{@code countries.load.upstream-latency-ms} - delay added to every upstream response, default 50</li>
+ *     <li>{@code countries.load.upstream-scale} - copies of the bundled data served upstream, default 1</li>
+ *     <li>{@code countries.load.p99-budget-ms} - the most the 99th percentile read latency may be, default 250</li>
+ * </ul>
+ *
+ * @since 18/10/26
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@SpringBootTest(properties = {
+        "i18n.countries.refresh.max-attempts=2",
+        "i18n.countries.refresh.initial-backoff-ms=10",
+        "i18n.countries.refresh.max-backoff-ms=50"
+})
+@ContextConfiguration(initializers = CountriesLoad_IT.Stub.class)
+public class CountriesLoad_IT {
+    private static final int THREADS = Integer.getInteger("countries.load.threads", 8);
+    private static final long DURATION_MS = Long.getLong("countries.load.duration-ms", 10000L);
+    private static final long REFRESH_INTERVAL_MS = Long.getLong("countries.load.refresh-interval-ms", 250L);
+    private static final long UPSTREAM_LATENCY_MS = Long.getLong("countries.load.upstream-latency-ms", 50L);
+    private static final int UPSTREAM_SCALE = Integer.getInteger("countries.load.upstream-scale", 1);
+    private static final long P99_BUDGET_MS = Long.getLong("countries.load.p99-budget-ms", 250L);
+
+    private static final RestCountriesStub restCountries = new RestCountriesStub();
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    @Configuration
+    @EnableWebMvc
+    @Import(CountriesIntegrationConfig.class)
+    public static class Config {
+    }
+
+    public static class Stub extends CountriesIntegrationConfig.StubInitializer {
+        public Stub() {
+            super(() -> restCountries);
+        }
+    }
+
+    @Autowired
+    private WebApplicationContext context;
+    @Autowired
+    private CountriesService countriesService;
+
+    private MockMvc mockMvc;
+
+    @Before
+    public void setUp() {
+        mockMvc = MockMvcBuilders.webAppContextSetup(context).build();
+    }
+
+    @AfterClass
+    public static void stopStub() {
+        restCountries.close();
+    }
+
+    @Test
+    public void testReadsDuringRefreshes() throws Exception {
+        restCountries.setLatency(Duration.ofMillis(UPSTREAM_LATENCY_MS));
+        restCountries.setScale(UPSTREAM_SCALE);
+        restCountries.setChanging(true);
+        restCountries.setFailure(RestCountriesStub.Failure.SERVER_ERROR, 5);
+
+        final List<Supplier<MockHttpServletRequestBuilder>> requests = Arrays.asList(
+                () -> get("/data/countries/"),
+                () -> get("/data/countries/").param("lang", "de"),
+                () -> get("/data/countries/").header(HttpHeaders.ACCEPT_LANGUAGE, "fr-CA,fr;q=0.8"),
+                () -> get("/data/countries").param("iso", "GB,FR,NZ").param("lang", "ja"),
+                () -> get("/data/countries/suggest").param("q", "uni"),
+                () -> get("/data/countries/$isoCodes"),
+                () -> get("/data/countries/$iddPrefixes"));
+        final long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(DURATION_MS);
+        final AtomicInteger errors = new AtomicInteger();
+        final ExecutorService readers = Executors.newFixedThreadPool(THREADS);
+        final List<Future<long[]>> latencies = new ArrayList<>(THREADS);
+        final int refreshes;
+        final int failedRefreshes;
+        try {
+            for (int i = 0; i < THREADS; i++) {
+                final int offset = i;
+                latencies.add(readers.submit(() -> read(requests, offset, end, errors)));
+            }
+            int attempted = 0;
+            int failed = 0;
+            while (System.nanoTime() < end) {
+                attempted++;
+                try {
+                    countriesService.refreshRepository().get(30, TimeUnit.SECONDS);
+                } catch (ExecutionException e) {
+                    failed++;
+                }
+                Thread.sleep(REFRESH_INTERVAL_MS);
+            }
+            refreshes = attempted;
+            failedRefreshes = failed;
+        } finally {
+            readers.shutdown();
+        }
+
+        final long[] all = latencies.stream().map(this::join).flatMapToLong(Arrays::stream).sorted().toArray();
+        assertTrue("Expect some reads", all.length > 0);
+        final long p50 = percentile(all, 0.50);
+        final long p99 = percentile(all, 0.99);
+        logger.info(String.format("%d reads by %d threads in %dms - %.0f reads/s, p50 %.2fms, p99 %.2fms, max %.2fms;"
+                        + " %d refreshes, %d failed, %d upstream requests",
+                all.length, THREADS, DURATION_MS, all.length * 1000.0 / DURATION_MS, p50 / 1e6, p99 / 1e6,
+                all[all.length - 1] / 1e6, refreshes, failedRefreshes, restCountries.getRequests()));
+
+        assertEquals("Expect every read to succeed", 0, errors.get());
+        assertTrue("Expect the data to have been refreshed", refreshes > failedRefreshes);
+        assertTrue("Expect p99 latency " + p99 / 1e6 + "ms to be within " + P99_BUDGET_MS + "ms",
+                p99 <= TimeUnit.MILLISECONDS.toNanos(P99_BUDGET_MS));
+    }
+
+    /**
+     * Keep reading until the end, cycling through the requests.
+     *
+     * @return the latency of each read in nanoseconds
+     */
+    private long[] read(List<Supplier<MockHttpServletRequestBuilder>> requests, int offset, long end, AtomicInteger errors) throws Exception {
+        long[] latencies = new long[1024];
+        int count = 0;
+        for (int i = offset; System.nanoTime() < end; i++) {
+            final long start = System.nanoTime();
+            final MockHttpServletResponse response = mockMvc.perform(requests.get(i % requests.size()).get()).andReturn().getResponse();
+            final long latency = System.nanoTime() - start;
+            if (response.getStatus() != 200 || response.getContentAsByteArray().length == 0) {
+                errors.incrementAndGet();
+            }
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = latency;
+        }
+        return Arrays.copyOf(latencies, count);
+    }
+
+    private long[] join(Future<long[]> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new IllegalStateException("Reader failed", e);
+        }
+    }
+
+    private static long percentile(long[] sorted, double percentile) {
+        return sorted[Math.max(0, (int) Math.ceil(sorted.length * percentile) - 1)];
+    }
+}